@@ -45,6 +45,7 @@ import com.dat.launcher3.BaseDraggingActivity;
 import com.dat.launcher3.MainThreadExecutor;
 import com.dat.launcher3.util.TraceHelper;
 import com.dat.launcher3.views.BaseDragLayer;
+import com.dat.quickstep.util.SwipeFrameTracker;
 import com.dat.quickstep.views.RecentsView;
 import com.android.systemui.shared.recents.IOverviewProxy;
 import com.android.systemui.shared.recents.ISystemUiProxy;
@@ -52,6 +53,10 @@ import com.android.systemui.shared.system.ActivityManagerWrapper;
 import com.android.systemui.shared.system.ChoreographerCompat;
 import com.android.systemui.shared.system.NavigationBarCompat.HitTarget;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
 /**
  * Service connected by system-UI for handling touch interaction.
  */
@@ -210,6 +215,20 @@ public class TouchInteractionService extends Service {
         return mMyBinder;
     }
 
+    /**
+     * $ adb shell dumpsys activity service com.dat.quickstep.TouchInteractionService [--proto]
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        if (Arrays.asList(args).contains("--proto")) {
+            SwipeFrameTracker.dumpProto(fd);
+            return;
+        }
+        pw.println("TouchInteractionService:");
+        pw.println("  connected=" + sConnected);
+        SwipeFrameTracker.dump("  ", pw);
+    }
+
     private void setupTouchConsumer(@HitTarget int downHitTarget) {
         mEventQueue.reset();
         TouchConsumer oldConsumer = mEventQueue.getConsumer();
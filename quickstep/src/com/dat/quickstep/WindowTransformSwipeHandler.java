@@ -58,6 +58,7 @@ import com.dat.launcher3.util.MultiValueAlpha;
 import com.dat.launcher3.util.TraceHelper;
 import com.dat.quickstep.util.ClipAnimationHelper;
 import com.dat.quickstep.util.RemoteAnimationTargetSet;
+import com.dat.quickstep.util.SwipeFrameTracker;
 import com.dat.quickstep.util.TransformedRect;
 import com.dat.quickstep.views.RecentsView;
 import com.dat.quickstep.views.TaskView;
@@ -212,6 +213,7 @@ public class WindowTransformSwipeHandler<T extends BaseDraggingActivity> {
 
     private final long mTouchTimeMs;
     private long mLauncherFrameDrawnTime;
+    private final SwipeFrameTracker mFrameTracker;
 
     private boolean mBgLongSwipeMode = false;
     private boolean mUiLongSwipeMode = false;
@@ -227,6 +229,7 @@ public class WindowTransformSwipeHandler<T extends BaseDraggingActivity> {
         mRunningTaskInfo = runningTaskInfo;
         mRunningTaskId = runningTaskInfo.id;
         mTouchTimeMs = touchTimeMs;
+        mFrameTracker = new SwipeFrameTracker(context, touchTimeMs);
         mActivityControlHelper = controller;
         mActivityInitListener = mActivityControlHelper
                 .createActivityInitListener(this::onActivityInit);
@@ -567,10 +570,12 @@ public class WindowTransformSwipeHandler<T extends BaseDraggingActivity> {
         RecentsAnimationControllerCompat controller = mRecentsAnimationWrapper.getController();
         if (controller != null) {
 
+            long frameStart = mFrameTracker.onFrameStart();
             mClipAnimationHelper.applyTransform(mRecentsAnimationWrapper.targetSet, shift,
                     Looper.myLooper() == mMainThreadHandler.getLooper()
                             ? mSyncTransactionApplier
                             : null);
+            mFrameTracker.onFrameEnd(frameStart);
 
             boolean passedThreshold = shift > 1 - RecentsView.UPDATE_SYSUI_FLAGS_THRESHOLD;
             mRecentsAnimationWrapper.setAnimationTargetsBehindSystemBars(!passedThreshold);
@@ -645,6 +650,7 @@ public class WindowTransformSwipeHandler<T extends BaseDraggingActivity> {
     }
 
     public void onRecentsAnimationCanceled() {
+        mFrameTracker.onSettled(SwipeFrameTracker.END_CANCELLED);
         mRecentsAnimationWrapper.setController(null, null);
         mActivityInitListener.unregister();
         setStateOnUiThread(STATE_GESTURE_CANCELLED | STATE_HANDLER_INVALIDATED);
@@ -799,6 +805,7 @@ public class WindowTransformSwipeHandler<T extends BaseDraggingActivity> {
 
     @UiThread
     private void resumeLastTaskForQuickstep() {
+        mFrameTracker.onSettled(SwipeFrameTracker.END_APP);
         setStateOnUiThread(STATE_RESUME_LAST_TASK);
         doLogGesture(false /* toLauncher */);
         reset();
@@ -818,6 +825,8 @@ public class WindowTransformSwipeHandler<T extends BaseDraggingActivity> {
     }
 
     private void invalidateHandler() {
+        // If the gesture was not settled yet, it was interrupted before reaching any end state.
+        mFrameTracker.onSettled(SwipeFrameTracker.END_CANCELLED);
         mCurrentShift.finishAnimation();
 
         if (mGestureEndCallback != null) {
@@ -907,6 +916,7 @@ public class WindowTransformSwipeHandler<T extends BaseDraggingActivity> {
     }
 
     private void setupLauncherUiAfterSwipeUpAnimation() {
+        mFrameTracker.onSettled(SwipeFrameTracker.END_OVERVIEW);
         if (mLauncherTransitionController != null) {
             mLauncherTransitionController.getAnimationPlayer().end();
             mLauncherTransitionController = null;
@@ -944,6 +954,7 @@ public class WindowTransformSwipeHandler<T extends BaseDraggingActivity> {
         if (mQuickScrubBlocked) {
             return;
         }
+        mFrameTracker.onSettled(SwipeFrameTracker.END_OVERVIEW);
         mQuickScrubController.onFinishedTransitionToQuickScrub();
 
         mRecentsView.setRunningTaskIconScaledDown(false /* isScaledDown */, true /* animate */);
@@ -1064,8 +1075,10 @@ public class WindowTransformSwipeHandler<T extends BaseDraggingActivity> {
         }
         mUiLongSwipeMode = false;
         finishCurrentTransitionToHome();
-        mLongSwipeController.end(velocity, isFling,
-                () -> setStateOnUiThread(STATE_HANDLER_INVALIDATED));
+        mLongSwipeController.end(velocity, isFling, () -> {
+            mFrameTracker.onSettled(SwipeFrameTracker.END_HOME);
+            setStateOnUiThread(STATE_HANDLER_INVALIDATED);
+        });
 
     }
 
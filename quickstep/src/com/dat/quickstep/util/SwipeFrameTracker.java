@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.quickstep.util;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Display;
+import android.view.WindowManager;
+
+import com.dat.launcher3.model.nano.LauncherDumpProto;
+import com.dat.launcher3.model.nano.LauncherDumpProto.SwipeGesture;
+import com.google.protobuf.nano.MessageNano;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records frame timings for a single swipe-up gesture driven by
+ * {@link com.dat.quickstep.WindowTransformSwipeHandler}.
+ *
+ * Once the gesture settles, the result is added to a fixed size ring buffer which can be read
+ * through dumpsys:
+ * $ adb shell dumpsys activity service com.dat.quickstep.TouchInteractionService [--proto]
+ *
+ * The text output has one machine readable line per gesture, which is the input format of
+ * swipe_report.py.
+ */
+public class SwipeFrameTracker {
+
+    private static final String TAG = "SwipeFrameTracker";
+
+    public static final int END_UNKNOWN = SwipeGesture.EndTarget.UNKNOWN_END;
+    public static final int END_APP = SwipeGesture.EndTarget.LAST_APP;
+    public static final int END_OVERVIEW = SwipeGesture.EndTarget.OVERVIEW;
+    public static final int END_HOME = SwipeGesture.EndTarget.HOME;
+    public static final int END_CANCELLED = SwipeGesture.EndTarget.CANCELLED;
+
+    private static final int MAX_RECORDS = 32;
+
+    // A frame taking longer than this many vsync intervals is considered janky.
+    private static final float JANK_THRESHOLD_FRAMES = 1.5f;
+    // Gaps longer than this many vsync intervals are treated as the finger resting on the screen
+    // rather than as dropped frames, as no new transform is requested in that case.
+    private static final int IDLE_THRESHOLD_FRAMES = 6;
+
+    private static final long DEFAULT_VSYNC_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+
+    // Ring buffer of the completed gestures, guarded by itself
+    private static final SwipeGesture[] sRecords = new SwipeGesture[MAX_RECORDS];
+    private static int sNextRecord = 0;
+    private static int sRecordCount = 0;
+
+    private final long mTouchDownTime;
+    private final long mVsyncNanos;
+
+    private long mFirstFrameTime = -1;
+    private long mLastFrameStartNanos = -1;
+    private int mFrameCount;
+    private long mTotalTransformNanos;
+    private long mMaxTransformNanos;
+    private int mJankyFrames;
+    private int mDroppedFrames;
+    private boolean mSettled;
+
+    /**
+     * @param touchDownTime the uptime (in ms) when the gesture started.
+     */
+    public SwipeFrameTracker(Context context, long touchDownTime) {
+        mTouchDownTime = touchDownTime;
+        mVsyncNanos = getVsyncNanos(context);
+    }
+
+    /**
+     * Called by the thread driving the window animation before the transform is applied.
+     * @return the timestamp to be passed back to {@link #onFrameEnd}
+     */
+    public long onFrameStart() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Called after the window transform is applied for the frame started at {@param startNanos}
+     */
+    public synchronized void onFrameEnd(long startNanos) {
+        if (mSettled) {
+            return;
+        }
+        long cost = System.nanoTime() - startNanos;
+        if (mFirstFrameTime < 0) {
+            mFirstFrameTime = SystemClock.uptimeMillis();
+        } else {
+            long interval = startNanos - mLastFrameStartNanos;
+            if (interval < IDLE_THRESHOLD_FRAMES * mVsyncNanos) {
+                if (interval > JANK_THRESHOLD_FRAMES * mVsyncNanos) {
+                    mJankyFrames++;
+                }
+                mDroppedFrames += Math.max(0,
+                        Math.round((float) interval / mVsyncNanos) - 1);
+            }
+        }
+        mLastFrameStartNanos = startNanos;
+        mFrameCount++;
+        mTotalTransformNanos += cost;
+        mMaxTransformNanos = Math.max(mMaxTransformNanos, cost);
+    }
+
+    /**
+     * Called once the gesture has come to rest at {@param endTarget}. Any subsequent call is
+     * ignored, so that the first terminal state wins.
+     */
+    public synchronized void onSettled(int endTarget) {
+        if (mSettled) {
+            return;
+        }
+        mSettled = true;
+
+        SwipeGesture record = new SwipeGesture();
+        record.touchDownTimeMs = mTouchDownTime;
+        record.firstFrameLatencyMs = mFirstFrameTime < 0 ? -1 : mFirstFrameTime - mTouchDownTime;
+        record.settleLatencyMs = SystemClock.uptimeMillis() - mTouchDownTime;
+        record.frameCount = mFrameCount;
+        record.meanTransformUs = mFrameCount == 0 ? 0
+                : TimeUnit.NANOSECONDS.toMicros(mTotalTransformNanos / mFrameCount);
+        record.maxTransformUs = TimeUnit.NANOSECONDS.toMicros(mMaxTransformNanos);
+        record.jankyFrames = mJankyFrames;
+        record.droppedFrames = mDroppedFrames;
+        record.vsyncUs = TimeUnit.NANOSECONDS.toMicros(mVsyncNanos);
+        record.endTarget = endTarget;
+
+        synchronized (sRecords) {
+            sRecords[sNextRecord] = record;
+            sNextRecord = (sNextRecord + 1) % MAX_RECORDS;
+            sRecordCount = Math.min(sRecordCount + 1, MAX_RECORDS);
+        }
+    }
+
+    private static long getVsyncNanos(Context context) {
+        Display display = context.getSystemService(WindowManager.class).getDefaultDisplay();
+        float refreshRate = display == null ? 0 : display.getRefreshRate();
+        return refreshRate > 0
+                ? (long) (TimeUnit.SECONDS.toNanos(1) / refreshRate) : DEFAULT_VSYNC_NANOS;
+    }
+
+    /**
+     * Returns the recorded gestures, oldest first.
+     */
+    private static SwipeGesture[] getRecords() {
+        synchronized (sRecords) {
+            SwipeGesture[] result = new SwipeGesture[sRecordCount];
+            int start = (sNextRecord - sRecordCount + MAX_RECORDS) % MAX_RECORDS;
+            for (int i = 0; i < sRecordCount; i++) {
+                result[i] = sRecords[(start + i) % MAX_RECORDS];
+            }
+            return result;
+        }
+    }
+
+    public static void dump(String prefix, PrintWriter writer) {
+        SwipeGesture[] records = getRecords();
+        writer.println(prefix + "Swipe gestures: " + records.length);
+        for (SwipeGesture r : records) {
+            writer.println(prefix + "  swipe"
+                    + " touch=" + r.touchDownTimeMs
+                    + " firstFrame=" + r.firstFrameLatencyMs
+                    + " settle=" + r.settleLatencyMs
+                    + " frames=" + r.frameCount
+                    + " meanTransformUs=" + r.meanTransformUs
+                    + " maxTransformUs=" + r.maxTransformUs
+                    + " janky=" + r.jankyFrames
+                    + " dropped=" + r.droppedFrames
+                    + " vsyncUs=" + r.vsyncUs
+                    + " end=" + endTargetToString(r.endTarget));
+        }
+    }
+
+    public static void dumpProto(FileDescriptor fd) {
+        LauncherDumpProto.SwipeGestureStats proto = new LauncherDumpProto.SwipeGestureStats();
+        proto.gestures = getRecords();
+        try {
+            new FileOutputStream(fd).write(MessageNano.toByteArray(proto));
+        } catch (IOException e) {
+            Log.e(TAG, "Exception writing dumpsys --proto", e);
+        }
+    }
+
+    private static String endTargetToString(int endTarget) {
+        switch (endTarget) {
+            case END_APP:
+                return "APP";
+            case END_OVERVIEW:
+                return "OVERVIEW";
+            case END_HOME:
+                return "HOME";
+            case END_CANCELLED:
+                return "CANCELLED";
+            default:
+                return "UNKNOWN";
+        }
+    }
+}
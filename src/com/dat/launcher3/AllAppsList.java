@@ -26,18 +26,28 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import com.dat.launcher3.allapps.AppSortKeys;
 import com.dat.launcher3.compat.LauncherAppsCompat;
 import com.dat.launcher3.compat.PackageInstallerCompat;
+import com.dat.launcher3.util.ComponentKey;
 import com.dat.launcher3.util.FlagOp;
 import com.dat.launcher3.util.ItemInfoMatcher;
+import com.dat.launcher3.util.PackageUserKey;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 
 /**
  * Stores the list of all applications for the all apps view.
+ *
+ * Along with the ordered list, the apps are indexed by component and by package, so that package
+ * updates only look at the apps of the package.
  */
 public class AllAppsList {
     private static final String TAG = "AllAppsList";
@@ -57,12 +67,19 @@ public class AllAppsList {
 
     private AppFilter mAppFilter;
 
+    private final AppSortKeys mSortKeys;
+
+    // Indexes of the apps in data
+    private final HashMap<ComponentKey, AppInfo> mComponentIndex = new HashMap<>();
+    private final HashMap<PackageUserKey, ArrayList<AppInfo>> mPackageIndex = new HashMap<>();
+
     /**
      * Boring constructor.
      */
-    public AllAppsList(IconCache iconCache, AppFilter appFilter) {
+    public AllAppsList(Context context, IconCache iconCache, AppFilter appFilter) {
         mIconCache = iconCache;
         mAppFilter = appFilter;
+        mSortKeys = AppSortKeys.getInstance(context);
     }
 
     /**
@@ -79,8 +96,9 @@ public class AllAppsList {
             return;
         }
         mIconCache.getTitleAndIcon(info, activityInfo, true /* useLowResIcon */);
+        mSortKeys.update(info);
 
-        data.add(info);
+        addToData(info);
         added.add(info);
     }
 
@@ -92,7 +110,8 @@ public class AllAppsList {
         if (applicationInfo == null) {
             PromiseAppInfo info = new PromiseAppInfo(installInfo);
             mIconCache.getTitleAndIcon(info, info.usingLowResIcon);
-            data.add(info);
+            mSortKeys.update(info);
+            addToData(info);
             added.add(info);
         }
     }
@@ -100,11 +119,15 @@ public class AllAppsList {
     public void removePromiseApp(AppInfo appInfo) {
         // the <em>removed</em> list is handled by the caller
         // so not adding it here
-        data.remove(appInfo);
+        if (data.remove(appInfo)) {
+            removeFromIndex(appInfo);
+        }
     }
 
     public void clear() {
         data.clear();
+        mComponentIndex.clear();
+        mPackageIndex.clear();
         // TODO: do we clear these too?
         added.clear();
         removed.clear();
@@ -136,13 +159,11 @@ public class AllAppsList {
      * Remove the apps for the given apk identified by packageName.
      */
     public void removePackage(String packageName, UserHandle user) {
-        final List<AppInfo> data = this.data;
-        for (int i = data.size() - 1; i >= 0; i--) {
-            AppInfo info = data.get(i);
-            if (info.user.equals(user) && packageName.equals(info.componentName.getPackageName())) {
-                removed.add(info);
-                data.remove(i);
-            }
+        ArrayList<AppInfo> apps = mPackageIndex.get(new PackageUserKey(packageName, user));
+        if (apps != null) {
+            ArrayList<AppInfo> toRemove = new ArrayList<>(apps);
+            removed.addAll(toRemove);
+            removeFromData(toRemove);
         }
     }
 
@@ -162,9 +183,14 @@ public class AllAppsList {
 
     public void updateIconsAndLabels(HashSet<String> packages, UserHandle user,
             ArrayList<AppInfo> outUpdates) {
-        for (AppInfo info : data) {
-            if (info.user.equals(user) && packages.contains(info.componentName.getPackageName())) {
+        for (String packageName : packages) {
+            ArrayList<AppInfo> apps = mPackageIndex.get(new PackageUserKey(packageName, user));
+            if (apps == null) {
+                continue;
+            }
+            for (AppInfo info : apps) {
                 mIconCache.updateTitleAndIcon(info);
+                mSortKeys.update(info);
                 outUpdates.add(info);
             }
         }
@@ -177,19 +203,24 @@ public class AllAppsList {
         final LauncherAppsCompat launcherApps = LauncherAppsCompat.getInstance(context);
         final List<LauncherActivityInfo> matches = launcherApps.getActivityList(packageName,
                 user);
+        ArrayList<AppInfo> apps = mPackageIndex.get(new PackageUserKey(packageName, user));
         if (matches.size() > 0) {
             // Find disabled/removed activities and remove them from data and add them
             // to the removed list.
-            for (int i = data.size() - 1; i >= 0; i--) {
-                final AppInfo applicationInfo = data.get(i);
-                if (user.equals(applicationInfo.user)
-                        && packageName.equals(applicationInfo.componentName.getPackageName())) {
-                    if (!findActivity(matches, applicationInfo.componentName)) {
+            if (apps != null) {
+                HashSet<ComponentName> components = new HashSet<>(matches.size());
+                for (LauncherActivityInfo info : matches) {
+                    components.add(info.getComponentName());
+                }
+                ArrayList<AppInfo> toRemove = new ArrayList<>();
+                for (AppInfo applicationInfo : apps) {
+                    if (!components.contains(applicationInfo.componentName)) {
                         Log.w(TAG, "Shortcut will be removed due to app component name change.");
-                        removed.add(applicationInfo);
-                        data.remove(i);
+                        toRemove.add(applicationInfo);
                     }
                 }
+                removed.addAll(toRemove);
+                removeFromData(toRemove);
             }
 
             // Find enabled activities and add them to the adapter
@@ -200,35 +231,64 @@ public class AllAppsList {
                     add(new AppInfo(context, info, user), info);
                 } else {
                     mIconCache.getTitleAndIcon(applicationInfo, info, true /* useLowResIcon */);
+                    mSortKeys.update(applicationInfo);
                     modified.add(applicationInfo);
                 }
             }
-        } else {
+        } else if (apps != null) {
             // Remove all data for this package.
-            for (int i = data.size() - 1; i >= 0; i--) {
-                final AppInfo applicationInfo = data.get(i);
-                if (user.equals(applicationInfo.user)
-                        && packageName.equals(applicationInfo.componentName.getPackageName())) {
-                    removed.add(applicationInfo);
-                    mIconCache.remove(applicationInfo.componentName, user);
-                    data.remove(i);
-                }
+            ArrayList<AppInfo> toRemove = new ArrayList<>(apps);
+            for (AppInfo applicationInfo : toRemove) {
+                mIconCache.remove(applicationInfo.componentName, user);
             }
+            removed.addAll(toRemove);
+            removeFromData(toRemove);
         }
     }
 
+    private void addToData(AppInfo info) {
+        data.add(info);
+        mComponentIndex.put(new ComponentKey(info.componentName, info.user), info);
+        PackageUserKey packageKey =
+                new PackageUserKey(info.componentName.getPackageName(), info.user);
+        ArrayList<AppInfo> apps = mPackageIndex.get(packageKey);
+        if (apps == null) {
+            apps = new ArrayList<>(1);
+            mPackageIndex.put(packageKey, apps);
+        }
+        apps.add(info);
+    }
 
     /**
-     * Returns whether <em>apps</em> contains <em>component</em>.
+     * Removes {@param apps} from data in a single pass, keeping the order of the other apps.
      */
-    private static boolean findActivity(List<LauncherActivityInfo> apps,
-            ComponentName component) {
-        for (LauncherActivityInfo info : apps) {
-            if (info.getComponentName().equals(component)) {
-                return true;
-            }
+    private void removeFromData(List<AppInfo> apps) {
+        if (apps.isEmpty()) {
+            return;
+        }
+        if (apps.size() == 1) {
+            data.remove(apps.get(0));
+        } else {
+            Set<AppInfo> toRemove = Collections.newSetFromMap(new IdentityHashMap<>());
+            toRemove.addAll(apps);
+            data.removeAll(toRemove);
+        }
+        for (AppInfo info : apps) {
+            removeFromIndex(info);
+        }
+    }
+
+    private void removeFromIndex(AppInfo info) {
+        ComponentKey key = new ComponentKey(info.componentName, info.user);
+        if (mComponentIndex.get(key) == info) {
+            mComponentIndex.remove(key);
+        }
+        PackageUserKey packageKey =
+                new PackageUserKey(info.componentName.getPackageName(), info.user);
+        ArrayList<AppInfo> apps = mPackageIndex.get(packageKey);
+        if (apps != null && apps.remove(info) && apps.isEmpty()) {
+            mPackageIndex.remove(packageKey);
         }
-        return false;
     }
 
     /**
@@ -238,11 +298,6 @@ public class AllAppsList {
      */
     private @Nullable AppInfo findAppInfo(@NonNull ComponentName componentName,
                                           @NonNull UserHandle user) {
-        for (AppInfo info: data) {
-            if (componentName.equals(info.componentName) && user.equals(info.user)) {
-                return info;
-            }
-        }
-        return null;
+        return mComponentIndex.get(new ComponentKey(componentName, user));
     }
 }
@@ -25,10 +25,13 @@ import android.os.Build;
 import android.os.Process;
 import android.os.UserHandle;
 
+import com.dat.launcher3.allapps.AppSortKeys;
 import com.dat.launcher3.compat.UserManagerCompat;
 import com.dat.launcher3.util.ComponentKey;
 import com.dat.launcher3.util.PackageManagerHelper;
 
+import java.text.CollationKey;
+
 /**
  * Represents an app in AllAppsView.
  */
@@ -41,6 +44,18 @@ public class AppInfo extends ItemInfoWithIcon {
 
     public ComponentName componentName;
 
+    /**
+     * Section name and collation key of the {@link #title}, see {@link AppSortKeys}.
+     */
+    public String sectionName;
+    public CollationKey titleSortKey;
+
+    /**
+     * The title and locale generation for which the keys were computed.
+     */
+    public CharSequence sortKeysTitle;
+    public int sortKeysGeneration;
+
     public AppInfo() {
         itemType = LauncherSettings.Favorites.ITEM_TYPE_APPLICATION;
     }
@@ -74,6 +89,10 @@ public class AppInfo extends ItemInfoWithIcon {
         componentName = info.componentName;
         title = Utilities.trim(info.title);
         intent = new Intent(info.intent);
+        sectionName = info.sectionName;
+        titleSortKey = info.titleSortKey;
+        sortKeysTitle = info.sortKeysTitle;
+        sortKeysGeneration = info.sortKeysGeneration;
     }
 
     @Override
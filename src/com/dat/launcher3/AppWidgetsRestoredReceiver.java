@@ -8,13 +8,13 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
-import android.os.Handler;
 import android.support.annotation.WorkerThread;
 import android.util.Log;
 
 import com.dat.launcher3.LauncherSettings.Favorites;
 import com.dat.launcher3.config.FeatureFlags;
 import com.dat.launcher3.model.LoaderTask;
+import com.dat.launcher3.model.ModelTaskScheduler;
 import com.dat.launcher3.provider.RestoreDbTask;
 import com.dat.launcher3.util.ContentWriter;
 
@@ -35,14 +35,14 @@ public class AppWidgetsRestoredReceiver extends BroadcastReceiver {
             final int[] newIds = intent.getIntArrayExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS);
             if (oldIds.length == newIds.length) {
                 final PendingResult asyncResult = goAsync();
-                new Handler(LauncherModel.getWorkerLooper())
-                        .postAtFrontOfQueue(new Runnable() {
+                LauncherModel.getScheduler().post(ModelTaskScheduler.PRIORITY_INTERACTIVE,
+                        new Runnable() {
                             @Override
                             public void run() {
                                 restoreAppWidgetIds(context, oldIds, newIds);
                                 asyncResult.finish();
                             }
-                        });
+                        }, null);
             } else {
                 Log.e(TAG, "Invalid host restored received");
             }
@@ -57,9 +57,9 @@ import java.text.NumberFormat;
  */
 public class BubbleTextView extends TextView implements IconCache.ItemInfoUpdateReceiver, Launcher.OnResumeCallback {
 
-    private static final int DISPLAY_WORKSPACE = 0;
-    private static final int DISPLAY_ALL_APPS = 1;
-    private static final int DISPLAY_FOLDER = 2;
+    public static final int DISPLAY_WORKSPACE = 0;
+    public static final int DISPLAY_ALL_APPS = 1;
+    public static final int DISPLAY_FOLDER = 2;
 
     private static final int[] STATE_PRESSED = new int[] {android.R.attr.state_pressed};
 
@@ -126,6 +126,9 @@ public class BubbleTextView extends TextView implements IconCache.ItemInfoUpdate
 
     private IconCache.IconLoadRequest mIconLoadRequest;
 
+    // Null below P
+    private final LabelLayoutCache mLabelLayoutCache;
+
     public BubbleTextView(Context context) {
         this(context, null, 0);
     }
@@ -170,6 +173,12 @@ public class BubbleTextView extends TextView implements IconCache.ItemInfoUpdate
         setEllipsize(TruncateAt.END);
         setAccessibilityDelegate(mActivity.getAccessibilityDelegate());
         setTextAlpha(1f);
+
+        mLabelLayoutCache = LauncherAppState.getInstance(context).getLabelLayoutCache();
+        if (mLabelLayoutCache != null && display == DISPLAY_ALL_APPS) {
+            // All apps labels are measured in advance when the apps are bound
+            mLabelLayoutCache.setDisplayParams(display, getTextMetricsParams());
+        }
     }
 
     @Override
@@ -233,7 +242,8 @@ public class BubbleTextView extends TextView implements IconCache.ItemInfoUpdate
         mBadgeColor = IconPalette.getMutedColor(info.iconColor, 0.54f);
 
         setIcon(iconDrawable);
-        setText(info.title);
+        setText(mLabelLayoutCache == null ? info.title
+                : mLabelLayoutCache.getLabel(info.title, getTextMetricsParams()));
         if (info.contentDescription != null) {
             setContentDescription(info.isDisabled()
                     ? getContext().getString(R.string.disabled_app_label, info.contentDescription)
@@ -351,6 +351,20 @@ public class CellLayout extends ViewGroup {
         mShortcutsAndWidgets.setLayerType(hasLayer ? LAYER_TYPE_HARDWARE : LAYER_TYPE_NONE, sPaint);
     }
 
+    public boolean isHardwareLayerEnabled() {
+        return mShortcutsAndWidgets.getLayerType() == LAYER_TYPE_HARDWARE;
+    }
+
+    /**
+     * Renders the hardware layer now, if it is enabled, instead of when it is first drawn.
+     */
+    public void buildHardwareLayer() {
+        if (isHardwareLayerEnabled() && mShortcutsAndWidgets.isAttachedToWindow()
+                && mShortcutsAndWidgets.getWidth() > 0 && mShortcutsAndWidgets.getHeight() > 0) {
+            mShortcutsAndWidgets.buildLayer();
+        }
+    }
+
     public void setCellDimensions(int width, int height) {
         mFixedCellWidth = mCellWidth = width;
         mFixedCellHeight = mCellHeight = height;
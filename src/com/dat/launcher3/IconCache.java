@@ -34,9 +34,7 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.drawable.Drawable;
 import android.os.Build.VERSION;
-import android.os.Handler;
 import android.os.Process;
-import android.os.SystemClock;
 import android.os.UserHandle;
 import android.support.annotation.NonNull;
 import android.support.v4.graphics.ColorUtils;
@@ -48,6 +46,8 @@ import com.dat.launcher3.compat.UserManagerCompat;
 import com.dat.launcher3.graphics.BitmapInfo;
 import com.dat.launcher3.graphics.BitmapRenderer;
 import com.dat.launcher3.graphics.LauncherIcons;
+import com.dat.launcher3.model.MaintenanceScheduler;
+import com.dat.launcher3.model.ModelTaskScheduler;
 import com.dat.launcher3.model.PackageItemInfo;
 import com.dat.launcher3.util.ComponentKey;
 import com.dat.launcher3.util.InstantAppResolver;
@@ -55,10 +55,13 @@ import com.dat.launcher3.util.Preconditions;
 import com.dat.launcher3.util.Provider;
 import com.dat.launcher3.util.SQLiteCacheHelper;
 import com.dat.launcher3.util.Thunk;
+import com.dat.launcher3.util.TraceHelper;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.Stack;
@@ -103,8 +106,6 @@ public class IconCache {
     private final int mIconDpi;
     @Thunk final IconDB mIconDb;
 
-    @Thunk final Handler mWorkerHandler;
-
     private final BitmapFactory.Options mLowResOptions;
     private final BitmapFactory.Options mHighResOptions;
 
@@ -120,7 +121,6 @@ public class IconCache {
         mIconDb = new IconDB(context, inv.iconBitmapSize);
 
         mIconProvider = IconProvider.newInstance(context);
-        mWorkerHandler = new Handler(LauncherModel.getWorkerLooper());
 
         mLowResOptions = new BitmapFactory.Options();
         // Always prefer RGB_565 config for low res. If the bitmap has transparency, it will
@@ -250,72 +250,164 @@ public class IconCache {
                 new String[]{packageName + "/%", Long.toString(userSerial)});
     }
 
-    public void updateDbIcons(Set<String> ignorePackagesForMainUser) {
-        // Remove all active icon update tasks.
-        mWorkerHandler.removeCallbacksAndMessages(ICON_UPDATE_TOKEN);
+    /**
+     * Returns a job which updates the persistent DB, such that only entries corresponding to the
+     * current apps remain in the DB and are updated. The DB rows of a user are read in one step,
+     * and are then checked one package per step.
+     */
+    public MaintenanceScheduler.Job newUpdateDbIconsJob(Set<String> ignorePackagesForMainUser) {
+        return new UpdateDbIconsJob(ignorePackagesForMainUser);
+    }
 
-        mIconProvider.updateSystemStateString(mContext);
-        for (UserHandle user : mUserManager.getUserProfiles()) {
-            // Query for the set of apps
-            final List<LauncherActivityInfo> apps = mLauncherApps.getActivityList(null, user);
-            // Fail if we don't have any apps
-            // TODO: Fix this. Only fail for the current user.
-            if (apps == null || apps.isEmpty()) {
-                return;
-            }
+    /**
+     * A row of the persistent DB, without the icon.
+     */
+    private static class DbRow {
+        final int rowId;
+        final ComponentName component;
+        final long lastUpdated;
+        final int version;
+        final String systemState;
 
-            // Update icon cache. This happens in segments and {@link #onPackageIconsUpdated}
-            // is called by the icon cache when the job is complete.
-            updateDBIcons(user, apps, Process.myUserHandle().equals(user)
-                    ? ignorePackagesForMainUser : Collections.<String>emptySet());
+        DbRow(int rowId, ComponentName component, long lastUpdated, int version,
+                String systemState) {
+            this.rowId = rowId;
+            this.component = component;
+            this.lastUpdated = lastUpdated;
+            this.version = version;
+            this.systemState = systemState;
         }
     }
 
-    /**
-     * Updates the persistent DB, such that only entries corresponding to {@param apps} remain in
-     * the DB and are updated.
-     * @return The set of packages for which icons have updated.
-     */
-    private void updateDBIcons(UserHandle user, List<LauncherActivityInfo> apps,
-            Set<String> ignorePackages) {
-        long userSerial = mUserManager.getSerialNumberForUser(user);
-        PackageManager pm = mContext.getPackageManager();
-        HashMap<String, PackageInfo> pkgInfoMap = new HashMap<>();
-        for (PackageInfo info : pm.getInstalledPackages(PackageManager.GET_UNINSTALLED_PACKAGES)) {
-            pkgInfoMap.put(info.packageName, info);
+    private class UpdateDbIconsJob implements MaintenanceScheduler.Job {
+
+        private final Set<String> mIgnorePackagesForMainUser;
+        private List<UserHandle> mUsers;
+        private int mUserIndex = -1;
+
+        // Set by the first step of each user
+        private long mUserSerial;
+        private Set<String> mIgnorePackages;
+        private HashMap<ComponentName, LauncherActivityInfo> mComponentMap;
+        private HashMap<String, ArrayList<DbRow>> mRowsByPackage;
+        private Iterator<String> mPackages;
+
+        // Results of the steps of the current user
+        private final HashMap<String, PackageInfo> mPkgInfoMap = new HashMap<>();
+        private final HashSet<Integer> mItemsToRemove = new HashSet<>();
+        private final Stack<LauncherActivityInfo> mAppsToUpdate = new Stack<>();
+
+        UpdateDbIconsJob(Set<String> ignorePackagesForMainUser) {
+            mIgnorePackagesForMainUser = ignorePackagesForMainUser;
         }
 
-        HashMap<ComponentName, LauncherActivityInfo> componentMap = new HashMap<>();
-        for (LauncherActivityInfo app : apps) {
-            componentMap.put(app.getComponentName(), app);
+        @Override
+        public boolean runStep() {
+            if (mUsers == null) {
+                // Remove all active icon update tasks.
+                LauncherModel.getScheduler().removeTasks(ICON_UPDATE_TOKEN);
+                mIconProvider.updateSystemStateString(mContext);
+                mUsers = mUserManager.getUserProfiles();
+            }
+            if (mPackages == null) {
+                mUserIndex++;
+                return mUserIndex >= mUsers.size() || !startUser(mUsers.get(mUserIndex));
+            }
+            if (mPackages.hasNext()) {
+                updatePackage(mPackages.next());
+            } else {
+                finishUser();
+                mPackages = null;
+            }
+            return false;
         }
 
-        HashSet<Integer> itemsToRemove = new HashSet<>();
-        Stack<LauncherActivityInfo> appsToUpdate = new Stack<>();
+        /**
+         * Reads the DB rows of {@param user}.
+         * @return false if the update should stop.
+         */
+        private boolean startUser(UserHandle user) {
+            // Query for the set of apps
+            final List<LauncherActivityInfo> apps = mLauncherApps.getActivityList(null, user);
+            // Fail if we don't have any apps
+            // TODO: Fix this. Only fail for the current user.
+            if (apps == null || apps.isEmpty()) {
+                return false;
+            }
 
-        Cursor c = null;
-        try {
-            c = mIconDb.query(
-                    new String[]{IconDB.COLUMN_ROWID, IconDB.COLUMN_COMPONENT,
-                            IconDB.COLUMN_LAST_UPDATED, IconDB.COLUMN_VERSION,
-                            IconDB.COLUMN_SYSTEM_STATE},
-                    IconDB.COLUMN_USER + " = ? ",
-                    new String[]{Long.toString(userSerial)});
-
-            final int indexComponent = c.getColumnIndex(IconDB.COLUMN_COMPONENT);
-            final int indexLastUpdate = c.getColumnIndex(IconDB.COLUMN_LAST_UPDATED);
-            final int indexVersion = c.getColumnIndex(IconDB.COLUMN_VERSION);
-            final int rowIndex = c.getColumnIndex(IconDB.COLUMN_ROWID);
-            final int systemStateIndex = c.getColumnIndex(IconDB.COLUMN_SYSTEM_STATE);
-
-            while (c.moveToNext()) {
-                String cn = c.getString(indexComponent);
-                ComponentName component = ComponentName.unflattenFromString(cn);
-                PackageInfo info = pkgInfoMap.get(component.getPackageName());
+            mUserSerial = mUserManager.getSerialNumberForUser(user);
+            mIgnorePackages = Process.myUserHandle().equals(user)
+                    ? mIgnorePackagesForMainUser : Collections.<String>emptySet();
+            mComponentMap = new HashMap<>();
+            HashSet<String> packages = new HashSet<>();
+            for (LauncherActivityInfo app : apps) {
+                mComponentMap.put(app.getComponentName(), app);
+                packages.add(app.getComponentName().getPackageName());
+            }
+
+            mRowsByPackage = new HashMap<>();
+            Cursor c = null;
+            try {
+                c = mIconDb.query(
+                        new String[]{IconDB.COLUMN_ROWID, IconDB.COLUMN_COMPONENT,
+                                IconDB.COLUMN_LAST_UPDATED, IconDB.COLUMN_VERSION,
+                                IconDB.COLUMN_SYSTEM_STATE},
+                        IconDB.COLUMN_USER + " = ? ",
+                        new String[]{Long.toString(mUserSerial)});
+
+                final int indexComponent = c.getColumnIndex(IconDB.COLUMN_COMPONENT);
+                final int indexLastUpdate = c.getColumnIndex(IconDB.COLUMN_LAST_UPDATED);
+                final int indexVersion = c.getColumnIndex(IconDB.COLUMN_VERSION);
+                final int rowIndex = c.getColumnIndex(IconDB.COLUMN_ROWID);
+                final int systemStateIndex = c.getColumnIndex(IconDB.COLUMN_SYSTEM_STATE);
+
+                while (c.moveToNext()) {
+                    ComponentName component =
+                            ComponentName.unflattenFromString(c.getString(indexComponent));
+                    ArrayList<DbRow> rows = mRowsByPackage.get(component.getPackageName());
+                    if (rows == null) {
+                        rows = new ArrayList<>();
+                        mRowsByPackage.put(component.getPackageName(), rows);
+                    }
+                    rows.add(new DbRow(c.getInt(rowIndex), component, c.getLong(indexLastUpdate),
+                            c.getInt(indexVersion), c.getString(systemStateIndex)));
+                }
+            } catch (SQLiteException e) {
+                Log.d(TAG, "Error reading icon cache", e);
+                // Continue updating whatever we have read so far
+            } finally {
+                if (c != null) {
+                    c.close();
+                }
+            }
+            packages.addAll(mRowsByPackage.keySet());
+            mPackages = packages.iterator();
+            return true;
+        }
+
+        /**
+         * Compares the DB rows of {@param packageName} with the installed package.
+         */
+        private void updatePackage(String packageName) {
+            PackageInfo info;
+            try {
+                info = mPackageManager.getPackageInfo(
+                        packageName, PackageManager.GET_UNINSTALLED_PACKAGES);
+                mPkgInfoMap.put(packageName, info);
+            } catch (NameNotFoundException e) {
+                info = null;
+            }
+
+            ArrayList<DbRow> rows = mRowsByPackage.remove(packageName);
+            if (rows == null) {
+                return;
+            }
+            UserHandle user = mUsers.get(mUserIndex);
+            for (DbRow row : rows) {
                 if (info == null) {
-                    if (!ignorePackages.contains(component.getPackageName())) {
-                        remove(component, user);
-                        itemsToRemove.add(c.getInt(rowIndex));
+                    if (!mIgnorePackages.contains(packageName)) {
+                        remove(row.component, user);
+                        mItemsToRemove.add(row.rowId);
                     }
                     continue;
                 }
@@ -324,40 +416,44 @@ public class IconCache {
                     continue;
                 }
 
-                long updateTime = c.getLong(indexLastUpdate);
-                int version = c.getInt(indexVersion);
-                LauncherActivityInfo app = componentMap.remove(component);
-                if (version == info.versionCode && updateTime == info.lastUpdateTime &&
-                        TextUtils.equals(c.getString(systemStateIndex),
+                LauncherActivityInfo app = mComponentMap.remove(row.component);
+                if (row.version == info.versionCode && row.lastUpdated == info.lastUpdateTime
+                        && TextUtils.equals(row.systemState,
                                 mIconProvider.getIconSystemState(info.packageName))) {
                     continue;
                 }
                 if (app == null) {
-                    remove(component, user);
-                    itemsToRemove.add(c.getInt(rowIndex));
+                    remove(row.component, user);
+                    mItemsToRemove.add(row.rowId);
                 } else {
-                    appsToUpdate.add(app);
+                    mAppsToUpdate.add(app);
                 }
             }
-        } catch (SQLiteException e) {
-            Log.d(TAG, "Error reading icon cache", e);
-            // Continue updating whatever we have read so far
-        } finally {
-            if (c != null) {
-                c.close();
-            }
-        }
-        if (!itemsToRemove.isEmpty()) {
-            mIconDb.delete(
-                    Utilities.createDbSelectionQuery(IconDB.COLUMN_ROWID, itemsToRemove), null);
         }
 
-        // Insert remaining apps.
-        if (!componentMap.isEmpty() || !appsToUpdate.isEmpty()) {
-            Stack<LauncherActivityInfo> appsToAdd = new Stack<>();
-            appsToAdd.addAll(componentMap.values());
-            new SerializedIconUpdateTask(userSerial, pkgInfoMap,
-                    appsToAdd, appsToUpdate).scheduleNext();
+        /**
+         * Removes the obsolete rows of the current user and starts updating the icons.
+         */
+        private void finishUser() {
+            if (!mItemsToRemove.isEmpty()) {
+                mIconDb.delete(
+                        Utilities.createDbSelectionQuery(IconDB.COLUMN_ROWID, mItemsToRemove),
+                        null);
+            }
+
+            // Insert remaining apps. This happens in segments and {@link #onPackageIconsUpdated}
+            // is called by the icon cache when the job is complete.
+            if (!mComponentMap.isEmpty() || !mAppsToUpdate.isEmpty()) {
+                Stack<LauncherActivityInfo> appsToAdd = new Stack<>();
+                appsToAdd.addAll(mComponentMap.values());
+                Stack<LauncherActivityInfo> appsToUpdate = new Stack<>();
+                appsToUpdate.addAll(mAppsToUpdate);
+                new SerializedIconUpdateTask(mUserSerial, new HashMap<>(mPkgInfoMap),
+                        appsToAdd, appsToUpdate).scheduleNext();
+            }
+            mPkgInfoMap.clear();
+            mItemsToRemove.clear();
+            mAppsToUpdate.clear();
         }
     }
 
@@ -420,7 +516,8 @@ public class IconCache {
         }
         mPendingIconRequestCount ++;
 
-        IconLoadRequest request = new IconLoadRequest(mWorkerHandler, this::onIconRequestEnd) {
+        IconLoadRequest request = new IconLoadRequest(LauncherModel.getScheduler(),
+                this::onIconRequestEnd) {
             @Override
             public void run() {
                 if (info instanceof AppInfo || info instanceof ShortcutInfo) {
@@ -434,7 +531,8 @@ public class IconCache {
                 });
             }
         };
-        Utilities.postAsyncCallback(mWorkerHandler, request);
+        LauncherModel.getScheduler().post(
+                ModelTaskScheduler.PRIORITY_INTERACTIVE, request, request /* token */);
         return request;
     }
 
@@ -536,51 +634,57 @@ public class IconCache {
         ComponentKey cacheKey = new ComponentKey(componentName, user);
         CacheEntry entry = mCache.get(cacheKey);
         if (entry == null || (entry.isLowResIcon && !useLowResIcon)) {
-            entry = new CacheEntry();
-            mCache.put(cacheKey, entry);
+            TraceHelper.beginSpan("IconCache: load icon");
+            try {
+                entry = new CacheEntry();
+                mCache.put(cacheKey, entry);
 
-            // Check the DB first.
-            LauncherActivityInfo info = null;
-            boolean providerFetchedOnce = false;
+                // Check the DB first.
+                LauncherActivityInfo info = null;
+                boolean providerFetchedOnce = false;
 
-            if (!getEntryFromDB(cacheKey, entry, useLowResIcon) || DEBUG_IGNORE_CACHE) {
-                info = infoProvider.get();
-                providerFetchedOnce = true;
+                if (!getEntryFromDB(cacheKey, entry, useLowResIcon) || DEBUG_IGNORE_CACHE) {
+                    info = infoProvider.get();
+                    providerFetchedOnce = true;
 
-                if (info != null) {
-                    LauncherIcons li = LauncherIcons.obtain(mContext);
-                    li.createBadgedIconBitmap(getFullResIcon(info), info.getUser(),
-                            info.getApplicationInfo().targetSdkVersion).applyTo(entry);
-                    li.recycle();
-                } else {
-                    if (usePackageIcon) {
-                        CacheEntry packageEntry = getEntryForPackageLocked(
-                                componentName.getPackageName(), user, false);
-                        if (packageEntry != null) {
-                            if (DEBUG) Log.d(TAG, "using package default icon for " +
+                    if (info != null) {
+                        LauncherIcons li = LauncherIcons.obtain(mContext);
+                        li.createBadgedIconBitmap(getFullResIcon(info), info.getUser(),
+                                info.getApplicationInfo().targetSdkVersion).applyTo(entry);
+                        li.recycle();
+                    } else {
+                        if (usePackageIcon) {
+                            CacheEntry packageEntry = getEntryForPackageLocked(
+                                    componentName.getPackageName(), user, false);
+                            if (packageEntry != null) {
+                                if (DEBUG) Log.d(TAG, "using package default icon for " +
+                                        componentName.toShortString());
+                                packageEntry.applyTo(entry);
+                                entry.title = packageEntry.title;
+                                entry.contentDescription = packageEntry.contentDescription;
+                            }
+                        }
+                        if (entry.icon == null) {
+                            if (DEBUG) Log.d(TAG, "using default icon for " +
                                     componentName.toShortString());
-                            packageEntry.applyTo(entry);
-                            entry.title = packageEntry.title;
-                            entry.contentDescription = packageEntry.contentDescription;
+                            getDefaultIcon(user).applyTo(entry);
                         }
                     }
-                    if (entry.icon == null) {
-                        if (DEBUG) Log.d(TAG, "using default icon for " +
-                                componentName.toShortString());
-                        getDefaultIcon(user).applyTo(entry);
-                    }
                 }
-            }
 
-            if (TextUtils.isEmpty(entry.title)) {
-                if (info == null && !providerFetchedOnce) {
-                    info = infoProvider.get();
-                    providerFetchedOnce = true;
-                }
-                if (info != null) {
-                    entry.title = info.getLabel();
-                    entry.contentDescription = mUserManager.getBadgedLabelForUser(entry.title, user);
+                if (TextUtils.isEmpty(entry.title)) {
+                    if (info == null && !providerFetchedOnce) {
+                        info = infoProvider.get();
+                        providerFetchedOnce = true;
+                    }
+                    if (info != null) {
+                        entry.title = info.getLabel();
+                        entry.contentDescription =
+                                mUserManager.getBadgedLabelForUser(entry.title, user);
+                    }
                 }
+            } finally {
+                TraceHelper.endSpan();
             }
         }
         return entry;
@@ -591,6 +695,11 @@ public class IconCache {
         mIconDb.clear();
     }
 
+    public synchronized void compactDb() {
+        Preconditions.assertWorkerThread();
+        mIconDb.vacuum();
+    }
+
     /**
      * Adds a default package entry in the cache. This entry is not persisted and will be removed
      * when the cache is flushed.
@@ -720,18 +829,18 @@ public class IconCache {
     }
 
     public static abstract class IconLoadRequest implements Runnable {
-        private final Handler mHandler;
+        private final ModelTaskScheduler mScheduler;
         private final Runnable mEndRunnable;
 
         private boolean mEnded = false;
 
-        IconLoadRequest(Handler handler, Runnable endRunnable) {
-            mHandler = handler;
+        IconLoadRequest(ModelTaskScheduler scheduler, Runnable endRunnable) {
+            mScheduler = scheduler;
             mEndRunnable = endRunnable;
         }
 
         public void cancel() {
-            mHandler.removeCallbacks(this);
+            mScheduler.removeTasks(this);
             onEnd();
         }
 
@@ -797,7 +906,8 @@ public class IconCache {
         }
 
         public void scheduleNext() {
-            mWorkerHandler.postAtTime(this, ICON_UPDATE_TOKEN, SystemClock.uptimeMillis() + 1);
+            LauncherModel.getScheduler().post(
+                    ModelTaskScheduler.PRIORITY_BACKGROUND, this, ICON_UPDATE_TOKEN);
         }
     }
 
@@ -27,9 +27,7 @@ import android.content.pm.LauncherActivityInfo;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.os.Handler;
 import android.os.Looper;
-import android.os.Message;
 import android.os.Parcelable;
 import android.os.Process;
 import android.os.UserHandle;
@@ -42,9 +40,11 @@ import com.dat.launcher3.compat.LauncherAppsCompat;
 import com.dat.launcher3.compat.UserManagerCompat;
 import com.dat.launcher3.graphics.BitmapInfo;
 import com.dat.launcher3.graphics.LauncherIcons;
+import com.dat.launcher3.model.ModelTaskScheduler;
 import com.dat.launcher3.shortcuts.DeepShortcutManager;
 import com.dat.launcher3.shortcuts.ShortcutInfoCompat;
 import com.dat.launcher3.shortcuts.ShortcutKey;
+import com.dat.launcher3.util.AppendOnlyJournal;
 import com.dat.launcher3.util.PackageManagerHelper;
 import com.dat.launcher3.util.Preconditions;
 import com.dat.launcher3.util.Provider;
@@ -54,11 +54,11 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.File;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -93,71 +93,76 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
     private static final String APP_WIDGET_TYPE_KEY = "isAppWidget";
     private static final String USER_HANDLE_KEY = "userHandle";
 
-    // The set of shortcuts that are pending install
+    // The set of shortcuts that were pending install in the shared preferences, before they were
+    // moved to a journal file
     private static final String APPS_PENDING_INSTALL = "apps_to_install";
 
+    // The shortcuts that are pending install, only accessed through getQueue()
+    private static AppendOnlyJournal sQueue;
+
     public static final int NEW_SHORTCUT_BOUNCE_DURATION = 450;
     public static final int NEW_SHORTCUT_STAGGER_DELAY = 85;
 
-    private static final Handler sHandler = new Handler(LauncherModel.getWorkerLooper()) {
-
-        @Override
-        public void handleMessage(Message msg) {
-            switch (msg.what) {
-                case MSG_ADD_TO_QUEUE: {
-                    Pair<Context, PendingInstallShortcutInfo> pair =
-                            (Pair<Context, PendingInstallShortcutInfo>) msg.obj;
-                    String encoded = pair.second.encodeToString();
-                    SharedPreferences prefs = Utilities.getPrefs(pair.first);
-                    Set<String> strings = prefs.getStringSet(APPS_PENDING_INSTALL, null);
-                    strings = (strings != null) ? new HashSet<>(strings) : new HashSet<String>(1);
-                    strings.add(encoded);
-                    prefs.edit().putStringSet(APPS_PENDING_INSTALL, strings).apply();
+    /**
+     * Handles an operation sent with {@link #sendToWorker}, on the worker thread.
+     */
+    private static void handleOnWorker(int what, Object obj) {
+        switch (what) {
+            case MSG_ADD_TO_QUEUE: {
+                Pair<Context, PendingInstallShortcutInfo> pair =
+                        (Pair<Context, PendingInstallShortcutInfo>) obj;
+                String encoded = pair.second.encodeToString();
+                if (encoded != null) {
+                    getQueue(pair.first).append(encoded);
+                }
+                return;
+            }
+            case MSG_FLUSH_QUEUE: {
+                Context context = (Context) obj;
+                LauncherModel model = LauncherAppState.getInstance(context).getModel();
+                if (model.getCallback() == null) {
+                    // Launcher not loaded
                     return;
                 }
-                case MSG_FLUSH_QUEUE: {
-                    Context context = (Context) msg.obj;
-                    LauncherModel model = LauncherAppState.getInstance(context).getModel();
-                    if (model.getCallback() == null) {
-                        // Launcher not loaded
+
+                ArrayList<Pair<ItemInfo, Object>> installQueue = new ArrayList<>();
+                AppendOnlyJournal queue = getQueue(context);
+                if (queue.isEmpty()) {
+                    return;
+                }
+
+                LauncherAppsCompat launcherApps = LauncherAppsCompat.getInstance(context);
+                HashSet<String> seen = new HashSet<>();
+                queue.forEach(encoded -> {
+                    if (DBG) Log.d(TAG, "Getting APPS_PENDING_INSTALL: " + encoded);
+                    if (!seen.add(encoded)) {
+                        // The same item was queued more than once
                         return;
                     }
-
-                    ArrayList<Pair<ItemInfo, Object>> installQueue = new ArrayList<>();
-                    SharedPreferences prefs = Utilities.getPrefs(context);
-                    Set<String> strings = prefs.getStringSet(APPS_PENDING_INSTALL, null);
-                    if (DBG) Log.d(TAG, "Getting and clearing APPS_PENDING_INSTALL: " + strings);
-                    if (strings == null) {
+                    PendingInstallShortcutInfo info = decode(encoded, context);
+                    if (info == null) {
                         return;
                     }
 
-                    LauncherAppsCompat launcherApps = LauncherAppsCompat.getInstance(context);
-                    for (String encoded : strings) {
-                        PendingInstallShortcutInfo info = decode(encoded, context);
-                        if (info == null) {
-                            continue;
-                        }
-
-                        String pkg = getIntentPackage(info.launchIntent);
-                        if (!TextUtils.isEmpty(pkg)
-                                && !launcherApps.isPackageEnabledForProfile(pkg, info.user)) {
-                            if (DBG) Log.d(TAG, "Ignoring shortcut for absent package: "
-                                    + info.launchIntent);
-                            continue;
-                        }
-
-                        // Generate a shortcut info to add into the model
-                        installQueue.add(info.getItemInfo());
-                    }
-                    prefs.edit().remove(APPS_PENDING_INSTALL).apply();
-                    if (!installQueue.isEmpty()) {
-                        model.addAndBindAddedWorkspaceItems(installQueue);
+                    String pkg = getIntentPackage(info.launchIntent);
+                    if (!TextUtils.isEmpty(pkg)
+                            && !launcherApps.isPackageEnabledForProfile(pkg, info.user)) {
+                        if (DBG) Log.d(TAG, "Ignoring shortcut for absent package: "
+                                + info.launchIntent);
+                        return;
                     }
-                    return;
+
+                    // Generate a shortcut info to add into the model
+                    installQueue.add(info.getItemInfo());
+                });
+                queue.clear();
+                if (!installQueue.isEmpty()) {
+                    model.addAndBindAddedWorkspaceItems(installQueue);
                 }
+                return;
             }
         }
-    };
+    }
 
     public static void removeFromInstallQueue(Context context, HashSet<String> packageNames,
             UserHandle user) {
@@ -166,31 +171,42 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
         }
         Preconditions.assertWorkerThread();
 
-        SharedPreferences sp = Utilities.getPrefs(context);
-        Set<String> strings = sp.getStringSet(APPS_PENDING_INSTALL, null);
-        if (DBG) {
-            Log.d(TAG, "APPS_PENDING_INSTALL: " + strings
-                    + ", removing packages: " + packageNames);
-        }
-        if (Utilities.isEmpty(strings)) {
+        AppendOnlyJournal queue = getQueue(context);
+        if (DBG) Log.d(TAG, "Removing packages from APPS_PENDING_INSTALL: " + packageNames);
+        if (queue.isEmpty()) {
             return;
         }
-        Set<String> newStrings = new HashSet<>(strings);
-        Iterator<String> newStringsIter = newStrings.iterator();
-        while (newStringsIter.hasNext()) {
-            String encoded = newStringsIter.next();
+        queue.removeIf(encoded -> {
             try {
                 Decoder decoder = new Decoder(encoded, context);
-                if (packageNames.contains(getIntentPackage(decoder.launcherIntent)) &&
-                        user.equals(decoder.user)) {
-                    newStringsIter.remove();
-                }
+                return packageNames.contains(getIntentPackage(decoder.launcherIntent)) &&
+                        user.equals(decoder.user);
             } catch (JSONException | URISyntaxException e) {
                 Log.d(TAG, "Exception reading shortcut to add: " + e);
-                newStringsIter.remove();
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Returns the journal of the items pending install, moving the items queued by a previous
+     * version in the shared preferences to it.
+     */
+    private static synchronized AppendOnlyJournal getQueue(Context context) {
+        if (sQueue == null) {
+            sQueue = new AppendOnlyJournal(
+                    new File(context.getFilesDir(), LauncherFiles.INSTALL_QUEUE_JOURNAL));
+
+            SharedPreferences prefs = Utilities.getPrefs(context);
+            Set<String> strings = prefs.getStringSet(APPS_PENDING_INSTALL, null);
+            if (strings != null) {
+                for (String encoded : strings) {
+                    sQueue.append(encoded);
+                }
+                prefs.edit().remove(APPS_PENDING_INSTALL).apply();
             }
         }
-        sp.edit().putStringSet(APPS_PENDING_INSTALL, newStrings).apply();
+        return sQueue;
     }
 
     public void onReceive(Context context, Intent data) {
@@ -267,12 +283,7 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
     public static HashSet<ShortcutKey> getPendingShortcuts(Context context) {
         HashSet<ShortcutKey> result = new HashSet<>();
 
-        Set<String> strings = Utilities.getPrefs(context).getStringSet(APPS_PENDING_INSTALL, null);
-        if (Utilities.isEmpty(strings)) {
-            return result;
-        }
-
-        for (String encoded : strings) {
+        getQueue(context).forEach(encoded -> {
             try {
                 Decoder decoder = new Decoder(encoded, context);
                 if (decoder.optBoolean(DEEPSHORTCUT_TYPE_KEY)) {
@@ -281,16 +292,25 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
             } catch (JSONException | URISyntaxException e) {
                 Log.d(TAG, "Exception reading shortcut to add: " + e);
             }
-        }
+        });
         return result;
     }
 
     private static void queuePendingShortcutInfo(PendingInstallShortcutInfo info, Context context) {
         // Queue the item up for adding if launcher has not loaded properly yet
-        Message.obtain(sHandler, MSG_ADD_TO_QUEUE, Pair.create(context, info)).sendToTarget();
+        sendToWorker(MSG_ADD_TO_QUEUE, Pair.create(context, info));
         flushInstallQueue(context);
     }
 
+    /**
+     * Runs {@link #handleOnWorker} on the worker thread, in order with the other tasks of the
+     * model.
+     */
+    private static void sendToWorker(int what, Object obj) {
+        LauncherModel.getScheduler().execute(ModelTaskScheduler.PRIORITY_BIND,
+                () -> handleOnWorker(what, obj));
+    }
+
     public static void enableInstallQueue(int flag) {
         sInstallQueueDisabledFlags |= flag;
     }
@@ -303,7 +323,7 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
         if (sInstallQueueDisabledFlags != 0) {
             return;
         }
-        Message.obtain(sHandler, MSG_FLUSH_QUEUE, context.getApplicationContext()).sendToTarget();
+        sendToWorker(MSG_FLUSH_QUEUE, context.getApplicationContext());
     }
 
     /**
@@ -24,6 +24,7 @@ import android.content.res.XmlResourceParser;
 import android.graphics.Point;
 import android.support.annotation.VisibleForTesting;
 import android.util.DisplayMetrics;
+import android.util.Log;
 import android.util.Xml;
 import android.view.Display;
 import android.view.WindowManager;
@@ -31,10 +32,19 @@ import android.view.WindowManager;
 import com.dat.launcher3.R;
 import com.dat.launcher3.config.FeatureFlags;
 import com.dat.launcher3.util.Thunk;
+import com.dat.launcher3.util.TraceHelper;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -42,6 +52,11 @@ import java.util.Comparator;
 
 public class InvariantDeviceProfile {
 
+    private static final String TAG = "InvariantDeviceProfile";
+
+    // Version of the format of the parsed profiles cache
+    private static final int PROFILES_CACHE_VERSION = 1;
+
     // This is a static that we use for the default icon size on a 4/5-inch phone
     private static float DEFAULT_ICON_SIZE_DP = 60;
 
@@ -180,7 +195,99 @@ public class InvariantDeviceProfile {
         }
     }
 
+    /**
+     * Returns the profiles defined in {@link R.xml#device_profiles}, from the cache written the
+     * last time they were parsed if it is still valid.
+     */
     ArrayList<InvariantDeviceProfile> getPredefinedDeviceProfiles(Context context) {
+        File cacheFile = new File(context.getCacheDir(), LauncherFiles.DEVICE_PROFILES_CACHE);
+        String cacheKey = getProfilesCacheKey(context);
+        ArrayList<InvariantDeviceProfile> profiles = readProfilesCache(cacheFile, cacheKey);
+        if (profiles == null) {
+            TraceHelper.beginSpan("InvariantDeviceProfile: parse profiles");
+            profiles = parseDeviceProfiles(context);
+            TraceHelper.endSpan();
+            writeProfilesCache(cacheFile, cacheKey, profiles);
+        }
+        return profiles;
+    }
+
+    /**
+     * Returns a key which changes when the APK is updated, or when the configuration changes in
+     * a way which can select different resources for the profiles.
+     */
+    private static String getProfilesCacheKey(Context context) {
+        String apk = context.getApplicationInfo().sourceDir;
+        Configuration config = context.getResources().getConfiguration();
+        return apk + ":" + new File(apk).lastModified()
+                + ":" + config.densityDpi + ":" + config.smallestScreenWidthDp
+                + ":" + config.screenLayout;
+    }
+
+    private static ArrayList<InvariantDeviceProfile> readProfilesCache(File file, String key) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != PROFILES_CACHE_VERSION || !key.equals(in.readUTF())) {
+                return null;
+            }
+            int count = in.readInt();
+            ArrayList<InvariantDeviceProfile> profiles = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                profiles.add(new InvariantDeviceProfile(
+                        in.readBoolean() ? in.readUTF() : null,
+                        in.readFloat(), in.readFloat(),
+                        in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                        in.readFloat(), in.readFloat(), in.readFloat(),
+                        in.readInt(), in.readInt(), in.readInt()));
+            }
+            return profiles;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Invalid device profiles cache", e);
+            return null;
+        }
+    }
+
+    private static void writeProfilesCache(
+            File file, String key, ArrayList<InvariantDeviceProfile> profiles) {
+        // Write a new file and replace the cache with it, so that it is never read partially
+        // written.
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(PROFILES_CACHE_VERSION);
+            out.writeUTF(key);
+            out.writeInt(profiles.size());
+            for (InvariantDeviceProfile p : profiles) {
+                out.writeBoolean(p.name != null);
+                if (p.name != null) {
+                    out.writeUTF(p.name);
+                }
+                out.writeFloat(p.minWidthDps);
+                out.writeFloat(p.minHeightDps);
+                out.writeInt(p.numRows);
+                out.writeInt(p.numColumns);
+                out.writeInt(p.numFolderRows);
+                out.writeInt(p.numFolderColumns);
+                out.writeFloat(p.iconSize);
+                out.writeFloat(p.landscapeIconSize);
+                out.writeFloat(p.iconTextSize);
+                out.writeInt(p.numHotseatIcons);
+                out.writeInt(p.defaultLayoutId);
+                out.writeInt(p.demoModeLayoutId);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write device profiles cache", e);
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+        }
+    }
+
+    private ArrayList<InvariantDeviceProfile> parseDeviceProfiles(Context context) {
         ArrayList<InvariantDeviceProfile> profiles = new ArrayList<>();
         try (XmlResourceParser parser = context.getResources().getXml(R.xml.device_profiles)) {
             final int depth = parser.getDepth();
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.launcher3;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.text.PrecomputedText;
+import android.util.LruCache;
+import android.util.SparseArray;
+
+import com.dat.launcher3.util.TraceHelper;
+import com.dat.launcher3.util.UiThreadHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cache of the measured text of {@link BubbleTextView} labels, so that the same label shown on
+ * multiple surfaces, or bound again, is only measured once.
+ *
+ * Entries are keyed by the label and the {@link PrecomputedText.Params} of the view, which
+ * include the text size and typeface. The measurement does not depend on the width of the view.
+ * The labels of all apps are measured on a background thread when they are bound.
+ */
+@TargetApi(Build.VERSION_CODES.P)
+public class LabelLayoutCache {
+
+    private static final int MAX_ENTRIES = 500;
+
+    private final LruCache<Key, PrecomputedText> mCache = new LruCache<>(MAX_ENTRIES);
+    private final Handler mWorkerHandler = new Handler(UiThreadHelper.getBackgroundLooper());
+
+    // Text params of each icon display, only accessed on the UI thread
+    private final SparseArray<PrecomputedText.Params> mDisplayParams = new SparseArray<>();
+
+    /**
+     * Sets the params of the views of {@param display}, used to measure labels in advance.
+     */
+    public void setDisplayParams(int display, PrecomputedText.Params params) {
+        mDisplayParams.put(display, params);
+    }
+
+    /**
+     * Returns the measured {@param label} for a view with {@param params}, measuring it now if
+     * it is not in the cache.
+     */
+    public CharSequence getLabel(CharSequence label, PrecomputedText.Params params) {
+        if (label == null) {
+            return null;
+        }
+        Key key = new Key(label.toString(), params);
+        PrecomputedText text = mCache.get(key);
+        if (text == null) {
+            TraceHelper.beginSpan("LabelLayoutCache: miss");
+            text = PrecomputedText.create(key.label, params);
+            TraceHelper.endSpan();
+            mCache.put(key, text);
+        }
+        return text;
+    }
+
+    /**
+     * Measures the titles of {@param items} on a background thread, for the views of
+     * {@param display}.
+     */
+    public void precompute(int display, List<? extends ItemInfo> items) {
+        PrecomputedText.Params params = mDisplayParams.get(display);
+        if (params == null) {
+            // No view of this display was created yet.
+            return;
+        }
+        ArrayList<String> labels = new ArrayList<>(items.size());
+        for (ItemInfo item : items) {
+            if (item.title != null) {
+                labels.add(item.title.toString());
+            }
+        }
+        mWorkerHandler.post(() -> {
+            TraceHelper.beginSpan("LabelLayoutCache: precompute");
+            for (String label : labels) {
+                Key key = new Key(label, params);
+                if (mCache.get(key) == null) {
+                    mCache.put(key, PrecomputedText.create(label, params));
+                }
+            }
+            TraceHelper.endSpan();
+        });
+    }
+
+    private static class Key {
+        final String label;
+        final PrecomputedText.Params params;
+
+        Key(String label, PrecomputedText.Params params) {
+            this.label = label;
+            this.params = params;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return label.equals(other.label) && params.equals(other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * label.hashCode() + params.hashCode();
+        }
+    }
+}
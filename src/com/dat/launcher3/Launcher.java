@@ -85,6 +85,7 @@ import com.dat.launcher3.dragndrop.DragLayer;
 import com.dat.launcher3.dragndrop.DragView;
 import com.dat.launcher3.folder.FolderIcon;
 import com.dat.launcher3.folder.FolderIconPreviewVerifier;
+import com.dat.launcher3.graphics.DragBitmapPool;
 import com.dat.launcher3.keyboard.CustomActionsPopup;
 import com.dat.launcher3.keyboard.ViewGroupFocusHelper;
 import com.dat.launcher3.logging.FileLog;
@@ -120,7 +121,7 @@ import com.dat.launcher3.widget.PendingAddWidgetInfo;
 import com.dat.launcher3.widget.PendingAppWidgetHostView;
 import com.dat.launcher3.widget.WidgetAddFlowHandler;
 import com.dat.launcher3.widget.WidgetHostViewLoader;
-import com.dat.launcher3.widget.WidgetListRowEntry;
+import com.dat.launcher3.widget.WidgetsChangeSet;
 import com.dat.launcher3.widget.WidgetsFullSheet;
 import com.dat.launcher3.widget.custom.CustomWidgetParser;
 import com.dat.launcher3.logging.LoggerUtils;
@@ -739,6 +740,7 @@ public class Launcher extends BaseDraggingActivity implements LauncherExterns,
                 mStateManager.getState().containerType, -1);
 
         mAppWidgetHost.setListenIfResumed(false);
+        LauncherAppState.getInstance(this).getMaintenanceScheduler().setLauncherVisible(false);
 
         NotificationListener.removeNotificationsChangedListener();
         getStateManager().moveToRestState();
@@ -758,6 +760,7 @@ public class Launcher extends BaseDraggingActivity implements LauncherExterns,
             mLauncherCallbacks.onStart();
         }
         mAppWidgetHost.setListenIfResumed(true);
+        LauncherAppState.getInstance(this).getMaintenanceScheduler().setLauncherVisible(true);
         NotificationListener.setNotificationsChangedListener(mPopupDataProvider);
         UiFactory.onStart(this);
     }
@@ -791,6 +794,7 @@ public class Launcher extends BaseDraggingActivity implements LauncherExterns,
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.onResume();
         }
+        mAppWidgetHost.applyDeferredUpdates();
         UiFactory.onLauncherStateOrResumeChanged(this);
 
         TraceHelper.endSection("ON_RESUME");
@@ -808,6 +812,7 @@ public class Launcher extends BaseDraggingActivity implements LauncherExterns,
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.onPause();
         }
+        mAppWidgetHost.saveSnapshots();
     }
 
     @Override
@@ -1707,6 +1712,10 @@ public class Launcher extends BaseDraggingActivity implements LauncherExterns,
             // This clears all widget bitmaps from the widget tray
             // TODO(hyunyoungs)
         }
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            DragBitmapPool.INSTANCE.clear();
+        }
+        mWorkspace.getLayerManager().onTrimMemory(level);
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.onTrimMemory(level);
         }
@@ -2179,6 +2188,7 @@ public class Launcher extends BaseDraggingActivity implements LauncherExterns,
      */
     public void bindAllApplications(ArrayList<AppInfo> apps) {
         mAppsView.getAppsStore().setApps(apps);
+        precomputeLabels(apps);
 
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.bindAllApplications(apps);
@@ -2202,6 +2212,14 @@ public class Launcher extends BaseDraggingActivity implements LauncherExterns,
     @Override
     public void bindAppsAddedOrUpdated(ArrayList<AppInfo> apps) {
         mAppsView.getAppsStore().addOrUpdateApps(apps);
+        precomputeLabels(apps);
+    }
+
+    private void precomputeLabels(ArrayList<AppInfo> apps) {
+        LabelLayoutCache cache = LauncherAppState.getInstance(this).getLabelLayoutCache();
+        if (cache != null) {
+            cache.precompute(BubbleTextView.DISPLAY_ALL_APPS, apps);
+        }
     }
 
     @Override
@@ -2256,7 +2274,7 @@ public class Launcher extends BaseDraggingActivity implements LauncherExterns,
     }
 
     @Override
-    public void bindAllWidgets(final ArrayList<WidgetListRowEntry> allWidgets) {
+    public void bindAllWidgets(final WidgetsChangeSet allWidgets) {
         mPopupDataProvider.setAllWidgets(allWidgets);
         AbstractFloatingView topView = AbstractFloatingView.getTopOpenView(this);
         if (topView != null) {
@@ -2274,9 +2292,14 @@ public class Launcher extends BaseDraggingActivity implements LauncherExterns,
 
     /**
      * $ adb shell dumpsys activity com.dat.launcher3.Launcher [--all]
+     * $ adb shell dumpsys activity com.dat.launcher3.Launcher --trace-json
      */
     @Override
     public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args.length > 0 && TextUtils.equals(args[0], "--trace-json")) {
+            TraceHelper.dumpChromeTrace(writer);
+            return;
+        }
         super.dump(prefix, fd, writer, args);
 
         if (args.length > 0 && TextUtils.equals(args[0], "--all")) {
@@ -2309,6 +2332,9 @@ public class Launcher extends BaseDraggingActivity implements LauncherExterns,
         writer.println(" mPendingActivityResult=" + mPendingActivityResult);
         writer.println(" mRotationHelper: " + mRotationHelper);
         dumpMisc(writer);
+        mAppWidgetHost.dump(prefix, writer);
+        mWorkspace.getLayerManager().dump(prefix, writer);
+        TraceHelper.dump(prefix, writer);
 
         try {
             FileLog.flushAll(writer);
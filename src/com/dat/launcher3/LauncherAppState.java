@@ -29,10 +29,12 @@ import com.dat.launcher3.compat.LauncherAppsCompat;
 import com.dat.launcher3.compat.PackageInstallerCompat;
 import com.dat.launcher3.compat.UserManagerCompat;
 import com.dat.launcher3.config.FeatureFlags;
+import com.dat.launcher3.model.MaintenanceScheduler;
 import com.dat.launcher3.notification.NotificationListener;
 import com.dat.launcher3.util.ConfigMonitor;
 import com.dat.launcher3.util.Preconditions;
 import com.dat.launcher3.util.SettingsObserver;
+import com.dat.launcher3.widget.WidgetSnapshotCache;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -46,8 +48,11 @@ public class LauncherAppState {
 
     private final Context mContext;
     private final LauncherModel mModel;
+    private final MaintenanceScheduler mMaintenanceScheduler;
     private final IconCache mIconCache;
     private final WidgetPreviewLoader mWidgetCache;
+    private final WidgetSnapshotCache mWidgetSnapshotCache;
+    private final LabelLayoutCache mLabelLayoutCache;
     private final InvariantDeviceProfile mInvariantDeviceProfile;
     private final SettingsObserver mNotificationBadgingObserver;
 
@@ -91,7 +96,10 @@ public class LauncherAppState {
         mInvariantDeviceProfile = new InvariantDeviceProfile(mContext);
         mIconCache = new IconCache(mContext, mInvariantDeviceProfile);
         mWidgetCache = new WidgetPreviewLoader(mContext, mIconCache);
+        mWidgetSnapshotCache = new WidgetSnapshotCache(mContext);
+        mLabelLayoutCache = Utilities.ATLEAST_P ? new LabelLayoutCache() : null;
         mModel = new LauncherModel(this, mIconCache, AppFilter.newInstance(mContext));
+        mMaintenanceScheduler = new MaintenanceScheduler(mContext);
 
         LauncherAppsCompat.getInstance(mContext).addOnAppsChangedCallback(mModel);
 
@@ -139,6 +147,7 @@ public class LauncherAppState {
         final LauncherAppsCompat launcherApps = LauncherAppsCompat.getInstance(mContext);
         launcherApps.removeOnAppsChangedCallback(mModel);
         PackageInstallerCompat.getInstance(mContext).onStop();
+        mMaintenanceScheduler.unregister();
         if (mNotificationBadgingObserver != null) {
             mNotificationBadgingObserver.unregister();
         }
@@ -147,6 +156,7 @@ public class LauncherAppState {
     LauncherModel setLauncher(Launcher launcher) {
         getLocalProvider(mContext).setLauncherProviderChangeListener(launcher);
         mModel.initialize(launcher);
+        mMaintenanceScheduler.setLauncherVisible(launcher.isStarted());
         return mModel;
     }
 
@@ -162,6 +172,21 @@ public class LauncherAppState {
         return mWidgetCache;
     }
 
+    public MaintenanceScheduler getMaintenanceScheduler() {
+        return mMaintenanceScheduler;
+    }
+
+    public WidgetSnapshotCache getWidgetSnapshotCache() {
+        return mWidgetSnapshotCache;
+    }
+
+    /**
+     * Returns the cache of measured icon labels, or null below P.
+     */
+    public LabelLayoutCache getLabelLayoutCache() {
+        return mLabelLayoutCache;
+    }
+
     public InvariantDeviceProfile getInvariantDeviceProfile() {
         return mInvariantDeviceProfile;
     }
@@ -35,6 +35,7 @@ import com.dat.launcher3.config.FeatureFlags;
 import com.dat.launcher3.widget.DeferredAppWidgetHostView;
 import com.dat.launcher3.widget.LauncherAppWidgetHostView;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 
 
@@ -54,6 +55,11 @@ public class LauncherAppWidgetHost extends AppWidgetHost {
     private final ArrayList<ProviderChangedListener> mProviderChangeListeners = new ArrayList<>();
     private final SparseArray<LauncherAppWidgetHostView> mViews = new SparseArray<>();
 
+    // Widgets whose snapshot is saved after the current one, see #saveSnapshots.
+    private final ArrayList<LauncherAppWidgetHostView> mPendingSnapshots = new ArrayList<>();
+    private final Handler mSnapshotHandler = new Handler();
+    private final Runnable mSaveNextSnapshot = this::saveNextSnapshot;
+
     private final Context mContext;
     private int mFlags = FLAG_RESUMED;
 
@@ -164,6 +170,46 @@ public class LauncherAppWidgetHost extends AppWidgetHost {
         return super.allocateAppWidgetId();
     }
 
+    /**
+     * Applies the updates deferred by the widgets which have become visible.
+     */
+    public void applyDeferredUpdates() {
+        for (int i = mViews.size() - 1; i >= 0; i--) {
+            mViews.valueAt(i).applyDeferredUpdate();
+        }
+    }
+
+    /**
+     * Saves a snapshot of the widgets which changed since their last snapshot. A single widget is
+     * recorded per message, so that the UI thread is not blocked by all of them at once.
+     */
+    public void saveSnapshots() {
+        mPendingSnapshots.clear();
+        for (int i = mViews.size() - 1; i >= 0; i--) {
+            mPendingSnapshots.add(mViews.valueAt(i));
+        }
+        mSnapshotHandler.removeCallbacks(mSaveNextSnapshot);
+        saveNextSnapshot();
+    }
+
+    private void saveNextSnapshot() {
+        while (!mPendingSnapshots.isEmpty()) {
+            if (mPendingSnapshots.remove(mPendingSnapshots.size() - 1).saveSnapshot()) {
+                break;
+            }
+        }
+        if (!mPendingSnapshots.isEmpty()) {
+            mSnapshotHandler.post(mSaveNextSnapshot);
+        }
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Widget updates:");
+        for (int i = 0; i < mViews.size(); i++) {
+            mViews.valueAt(i).dumpUpdateStats(prefix + "  ", writer);
+        }
+    }
+
     public void addProviderChangeListener(ProviderChangedListener callback) {
         mProviderChangeListeners.add(callback);
     }
@@ -233,6 +279,10 @@ public class LauncherAppWidgetHost extends AppWidgetHost {
     public void deleteAppWidgetId(int appWidgetId) {
         super.deleteAppWidgetId(appWidgetId);
         mViews.remove(appWidgetId);
+        LauncherAppState app = LauncherAppState.getInstanceNoCreate();
+        if (app != null) {
+            app.getWidgetSnapshotCache().remove(appWidgetId);
+        }
     }
 
     @Override
@@ -22,6 +22,11 @@ public class LauncherFiles {
 
     public static final String WIDGET_PREVIEWS_DB = "widgetpreviews.db";
     public static final String APP_ICONS_DB = "app_icons.db";
+    public static final String WIDGET_SNAPSHOTS_DB = "widget_snapshots.db";
+    public static final String INSTALL_QUEUE_JOURNAL = "install_queue.journal";
+    public static final String USER_EVENTS_RING = "user_events";
+    // Stored in the cache directory, as it can be parsed again from the resources.
+    public static final String DEVICE_PROFILES_CACHE = "device_profiles.cache";
 
     public static final List<String> ALL_FILES = Collections.unmodifiableList(Arrays.asList(
             LAUNCHER_DB,
@@ -29,5 +34,8 @@ public class LauncherFiles {
             WIDGET_PREVIEWS_DB,
             MANAGED_USER_PREFERENCES_KEY + XML,
             DEVICE_PREFERENCES_KEY + XML,
-            APP_ICONS_DB));
+            APP_ICONS_DB,
+            WIDGET_SNAPSHOTS_DB,
+            INSTALL_QUEUE_JOURNAL,
+            USER_EVENTS_RING));
 }
@@ -44,6 +44,7 @@ import com.dat.launcher3.model.BgDataModel;
 import com.dat.launcher3.model.CacheDataUpdatedTask;
 import com.dat.launcher3.model.LoaderResults;
 import com.dat.launcher3.model.LoaderTask;
+import com.dat.launcher3.model.ModelTaskScheduler;
 import com.dat.launcher3.model.ModelWriter;
 import com.dat.launcher3.model.PackageInstallStateChangedTask;
 import com.dat.launcher3.model.PackageUpdatedTask;
@@ -60,7 +61,7 @@ import com.dat.launcher3.util.Preconditions;
 import com.dat.launcher3.util.Provider;
 import com.dat.launcher3.util.Thunk;
 import com.dat.launcher3.util.ViewOnDrawExecutor;
-import com.dat.launcher3.widget.WidgetListRowEntry;
+import com.dat.launcher3.widget.WidgetsChangeSet;
 import com.dat.launcher3.compat.PackageInstallerCompat;
 
 import java.io.FileDescriptor;
@@ -88,6 +89,18 @@ public class LauncherModel extends BroadcastReceiver
     @Thunk
     final LauncherAppState mApp;
     @Thunk final Object mLock = new Object();
+
+    /**
+     * Package changes arriving within this window of each other, for the same operation and user,
+     * are applied to the model in a single {@link PackageUpdatedTask}.
+     */
+    private static final long PACKAGE_TASK_COALESCE_WINDOW_MS = 100;
+
+    // The last package task, which is not yet posted to the worker thread and can still be
+    // merged with the next package changes. Guarded by mPackageTaskLock.
+    private final Object mPackageTaskLock = new Object();
+    private PackageUpdatedTask mPendingPackageTask;
+    private final Runnable mPendingPackageTaskRunner = this::runPendingPackageTask;
     @Thunk
     LoaderTask mLoaderTask;
     @Thunk boolean mIsLoaderTaskRunning;
@@ -96,7 +109,10 @@ public class LauncherModel extends BroadcastReceiver
     static {
         sWorkerThread.start();
     }
+    // Only used for timers, the work itself goes through sScheduler to keep its order
     @Thunk static final Handler sWorker = new Handler(sWorkerThread.getLooper());
+    private static final ModelTaskScheduler sScheduler =
+            new ModelTaskScheduler(sWorkerThread.getLooper());
 
     // Indicates whether the current model data is valid or not.
     // We start off with everything not loaded. After that, we assume that
@@ -155,7 +171,7 @@ public class LauncherModel extends BroadcastReceiver
         public void bindRestoreItemsChange(HashSet<ItemInfo> updates);
         public void bindWorkspaceComponentsRemoved(ItemInfoMatcher matcher);
         public void bindAppInfosRemoved(ArrayList<AppInfo> appInfos);
-        public void bindAllWidgets(ArrayList<WidgetListRowEntry> widgets);
+        public void bindAllWidgets(WidgetsChangeSet widgets);
         public void onPageBoundSynchronously(int page);
         public void executeOnNextDraw(ViewOnDrawExecutor executor);
         public void bindDeepShortcutMap(MultiHashMap<ComponentKey, String> deepShortcutMap);
@@ -163,18 +179,13 @@ public class LauncherModel extends BroadcastReceiver
 
     LauncherModel(LauncherAppState app, IconCache iconCache, AppFilter appFilter) {
         mApp = app;
-        mBgAllAppsList = new AllAppsList(iconCache, appFilter);
+        mBgAllAppsList = new AllAppsList(app.getContext(), iconCache, appFilter);
     }
 
     /** Runs the specified runnable immediately if called from the worker thread, otherwise it is
-     * posted on the worker thread handler. */
+     * queued after the model updates already queued by the scheduler. */
     private static void runOnWorkerThread(Runnable r) {
-        if (sWorkerThread.getThreadId() == Process.myTid()) {
-            r.run();
-        } else {
-            // If we are not on the worker thread, then post to the worker handler
-            sWorker.post(r);
-        }
+        sScheduler.execute(ModelTaskScheduler.PRIORITY_BIND, r);
     }
 
     public void setPackageState(PackageInstallerCompat.PackageInstallInfo installInfo) {
@@ -297,9 +308,10 @@ public class LauncherModel extends BroadcastReceiver
                     sBgDataModel.workspaceScreens.clear();
                     sBgDataModel.workspaceScreens.addAll(screensCopy);
                 }
+                sBgDataModel.invalidateSnapshot();
             }
         };
-        runOnWorkerThread(r);
+        sScheduler.execute(ModelTaskScheduler.PRIORITY_INTERACTIVE, r);
     }
 
     /**
@@ -577,8 +589,9 @@ public class LauncherModel extends BroadcastReceiver
      */
     public void refreshShortcutsIfRequired() {
         if (Utilities.ATLEAST_NOUGAT_MR1) {
-            sWorker.removeCallbacks(mShortcutPermissionCheckRunnable);
-            sWorker.post(mShortcutPermissionCheckRunnable);
+            sScheduler.removeTasks(mShortcutPermissionCheckRunnable);
+            sScheduler.post(ModelTaskScheduler.PRIORITY_BIND, mShortcutPermissionCheckRunnable,
+                    mShortcutPermissionCheckRunnable);
         }
     }
 
@@ -594,7 +607,43 @@ public class LauncherModel extends BroadcastReceiver
 
     public void enqueueModelUpdateTask(ModelUpdateTask task) {
         task.init(mApp, this, sBgDataModel, mBgAllAppsList, mUiExecutor);
-        runOnWorkerThread(task);
+        PackageUpdatedTask pendingTask;
+        synchronized (mPackageTaskLock) {
+            if (task instanceof PackageUpdatedTask) {
+                PackageUpdatedTask packageTask = (PackageUpdatedTask) task;
+                if (mPendingPackageTask != null && mPendingPackageTask.merge(packageTask)) {
+                    return;
+                }
+                pendingTask = mPendingPackageTask;
+                mPendingPackageTask = packageTask;
+                sWorker.removeCallbacks(mPendingPackageTaskRunner);
+                sWorker.postDelayed(mPendingPackageTaskRunner, PACKAGE_TASK_COALESCE_WINDOW_MS);
+                task = null;
+            } else {
+                pendingTask = mPendingPackageTask;
+                mPendingPackageTask = null;
+                sWorker.removeCallbacks(mPendingPackageTaskRunner);
+            }
+        }
+        // Keep the order of the tasks by running the pending package task first.
+        if (pendingTask != null) {
+            sScheduler.execute(ModelTaskScheduler.PRIORITY_BIND, pendingTask);
+        }
+        if (task != null) {
+            sScheduler.execute(ModelTaskScheduler.PRIORITY_BIND, task);
+        }
+    }
+
+    private void runPendingPackageTask() {
+        PackageUpdatedTask task;
+        synchronized (mPackageTaskLock) {
+            task = mPendingPackageTask;
+            mPendingPackageTask = null;
+        }
+        if (task != null) {
+            // Not run inline, as the tasks enqueued before it might still be queued.
+            sScheduler.post(ModelTaskScheduler.PRIORITY_BIND, task, null);
+        }
     }
 
     /**
@@ -667,6 +716,8 @@ public class LauncherModel extends BroadcastReceiver
             }
         }
         sBgDataModel.dump(prefix, fd, writer, args);
+        sScheduler.dump(prefix, writer);
+        mApp.getMaintenanceScheduler().dump(prefix, writer);
     }
 
     public Callbacks getCallback() {
@@ -680,6 +731,13 @@ public class LauncherModel extends BroadcastReceiver
         return sWorkerThread.getLooper();
     }
 
+    /**
+     * @return the scheduler which runs the tasks of the model on the worker thread by priority.
+     */
+    public static ModelTaskScheduler getScheduler() {
+        return sScheduler;
+    }
+
     public static void setWorkerPriority(final int priority) {
         Process.setThreadPriority(sWorkerThread.getThreadId(), priority);
     }
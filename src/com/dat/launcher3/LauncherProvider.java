@@ -392,6 +392,14 @@ public class LauncherProvider extends ContentProvider {
                 mOpenHelper.removeGhostWidgets(mOpenHelper.getWritableDatabase());
                 return null;
             }
+            case LauncherSettings.Settings.METHOD_VACUUM: {
+                try {
+                    mOpenHelper.getWritableDatabase().execSQL("VACUUM");
+                } catch (SQLException e) {
+                    Log.e(TAG, "Unable to compact the database", e);
+                }
+                return null;
+            }
         }
         return null;
     }
@@ -51,6 +51,7 @@ import android.view.View;
 import android.view.animation.Interpolator;
 
 import com.dat.launcher3.config.FeatureFlags;
+import com.dat.launcher3.util.LongArrayList;
 
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
@@ -83,6 +84,12 @@ public final class Utilities {
     private static final Matrix sMatrix = new Matrix();
     private static final Matrix sInverseMatrix = new Matrix();
 
+    public static final boolean ATLEAST_R =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.R;
+
+    public static final boolean ATLEAST_Q =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+
     public static final boolean ATLEAST_P =
             Build.VERSION.SDK_INT >= Build.VERSION_CODES.P;
 
@@ -449,6 +456,10 @@ public final class Utilities {
         return String.format(Locale.ENGLISH, "%s IN (%s)", columnName, TextUtils.join(", ", values));
     }
 
+    public static String createDbSelectionQuery(String columnName, LongArrayList values) {
+        return String.format(Locale.ENGLISH, "%s IN (%s)", columnName, values.toConcatString());
+    }
+
     public static boolean isBootCompleted() {
         return "1".equals(getSystemProperty("sys.boot_completed", "1"));
     }
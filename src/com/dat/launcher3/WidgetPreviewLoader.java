@@ -23,7 +23,6 @@ import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
 import android.os.CancellationSignal;
-import android.os.Handler;
 import android.os.UserHandle;
 import android.support.annotation.Nullable;
 import android.util.Log;
@@ -35,6 +34,8 @@ import com.dat.launcher3.compat.ShortcutConfigActivityInfo;
 import com.dat.launcher3.compat.UserManagerCompat;
 import com.dat.launcher3.graphics.LauncherIcons;
 import com.dat.launcher3.graphics.ShadowGenerator;
+import com.dat.launcher3.model.MaintenanceScheduler;
+import com.dat.launcher3.model.ModelTaskScheduler;
 import com.dat.launcher3.model.WidgetItem;
 import com.dat.launcher3.util.ComponentKey;
 import com.dat.launcher3.util.PackageUserKey;
@@ -47,9 +48,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutionException;
 
 public class WidgetPreviewLoader {
@@ -76,7 +79,7 @@ public class WidgetPreviewLoader {
     private final CacheDb mDb;
 
     private final MainThreadExecutor mMainThreadExecutor = new MainThreadExecutor();
-    @Thunk final Handler mWorkerHandler;
+    @Thunk final Executor mWorkerExecutor;
 
     public WidgetPreviewLoader(Context context, IconCache iconCache) {
         mContext = context;
@@ -84,7 +87,8 @@ public class WidgetPreviewLoader {
         mWidgetManager = AppWidgetManagerCompat.getInstance(context);
         mUserManager = UserManagerCompat.getInstance(context);
         mDb = new CacheDb(context);
-        mWorkerHandler = new Handler(LauncherModel.getWorkerLooper());
+        mWorkerExecutor = LauncherModel.getScheduler()
+                .getExecutor(ModelTaskScheduler.PRIORITY_BACKGROUND);
     }
 
     /**
@@ -157,7 +161,7 @@ public class WidgetPreviewLoader {
         removePackage(packageName, user, mUserManager.getSerialNumberForUser(user));
     }
 
-    private void removePackage(String packageName, UserHandle user, long userSerial) {
+    @Thunk void removePackage(String packageName, UserHandle user, long userSerial) {
         synchronized(mPackageVersions) {
             mPackageVersions.remove(packageName);
         }
@@ -168,16 +172,31 @@ public class WidgetPreviewLoader {
     }
 
     /**
-     * Updates the persistent DB:
+     * Returns a job which updates the persistent DB:
      *   1. Any preview generated for an old package version is removed
      *   2. Any preview for an absent package is removed
      * This ensures that we remove entries for packages which changed while the launcher was dead.
+     * The DB is scanned in the first step, and the previews of one package are removed in each of
+     * the following steps.
      *
      * @param packageUser if provided, specifies that list only contains previews for the
      *                    given package/user, otherwise the list contains all previews
      */
-    public void removeObsoletePreviews(ArrayList<? extends ComponentKey> list,
-            @Nullable PackageUserKey packageUser) {
+    public MaintenanceScheduler.Job newObsoletePreviewsJob(
+            ArrayList<? extends ComponentKey> list, @Nullable PackageUserKey packageUser) {
+        return new ObsoletePreviewsJob(list, packageUser);
+    }
+
+    public void compactDb() {
+        Preconditions.assertWorkerThread();
+        mDb.vacuum();
+    }
+
+    /**
+     * Returns the packages, by user serial, whose previews are not valid anymore.
+     */
+    @Thunk LongSparseArray<HashSet<String>> findObsoletePreviews(
+            ArrayList<? extends ComponentKey> list, @Nullable PackageUserKey packageUser) {
         Preconditions.assertWorkerThread();
 
         LongSparseArray<HashSet<String>> validPackages = new LongSparseArray<>();
@@ -230,14 +249,6 @@ public class WidgetPreviewLoader {
                 }
                 packages.add(pkg);
             }
-
-            for (int i = 0; i < packagesToDelete.size(); i++) {
-                long userId = packagesToDelete.keyAt(i);
-                UserHandle user = mUserManager.getUserForSerialNumber(userId);
-                for (String pkg : packagesToDelete.valueAt(i)) {
-                    removePackage(pkg, user, userId);
-                }
-            }
         } catch (SQLException e) {
             Log.e(TAG, "Error updating widget previews", e);
         } finally {
@@ -245,6 +256,44 @@ public class WidgetPreviewLoader {
                 c.close();
             }
         }
+        return packagesToDelete;
+    }
+
+    private class ObsoletePreviewsJob implements MaintenanceScheduler.Job {
+
+        private final ArrayList<? extends ComponentKey> mValidPreviews;
+        private final PackageUserKey mPackageUser;
+
+        // Set by the first step
+        private LongSparseArray<HashSet<String>> mPackagesToDelete;
+        private int mUserIndex;
+        private Iterator<String> mPackages;
+
+        ObsoletePreviewsJob(ArrayList<? extends ComponentKey> validPreviews,
+                PackageUserKey packageUser) {
+            mValidPreviews = validPreviews;
+            mPackageUser = packageUser;
+        }
+
+        @Override
+        public boolean runStep() {
+            if (mPackagesToDelete == null) {
+                mPackagesToDelete = findObsoletePreviews(mValidPreviews, mPackageUser);
+                return mPackagesToDelete.size() == 0;
+            }
+            while (mPackages == null || !mPackages.hasNext()) {
+                if (mPackages != null) {
+                    mUserIndex++;
+                }
+                if (mUserIndex >= mPackagesToDelete.size()) {
+                    return true;
+                }
+                mPackages = mPackagesToDelete.valueAt(mUserIndex).iterator();
+            }
+            long userId = mPackagesToDelete.keyAt(mUserIndex);
+            removePackage(mPackages.next(), mUserManager.getUserForSerialNumber(userId), userId);
+            return false;
+        }
     }
 
     /**
@@ -602,7 +651,7 @@ public class WidgetPreviewLoader {
 
             // Write the generated preview to the DB in the worker thread
             if (mVersions != null) {
-                mWorkerHandler.post(new Runnable() {
+                mWorkerExecutor.execute(new Runnable() {
                     @Override
                     public void run() {
                         if (!isCancelled()) {
@@ -632,7 +681,7 @@ public class WidgetPreviewLoader {
             // recycled set immediately. Otherwise, it will be recycled after the preview is written
             // to disk.
             if (preview != null) {
-                mWorkerHandler.post(new Runnable() {
+                mWorkerExecutor.execute(new Runnable() {
                     @Override
                     public void run() {
                         synchronized (mUnusedBitmaps) {
@@ -653,7 +702,7 @@ public class WidgetPreviewLoader {
             // in the tasks's onCancelled() call, and if cancelled while the task is writing to
             // disk, it will be cancelled in the task's onPostExecute() call.
             if (mBitmapToRecycle != null) {
-                mWorkerHandler.post(new Runnable() {
+                mWorkerExecutor.execute(new Runnable() {
                     @Override
                     public void run() {
                         synchronized (mUnusedBitmaps) {
@@ -84,6 +84,7 @@ import com.dat.launcher3.util.ItemInfoMatcher;
 import com.dat.launcher3.util.LongArrayMap;
 import com.dat.launcher3.util.PackageUserKey;
 import com.dat.launcher3.util.Thunk;
+import com.dat.launcher3.util.TraceHelper;
 import com.dat.launcher3.util.WallpaperOffsetInterpolator;
 import com.dat.launcher3.widget.LauncherAppWidgetHostView;
 import com.dat.launcher3.widget.PendingAddShortcutInfo;
@@ -179,7 +180,7 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
 
     private boolean mIsSwitchingState = false;
 
-    boolean mChildrenLayersEnabled = true;
+    private final WorkspaceLayerManager mLayerManager = new WorkspaceLayerManager(this);
 
     private boolean mStripScreensOnPageStopMoving = false;
 
@@ -366,7 +367,7 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
             layout.markCellsAsUnoccupiedForView(mDragInfo.cell);
         }
 
-        if (mOutlineProvider != null) {
+        if (mOutlineProvider != null && !mOutlineProvider.isOutlineRequested()) {
             if (dragObject.dragView != null) {
                 Bitmap preview = dragObject.dragView.getPreviewBitmap();
 
@@ -1018,6 +1019,7 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
     protected void onPageEndTransition() {
         super.onPageEndTransition();
         updateChildrenLayersEnabled();
+        mLauncher.getAppWidgetHost().applyDeferredUpdates();
 
         if (mDragController.isDragging()) {
             if (workspaceInModalState()) {
@@ -1365,49 +1367,68 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
     private void updateChildrenLayersEnabled() {
         boolean enableChildrenLayers = mIsSwitchingState || isPageInTransition();
 
-        if (enableChildrenLayers != mChildrenLayersEnabled) {
-            mChildrenLayersEnabled = enableChildrenLayers;
-            if (mChildrenLayersEnabled) {
-                enableHwLayersOnVisiblePages();
-            } else {
-                for (int i = 0; i < getPageCount(); i++) {
-                    final CellLayout cl = (CellLayout) getChildAt(i);
-                    cl.enableHardwareLayer(false);
-                }
-            }
+        if (enableChildrenLayers != mLayerManager.isActive()) {
+            mLayerManager.setActive(enableChildrenLayers);
+            enableHwLayersOnVisiblePages();
         }
     }
 
+    public WorkspaceLayerManager getLayerManager() {
+        return mLayerManager;
+    }
+
+    /**
+     * Returns whether any part of {@param page} is currently visible, or is about to be shown by
+     * the running state transition.
+     */
+    public boolean isPageInVisibleRange(View page) {
+        int index = indexOfChild(page);
+        if (index < 0) {
+            return false;
+        }
+        if (mForceDrawAdjacentPages && Math.abs(index - getCurrentPage()) <= 1) {
+            // The side pages are shown by the state transition which is running.
+            return true;
+        }
+        int[] visibleScreens = getVisibleChildrenRange();
+        return visibleScreens[0] <= index && index <= visibleScreens[1];
+    }
+
     private void enableHwLayersOnVisiblePages() {
-        if (mChildrenLayersEnabled) {
-            final int screenCount = getChildCount();
-
-            final int[] visibleScreens = getVisibleChildrenRange();
-            int leftScreen = visibleScreens[0];
-            int rightScreen = visibleScreens[1];
-            if (mForceDrawAdjacentPages) {
-                // In overview mode, make sure that the two side pages are visible.
-                leftScreen = Utilities.boundToRange(getCurrentPage() - 1, 0, rightScreen);
-                rightScreen = Utilities.boundToRange(getCurrentPage() + 1,
-                    leftScreen, getPageCount() - 1);
-            }
-
-            if (leftScreen == rightScreen) {
-                // make sure we're caching at least two pages always
-                if (rightScreen < screenCount - 1) {
-                    rightScreen++;
-                } else if (leftScreen > 0) {
-                    leftScreen--;
-                }
-            }
+        if (mLayerManager.isActive()) {
+            int[] layerPages = getLayerPageRange();
+            mLayerManager.setLayerPages(layerPages[0], layerPages[1]);
+        }
+    }
 
-            for (int i = 0; i < screenCount; i++) {
-                final CellLayout layout = (CellLayout) getPageAt(i);
-                // enable layers between left and right screen inclusive.
-                boolean enableLayer = leftScreen <= i && i <= rightScreen;
-                layout.enableHardwareLayer(enableLayer);
+    /**
+     * Returns the range of pages which should have a hardware layer while the workspace moves:
+     * the visible pages, and at least one neighbour.
+     */
+    private int[] getLayerPageRange() {
+        final int screenCount = getChildCount();
+
+        final int[] visibleScreens = getVisibleChildrenRange();
+        int leftScreen = visibleScreens[0];
+        int rightScreen = visibleScreens[1];
+        if (mForceDrawAdjacentPages) {
+            // In overview mode, make sure that the two side pages are visible.
+            leftScreen = Utilities.boundToRange(getCurrentPage() - 1, 0, rightScreen);
+            rightScreen = Utilities.boundToRange(getCurrentPage() + 1,
+                leftScreen, getPageCount() - 1);
+        }
+
+        if (leftScreen == rightScreen) {
+            // make sure we're caching at least two pages always
+            if (rightScreen < screenCount - 1) {
+                rightScreen++;
+            } else if (leftScreen > 0) {
+                leftScreen--;
             }
         }
+        visibleScreens[0] = leftScreen;
+        visibleScreens[1] = rightScreen;
+        return visibleScreens;
     }
 
     public void onWallpaperTap(MotionEvent ev) {
@@ -1446,6 +1467,8 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
 
         updateChildrenLayersEnabled();
         updateAccessibilityFlags();
+        // The visible pages may have changed without a page transition.
+        mLauncher.getAppWidgetHost().applyDeferredUpdates();
     }
 
     /**
@@ -1471,9 +1494,15 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
         // animation is started
         if (toState.hasMultipleVisiblePages) {
             mForceDrawAdjacentPages = true;
+            // Update the widgets of the side pages before they are shown.
+            mLauncher.getAppWidgetHost().applyDeferredUpdates();
         }
         invalidate(); // This will call dispatchDraw(), which calls getVisiblePages().
 
+        // Render the layers of the pages now, as the animation only starts on the next frame
+        int[] layerPages = getLayerPageRange();
+        mLayerManager.warmLayers(layerPages[0], layerPages[1]);
+
         ValueAnimator stepAnimator = ValueAnimator.ofFloat(0, 1);
         stepAnimator.addUpdateListener(listener);
         stepAnimator.setDuration(config.duration);
@@ -1548,6 +1577,9 @@ public class Workspace extends PagedView<WorkspacePageIndicator>
 
         // The drag bitmap follows the touch point around on the screen
         final Bitmap b = previewProvider.createDragBitmap();
+        TraceHelper.partitionSection(DragView.TRACE_DRAG_LATENCY, "drag bitmap created");
+        // Generate the outline while the drag view animates in, instead of once it is picked up
+        previewProvider.generateDragOutline(b);
         int halfPadding = previewProvider.previewPadding / 2;
 
         float scale = previewProvider.getScaleAndPosition(b, mTempXY);
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.launcher3;
+
+import android.content.ComponentCallbacks2;
+
+import java.io.PrintWriter;
+
+/**
+ * Decides which pages of the {@link Workspace} are drawn in a hardware layer.
+ *
+ * Layers are only used while the pages move, during a scroll or a state transition, and only on
+ * the visible pages and their neighbours. They can be rendered before a transition starts, are
+ * kept for a short time after the pages stop moving in case they move again, and are released
+ * when the memory is trimmed.
+ */
+public class WorkspaceLayerManager implements OnAlarmListener {
+
+    private static final long RELEASE_DELAY_MS = 500;
+
+    // Bytes per pixel of a hardware layer
+    private static final int LAYER_PIXEL_SIZE = 4;
+
+    private final Workspace mWorkspace;
+    private final Alarm mReleaseAlarm = new Alarm();
+
+    private boolean mActive;
+
+    // The range of pages which have a layer, inclusive
+    private int mFirstPage = -1;
+    private int mLastPage = -1;
+    private int mPageCount;
+
+    public WorkspaceLayerManager(Workspace workspace) {
+        mWorkspace = workspace;
+        mReleaseAlarm.setOnAlarmListener(this);
+    }
+
+    /**
+     * Sets whether the pages are moving. Once they stop, the layers are released after a delay.
+     */
+    public void setActive(boolean active) {
+        if (mActive == active) {
+            return;
+        }
+        mActive = active;
+        if (active) {
+            mReleaseAlarm.cancelAlarm();
+        } else {
+            mReleaseAlarm.setAlarm(RELEASE_DELAY_MS);
+        }
+    }
+
+    public boolean isActive() {
+        return mActive;
+    }
+
+    /**
+     * Enables the layers of the pages from {@param firstPage} to {@param lastPage} inclusive,
+     * and disables all the others.
+     */
+    public void setLayerPages(int firstPage, int lastPage) {
+        int pageCount = mWorkspace.getPageCount();
+        if (firstPage == mFirstPage && lastPage == mLastPage && pageCount == mPageCount) {
+            return;
+        }
+        mFirstPage = firstPage;
+        mLastPage = lastPage;
+        mPageCount = pageCount;
+        for (int i = 0; i < pageCount; i++) {
+            CellLayout page = (CellLayout) mWorkspace.getPageAt(i);
+            boolean enableLayer = firstPage <= i && i <= lastPage;
+            if (page.isHardwareLayerEnabled() != enableLayer) {
+                page.enableHardwareLayer(enableLayer);
+            }
+        }
+    }
+
+    /**
+     * Enables and renders the layers of the pages from {@param firstPage} to {@param lastPage}
+     * now, ahead of a transition which is about to start. They are released after a delay if
+     * the transition does not start.
+     */
+    public void warmLayers(int firstPage, int lastPage) {
+        setLayerPages(firstPage, lastPage);
+        for (int i = firstPage; i >= 0 && i <= lastPage; i++) {
+            ((CellLayout) mWorkspace.getPageAt(i)).buildHardwareLayer();
+        }
+        if (!mActive) {
+            mReleaseAlarm.setAlarm(RELEASE_DELAY_MS);
+        }
+    }
+
+    @Override
+    public void onAlarm(Alarm alarm) {
+        if (!mActive) {
+            releaseLayers();
+        }
+    }
+
+    public void onTrimMemory(int level) {
+        if (!mActive || level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            mReleaseAlarm.cancelAlarm();
+            releaseLayers();
+        }
+    }
+
+    private void releaseLayers() {
+        for (int i = 0; i < mWorkspace.getPageCount(); i++) {
+            CellLayout page = (CellLayout) mWorkspace.getPageAt(i);
+            if (page.isHardwareLayerEnabled()) {
+                page.enableHardwareLayer(false);
+            }
+        }
+        mFirstPage = mLastPage = -1;
+        mPageCount = 0;
+    }
+
+    /**
+     * Returns the approximate memory used by the layers of the pages, in bytes.
+     */
+    public long getLayerMemoryBytes() {
+        long total = 0;
+        for (int i = 0; i < mWorkspace.getPageCount(); i++) {
+            CellLayout page = (CellLayout) mWorkspace.getPageAt(i);
+            if (page.isHardwareLayerEnabled()) {
+                ShortcutAndWidgetContainer layerView = page.getShortcutsAndWidgets();
+                total += (long) layerView.getWidth() * layerView.getHeight() * LAYER_PIXEL_SIZE;
+            }
+        }
+        return total;
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "WorkspaceLayerManager:");
+        writer.println(prefix + "\tactive=" + mActive + " pages=[" + mFirstPage + ", " + mLastPage
+                + "] memory=" + getLayerMemoryBytes() / 1024 + "KB");
+    }
+}
@@ -79,6 +79,8 @@ public class AllAppsContainerView extends SpringRelativeLayout implements DragSo
     private SearchUiManager mSearchUiManager;
     private View mSearchContainer;
     private AllAppsPagedView mViewPager;
+    // Shared by the personal and work tabs
+    private final AllAppsViewPool mViewPool;
     private FloatingHeaderView mHeader;
 
     private SpannableStringBuilder mSearchQueryBuilder = null;
@@ -106,6 +108,7 @@ public class AllAppsContainerView extends SpringRelativeLayout implements DragSo
         mSearchQueryBuilder = new SpannableStringBuilder();
         Selection.setSelection(mSearchQueryBuilder, 0);
 
+        mViewPool = new AllAppsViewPool(mLauncher.getDeviceProfile().inv.numColumns);
         mAH = new AdapterHolder[2];
         mAH[AdapterHolder.MAIN] = new AdapterHolder(false /* isWork */);
         mAH[AdapterHolder.WORK] = new AdapterHolder(true /* isWork */);
@@ -154,6 +157,11 @@ public class AllAppsContainerView extends SpringRelativeLayout implements DragSo
             }
             rebindAdapters(hasWorkApps);
         }
+
+        AdapterHolder main = mAH[AdapterHolder.MAIN];
+        if (main.recyclerView != null && !mAllAppsStore.getApps().isEmpty()) {
+            mViewPool.preInflateIcons(main.recyclerView, main.adapter);
+        }
     }
 
     /**
@@ -525,6 +533,7 @@ public class AllAppsContainerView extends SpringRelativeLayout implements DragSo
             recyclerView = (AllAppsRecyclerView) rv;
             recyclerView.setEdgeEffectFactory(createEdgeEffectFactory());
             recyclerView.setApps(appsList, mUsingTabs);
+            recyclerView.setRecycledViewPool(mViewPool);
             recyclerView.setLayoutManager(layoutManager);
             recyclerView.setAdapter(adapter);
             recyclerView.setHasFixedSize(true);
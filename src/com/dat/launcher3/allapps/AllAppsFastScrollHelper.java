@@ -18,6 +18,7 @@ package com.dat.launcher3.allapps;
 import android.support.v7.widget.RecyclerView;
 
 import com.dat.launcher3.util.Thunk;
+import com.dat.launcher3.util.TraceHelper;
 
 import java.util.HashSet;
 import java.util.List;
@@ -56,7 +57,9 @@ public class AllAppsFastScrollHelper implements AllAppsGridAdapter.BindViewCallb
         @Override
         public void run() {
             if (mFastScrollFrameIndex < mFastScrollFrames.length) {
+                TraceHelper.beginSpan("AllApps: fast scroll frame");
                 mRv.scrollBy(0, mFastScrollFrames[mFastScrollFrameIndex]);
+                TraceHelper.endSpan();
                 mFastScrollFrameIndex++;
                 mRv.postOnAnimation(mSmoothSnapNextFrameRunnable);
             }
@@ -40,6 +40,7 @@ import com.dat.launcher3.compat.UserManagerCompat;
 import com.dat.launcher3.touch.ItemClickHandler;
 import com.dat.launcher3.touch.ItemLongClickListener;
 import com.dat.launcher3.util.PackageManagerHelper;
+import com.dat.launcher3.util.TraceHelper;
 
 import java.util.List;
 
@@ -64,6 +65,9 @@ public class AllAppsGridAdapter extends RecyclerView.Adapter<AllAppsGridAdapter.
     public static final int VIEW_TYPE_ALL_APPS_DIVIDER = 1 << 4;
     public static final int VIEW_TYPE_WORK_TAB_FOOTER = 1 << 5;
 
+    // Maximum number of rows prefetched ahead of the next row when scrolling fast
+    private static final int MAX_EXTRA_PREFETCH_ROWS = 2;
+
     // Common view type masks
     public static final int VIEW_TYPE_MASK_DIVIDER = VIEW_TYPE_ALL_APPS_DIVIDER;
     public static final int VIEW_TYPE_MASK_ICON = VIEW_TYPE_ICON;
@@ -107,6 +111,33 @@ public class AllAppsGridAdapter extends RecyclerView.Adapter<AllAppsGridAdapter.
                     record.getToIndex() - getRowsNotForAccessibility(record.getToIndex())));
         }
 
+        /**
+         * In addition to the next row, prefetches the rows which will be scrolled into view in
+         * the next frames when scrolling fast, e.g. during a fling.
+         */
+        @Override
+        public void collectAdjacentPrefetchPositions(int dx, int dy, RecyclerView.State state,
+                LayoutPrefetchRegistry layoutPrefetchRegistry) {
+            super.collectAdjacentPrefetchPositions(dx, dy, state, layoutPrefetchRegistry);
+            if (dy == 0 || getChildCount() == 0) {
+                return;
+            }
+            int rowHeight = mLauncher.getDeviceProfile().allAppsCellHeightPx;
+            int extraRows = Math.min(Math.abs(dy) / rowHeight, MAX_EXTRA_PREFETCH_ROWS);
+            int direction = dy > 0 ? 1 : -1;
+            // Skip the row already collected above
+            int position = dy > 0 ? findLastVisibleItemPosition() + mAppsPerRow + 1
+                    : findFirstVisibleItemPosition() - mAppsPerRow - 1;
+            for (int row = 1; row <= extraRows; row++) {
+                for (int i = 0; i < mAppsPerRow; i++, position += direction) {
+                    if (position < 0 || position >= state.getItemCount()) {
+                        return;
+                    }
+                    layoutPrefetchRegistry.addPosition(position, row * rowHeight);
+                }
+            }
+        }
+
         @Override
         public int getRowCountForAccessibility(RecyclerView.Recycler recycler,
                 RecyclerView.State state) {
@@ -246,15 +277,16 @@ public class AllAppsGridAdapter extends RecyclerView.Adapter<AllAppsGridAdapter.
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         switch (viewType) {
             case VIEW_TYPE_ICON:
+                TraceHelper.beginSpan("AllApps: inflate icon");
                 BubbleTextView icon = (BubbleTextView) mLayoutInflater.inflate(
                         R.layout.all_apps_icon, parent, false);
                 icon.setOnClickListener(ItemClickHandler.INSTANCE);
                 icon.setOnLongClickListener(ItemLongClickListener.INSTANCE_ALL_APPS);
                 icon.setLongPressTimeout(ViewConfiguration.getLongPressTimeout());
-                icon.setOnFocusChangeListener(mIconFocusListener);
 
                 // Ensure the all apps icon height matches the workspace icons in portrait mode.
                 icon.getLayoutParams().height = mLauncher.getDeviceProfile().allAppsCellHeightPx;
+                TraceHelper.endSpan();
                 return new ViewHolder(icon);
             case VIEW_TYPE_EMPTY_SEARCH:
                 return new ViewHolder(mLayoutInflater.inflate(R.layout.all_apps_empty_search,
@@ -287,6 +319,8 @@ public class AllAppsGridAdapter extends RecyclerView.Adapter<AllAppsGridAdapter.
                 AppInfo info = mApps.getAdapterItems().get(position).appInfo;
                 BubbleTextView icon = (BubbleTextView) holder.itemView;
                 icon.reset();
+                // The icons are shared with the other tabs through the view pool.
+                icon.setOnFocusChangeListener(mIconFocusListener);
                 icon.applyFromApplicationInfo(info);
                 break;
             case VIEW_TYPE_EMPTY_SEARCH:
@@ -34,6 +34,7 @@ import com.dat.launcher3.Launcher;
 import com.dat.launcher3.LauncherAppState;
 import com.dat.launcher3.R;
 import com.dat.launcher3.graphics.DrawableFactory;
+import com.dat.launcher3.util.TraceHelper;
 import com.dat.launcher3.views.RecyclerViewFastScroller;
 import com.dat.launcher3.logging.UserEventDispatcher;
 import com.dat.launcher3.userevent.nano.LauncherLogProto;
@@ -45,8 +46,11 @@ import java.util.List;
  */
 public class AllAppsRecyclerView extends BaseRecyclerView implements UserEventDispatcher.LogContainerProvider {
 
+    private static final String FIRST_FRAME_SECTION = "AllApps: first frame";
+
     private AlphabeticalAppsList mApps;
     private AllAppsFastScrollHelper mFastScrollHelper;
+    private boolean mTraceNextDraw;
     private final int mNumAppsPerRow;
 
     // The specific view heights that we use to calculate scroll
@@ -93,14 +97,38 @@ public class AllAppsRecyclerView extends BaseRecyclerView implements UserEventDi
     private void updatePoolSize() {
         DeviceProfile grid = Launcher.getLauncher(getContext()).getDeviceProfile();
         RecyclerView.RecycledViewPool pool = getRecycledViewPool();
+        mViewHeights.clear();
+        mViewHeights.put(AllAppsGridAdapter.VIEW_TYPE_ICON, grid.allAppsCellHeightPx);
+        if (pool instanceof AllAppsViewPool) {
+            ((AllAppsViewPool) pool).updateSize(grid);
+            return;
+        }
+
         int approxRows = (int) Math.ceil(grid.availableHeightPx / grid.allAppsIconSizePx);
         pool.setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_EMPTY_SEARCH, 1);
         pool.setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_ALL_APPS_DIVIDER, 1);
         pool.setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_SEARCH_MARKET, 1);
         pool.setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_ICON, approxRows * mNumAppsPerRow);
+    }
 
-        mViewHeights.clear();
-        mViewHeights.put(AllAppsGridAdapter.VIEW_TYPE_ICON, grid.allAppsCellHeightPx);
+    /**
+     * Records the time until the next frame of this view is drawn, e.g. when opening all apps.
+     */
+    public void traceNextDraw() {
+        if (!mTraceNextDraw) {
+            mTraceNextDraw = true;
+            TraceHelper.beginSection(FIRST_FRAME_SECTION);
+            invalidate();
+        }
+    }
+
+    @Override
+    public void draw(Canvas c) {
+        super.draw(c);
+        if (mTraceNextDraw) {
+            mTraceNextDraw = false;
+            TraceHelper.endSection(FIRST_FRAME_SECTION);
+        }
     }
 
     /**
@@ -187,6 +215,11 @@ public class AllAppsRecyclerView extends BaseRecyclerView implements UserEventDi
         // Stop the scroller if it is scrolling
         stopScroll();
 
+        // The fast scroll animation binds a screen of new icons on every frame
+        if (getRecycledViewPool() instanceof AllAppsViewPool) {
+            ((AllAppsViewPool) getRecycledViewPool()).preInflateIcons(this, getAdapter());
+        }
+
         // Find the fastscroll section that maps to this touch fraction
         List<AlphabeticalAppsList.FastScrollSectionInfo> fastScrollSections =
                 mApps.getFastScrollerSections();
@@ -41,6 +41,9 @@ public class AllAppsStore {
     private final List<OnUpdateListener> mUpdateListeners = new ArrayList<>();
     private final ArrayList<ViewGroup> mIconContainers = new ArrayList<>();
 
+    // Apps added or updated since the listeners were last notified
+    private final ArrayList<AppInfo> mUpdatedApps = new ArrayList<>();
+
     private boolean mDeferUpdates = false;
     private boolean mUpdatePending = false;
 
@@ -78,6 +81,7 @@ public class AllAppsStore {
         for (AppInfo app : apps) {
             mComponentToAppMap.put(app.toComponentKey(), app);
         }
+        mUpdatedApps.addAll(apps);
         notifyUpdate();
     }
 
@@ -101,6 +105,15 @@ public class AllAppsStore {
         for (int i = 0; i < count; i++) {
             mUpdateListeners.get(i).onAppsUpdated();
         }
+        mUpdatedApps.clear();
+    }
+
+    /**
+     * Returns the apps which were added or updated since the previous update. Only valid during
+     * {@link OnUpdateListener#onAppsUpdated()}.
+     */
+    public List<AppInfo> getUpdatedApps() {
+        return mUpdatedApps;
     }
 
     public void addUpdateListener(OnUpdateListener listener) {
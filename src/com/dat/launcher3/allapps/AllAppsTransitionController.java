@@ -1,5 +1,6 @@
 package com.dat.launcher3.allapps;
 
+import static com.dat.launcher3.LauncherState.ALL_APPS;
 import static com.dat.launcher3.LauncherState.ALL_APPS_CONTENT;
 import static com.dat.launcher3.LauncherState.ALL_APPS_HEADER;
 import static com.dat.launcher3.LauncherState.ALL_APPS_HEADER_EXTRA;
@@ -179,6 +180,9 @@ public class AllAppsTransitionController implements StateHandler, OnDeviceProfil
         Interpolator interpolator = config.userControlled ? LINEAR : toState == OVERVIEW
                 ? builder.getInterpolator(ANIM_OVERVIEW_SCALE, FAST_OUT_SLOW_IN)
                 : FAST_OUT_SLOW_IN;
+        if (toState == ALL_APPS && mAppsView.getActiveRecyclerView() != null) {
+            mAppsView.getActiveRecyclerView().traceNextDraw();
+        }
         ObjectAnimator anim =
                 ObjectAnimator.ofFloat(this, ALL_APPS_PROGRESS, mProgress, targetProgress);
         anim.setDuration(config.duration);
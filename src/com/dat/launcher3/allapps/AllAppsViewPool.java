@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.launcher3.allapps;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.RecyclerView.RecycledViewPool;
+
+import com.dat.launcher3.DeviceProfile;
+import com.dat.launcher3.util.TraceHelper;
+
+/**
+ * The view pool shared by the personal and work tabs of all apps, sized to the grid.
+ *
+ * Icons are pre-inflated into the pool when the UI thread is idle, one row at a time, so that
+ * opening all apps or fast scrolling does not need to inflate them.
+ */
+public class AllAppsViewPool extends RecycledViewPool implements MessageQueue.IdleHandler {
+
+    private final int mNumAppsPerRow;
+
+    private int mMaxIcons;
+    private RecyclerView mParent;
+    private RecyclerView.Adapter mAdapter;
+    private boolean mIdleHandlerAdded;
+
+    public AllAppsViewPool(int numAppsPerRow) {
+        mNumAppsPerRow = numAppsPerRow;
+    }
+
+    /**
+     * Sizes the pool to hold a screen worth of each view type.
+     */
+    public void updateSize(DeviceProfile grid) {
+        int approxRows = (int) Math.ceil((float) grid.availableHeightPx / grid.allAppsCellHeightPx);
+        mMaxIcons = (approxRows + 1) * mNumAppsPerRow;
+        setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_EMPTY_SEARCH, 1);
+        setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_ALL_APPS_DIVIDER, 1);
+        setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_SEARCH_MARKET, 1);
+        setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_ICON, mMaxIcons);
+
+        if (mParent != null) {
+            // The pool might have been empty or too small when the icons were requested
+            preInflateIcons(mParent, mAdapter);
+        }
+    }
+
+    /**
+     * Fills the pool with icons created by {@param adapter} for {@param parent}, when the UI
+     * thread is idle. Does nothing until {@link #updateSize} is called, which then starts it.
+     */
+    public void preInflateIcons(RecyclerView parent, RecyclerView.Adapter adapter) {
+        mParent = parent;
+        mAdapter = adapter;
+        if (!mIdleHandlerAdded && needsMoreIcons()) {
+            mIdleHandlerAdded = true;
+            Looper.myQueue().addIdleHandler(this);
+        }
+    }
+
+    @Override
+    public boolean queueIdle() {
+        if (mParent == null || !needsMoreIcons()) {
+            return mIdleHandlerAdded = false;
+        }
+        TraceHelper.beginSpan("AllApps: pre-inflate");
+        for (int i = 0; i < mNumAppsPerRow && needsMoreIcons(); i++) {
+            putRecycledView(mAdapter.createViewHolder(mParent, AllAppsGridAdapter.VIEW_TYPE_ICON));
+        }
+        TraceHelper.endSpan();
+        return mIdleHandlerAdded = needsMoreIcons();
+    }
+
+    private boolean needsMoreIcons() {
+        return getRecycledViewCount(AllAppsGridAdapter.VIEW_TYPE_ICON) < mMaxIcons;
+    }
+}
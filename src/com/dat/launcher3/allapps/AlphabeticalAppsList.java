@@ -17,23 +17,25 @@ package com.dat.launcher3.allapps;
 
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.util.Log;
 
 import com.dat.launcher3.AppInfo;
 import com.dat.launcher3.Launcher;
 import com.dat.launcher3.Utilities;
-import com.dat.launcher3.compat.AlphabeticIndexCompat;
 import com.dat.launcher3.shortcuts.DeepShortcutManager;
 import com.dat.launcher3.util.ComponentKey;
 import com.dat.launcher3.util.ItemInfoMatcher;
 import com.dat.launcher3.util.LabelComparator;
 
+import java.text.CollationKey;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Set;
 
 /**
  * The alphabetically sorted list of applications.
@@ -47,6 +49,13 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
 
     private final int mFastScrollDistributionMode = FAST_SCROLL_FRACTION_DISTRIBUTE_BY_NUM_SECTIONS;
 
+    // Above this number of added and removed apps, the list is sorted and refreshed at once
+    private static final int MAX_INCREMENTAL_CHANGES = 16;
+
+    private static final int OP_REMOVE = 0;
+    private static final int OP_INSERT = 1;
+    private static final int OP_CHANGE = 2;
+
     /**
      * Info about a fast scroller section, depending if sections are merged, the fast scroller
      * sections will not be the same set as the section headers.
@@ -144,10 +153,20 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
 
     // The of ordered component names as a result of a search query
     private ArrayList<ComponentKey> mSearchResults;
-    private HashMap<CharSequence, String> mCachedSectionNames = new HashMap<>();
     private AllAppsGridAdapter mAdapter;
-    private AlphabeticIndexCompat mIndexer;
-    private AppInfoComparator mAppNameComparator;
+    private final AppSortKeys mSortKeys;
+    private final AppInfoComparator mAppNameComparator;
+    private final LabelComparator mSectionComparator = new LabelComparator();
+    private final Comparator<AppInfo> mAppComparator = this::compareApps;
+    private boolean mLocaleRequiresSectionSorting;
+
+    // The sort key of each app in mApps, when it was inserted
+    private final IdentityHashMap<AppInfo, CollationKey> mSortedKeys = new IdentityHashMap<>();
+    // Pairs of operation and index applied to mApps since the last refresh, or -1 to refresh all
+    private int[] mOps = new int[16];
+    private int mOpCount = -1;
+    // Whether the adapter items start with mApps, i.e. no search results are shown
+    private boolean mIsShowingApps;
     private final int mNumAppsPerRow;
     private int mNumAppRowsInAdapter;
     private ItemInfoMatcher mItemFilter;
@@ -155,7 +174,7 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
     public AlphabeticalAppsList(Context context, AllAppsStore appsStore, boolean isWork) {
         mAllAppsStore = appsStore;
         mLauncher = Launcher.getLauncher(context);
-        mIndexer = new AlphabeticIndexCompat(context);
+        mSortKeys = AppSortKeys.getInstance(context);
         mAppNameComparator = new AppInfoComparator(context);
         mIsWork = isWork;
         mNumAppsPerRow = mLauncher.getDeviceProfile().inv.numColumns;
@@ -238,70 +257,153 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
 
     /**
      * Updates internals when the set of apps are updated.
+     *
+     * The sorted list is updated in place: only the apps which were added, removed or whose title
+     * changed are moved, and the adapter is notified of these changes only.
      */
     @Override
     public void onAppsUpdated() {
-        // Sort the list of apps
-        mApps.clear();
+        // As a special case for some languages (currently only Simplified Chinese), we may need to
+        // coalesce sections
+        Locale curLocale = mLauncher.getResources().getConfiguration().locale;
+        boolean localeRequiresSectionSorting = curLocale.equals(Locale.SIMPLIFIED_CHINESE);
+        boolean resort = localeRequiresSectionSorting != mLocaleRequiresSectionSorting;
+        mLocaleRequiresSectionSorting = localeRequiresSectionSorting;
 
+        // Collect the apps to show. Their keys are computed on the worker thread when they are
+        // loaded, so that all of them are compared by their keys.
+        Set<AppInfo> newApps = Collections.newSetFromMap(new IdentityHashMap<>());
         for (AppInfo app : mAllAppsStore.getApps()) {
             if (mItemFilter == null || mItemFilter.matches(app, null) || hasFilter()) {
-                mApps.add(app);
+                if (app.titleSortKey == null) {
+                    Log.w(TAG, "Missing sort keys for " + app.componentName);
+                    mSortKeys.update(app);
+                }
+                newApps.add(app);
             }
         }
 
-        Collections.sort(mApps, mAppNameComparator);
-
-        // As a special case for some languages (currently only Simplified Chinese), we may need to
-        // coalesce sections
-        Locale curLocale = mLauncher.getResources().getConfiguration().locale;
-        boolean localeRequiresSectionSorting = curLocale.equals(Locale.SIMPLIFIED_CHINESE);
-        if (localeRequiresSectionSorting) {
-            // Compute the section headers. We use a TreeMap with the section name comparator to
-            // ensure that the sections are ordered when we iterate over it later
-            TreeMap<String, ArrayList<AppInfo>> sectionMap = new TreeMap<>(new LabelComparator());
-            for (AppInfo info : mApps) {
-                // Add the section to the cache
-                String sectionName = getAndUpdateCachedSectionName(info.title);
-
-                // Add it to the mapping
-                ArrayList<AppInfo> sectionApps = sectionMap.get(sectionName);
-                if (sectionApps == null) {
-                    sectionApps = new ArrayList<>();
-                    sectionMap.put(sectionName, sectionApps);
+        Set<AppInfo> updatedApps = Collections.newSetFromMap(new IdentityHashMap<>());
+        updatedApps.addAll(mAllAppsStore.getUpdatedApps());
+
+        // Remove the apps which are no longer shown, or whose title changed. An updated app is
+        // usually a new instance with the same component, which replaces the old one in place.
+        mOpCount = 0;
+        ArrayList<AppInfo> addedApps = new ArrayList<>();
+        for (int i = mApps.size() - 1; i >= 0; i--) {
+            AppInfo app = mApps.get(i);
+            AppInfo newApp = newApps.contains(app) ? app
+                    : mAllAppsStore.getApp(app.toComponentKey());
+            boolean shown = newApp != null && newApps.remove(newApp);
+            CollationKey sortedKey = mSortedKeys.remove(app);
+            if (shown && sortedKey != null && (newApp.titleSortKey == sortedKey
+                    || newApp.titleSortKey.compareTo(sortedKey) == 0)) {
+                mSortedKeys.put(newApp, newApp.titleSortKey);
+                if (newApp != app || updatedApps.contains(app)) {
+                    // Same position, as the apps are sorted by title
+                    mApps.set(i, newApp);
+                    addOp(OP_CHANGE, i);
+                }
+            } else {
+                mApps.remove(i);
+                addOp(OP_REMOVE, i);
+                if (shown) {
+                    addedApps.add(newApp);
                 }
-                sectionApps.add(info);
             }
+        }
+        addedApps.addAll(newApps);
 
-            // Add each of the section apps to the list in order
-            mApps.clear();
-            for (Map.Entry<String, ArrayList<AppInfo>> entry : sectionMap.entrySet()) {
-                mApps.addAll(entry.getValue());
-            }
+        if (resort || addedApps.size() + mOpCount > MAX_INCREMENTAL_CHANGES) {
+            mApps.addAll(addedApps);
+            Collections.sort(mApps, mAppComparator);
+            mOpCount = -1;
         } else {
-            // Just compute the section headers for use below
-            for (AppInfo info : mApps) {
-                // Add the section to the cache
-                getAndUpdateCachedSectionName(info.title);
+            Collections.sort(addedApps, mAppComparator);
+            for (AppInfo app : addedApps) {
+                int index = Collections.binarySearch(mApps, app, mAppComparator);
+                index = index < 0 ? -index - 1 : index;
+                mApps.add(index, app);
+                addOp(OP_INSERT, index);
             }
         }
+        for (AppInfo app : addedApps) {
+            mSortedKeys.put(app, app.titleSortKey);
+        }
 
         // Recompose the set of adapter items from the current set of apps
         updateAdapterItems();
     }
 
+    private int compareApps(AppInfo a, AppInfo b) {
+        if (a == b) {
+            return 0;
+        }
+        if (mLocaleRequiresSectionSorting) {
+            // Keep the apps of a section together, with the sections in order
+            int result = mSectionComparator.compare(a.sectionName, b.sectionName);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return mAppNameComparator.compare(a, b);
+    }
+
+    private void addOp(int op, int index) {
+        if (mOpCount * 2 == mOps.length) {
+            mOps = Arrays.copyOf(mOps, mOps.length * 2);
+        }
+        mOps[mOpCount * 2] = op;
+        mOps[mOpCount * 2 + 1] = index;
+        mOpCount++;
+    }
+
     /**
      * Updates the set of filtered apps with the current filter.  At this point, we expect
-     * mCachedSectionNames to have been calculated for the set of all apps in mApps.
+     * the section names to have been calculated for the set of all apps in mApps.
      */
     private void updateAdapterItems() {
+        int oldItemCount = mAdapterItems.size();
+        boolean wasShowingApps = mIsShowingApps;
         refillAdapterItems();
-        refreshRecyclerView();
+        mIsShowingApps = mSearchResults == null;
+
+        // The adapter items start with the sorted apps, unless search results are shown
+        boolean incremental = mOpCount >= 0 && wasShowingApps && mIsShowingApps;
+        if (incremental) {
+            int expectedCount = oldItemCount;
+            for (int i = 0; i < mOpCount; i++) {
+                int op = mOps[i * 2];
+                expectedCount += op == OP_INSERT ? 1 : op == OP_REMOVE ? -1 : 0;
+            }
+            // The footer might have been added or removed
+            incremental = expectedCount == mAdapterItems.size();
+        }
+        refreshRecyclerView(incremental);
+        mOpCount = -1;
     }
 
-    private void refreshRecyclerView() {
-        if (mAdapter != null) {
+    private void refreshRecyclerView(boolean incremental) {
+        if (mAdapter == null) {
+            return;
+        }
+        if (!incremental) {
             mAdapter.notifyDataSetChanged();
+            return;
+        }
+        for (int i = 0; i < mOpCount; i++) {
+            int index = mOps[i * 2 + 1];
+            switch (mOps[i * 2]) {
+                case OP_REMOVE:
+                    mAdapter.notifyItemRemoved(index);
+                    break;
+                case OP_INSERT:
+                    mAdapter.notifyItemInserted(index);
+                    break;
+                case OP_CHANGE:
+                    mAdapter.notifyItemChanged(index);
+                    break;
+            }
         }
     }
 
@@ -319,7 +421,7 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
         // Recreate the filtered and sectioned apps (for convenience for the grid layout) from the
         // ordered set of sections
         for (AppInfo info : getFiltersAppInfos()) {
-            String sectionName = getAndUpdateCachedSectionName(info.title);
+            String sectionName = info.sectionName;
 
             // Create a new section if the section names do not match
             if (!sectionName.equals(lastSectionName)) {
@@ -428,17 +530,4 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
         return result;
     }
 
-    /**
-     * Returns the cached section name for the given title, recomputing and updating the cache if
-     * the title has no cached section name.
-     */
-    private String getAndUpdateCachedSectionName(CharSequence title) {
-        String sectionName = mCachedSectionNames.get(title);
-        if (sectionName == null) {
-            sectionName = mIndexer.computeSectionName(title);
-            mCachedSectionNames.put(title, sectionName);
-        }
-        return sectionName;
-    }
-
 }
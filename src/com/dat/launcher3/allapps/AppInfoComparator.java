@@ -27,6 +27,9 @@ import java.util.Comparator;
 
 /**
  * A comparator to arrange items based on user profiles.
+ *
+ * The titles are compared by their {@link AppInfo#titleSortKey}, which must have been computed
+ * by {@link AppSortKeys} for all the compared apps.
  */
 public class AppInfoComparator implements Comparator<AppInfo> {
 
@@ -43,7 +46,7 @@ public class AppInfoComparator implements Comparator<AppInfo> {
     @Override
     public int compare(AppInfo a, AppInfo b) {
         // Order by the title in the current locale
-        int result = mLabelComparator.compare(a.title.toString(), b.title.toString());
+        int result = mLabelComparator.compare(a.titleSortKey, b.titleSortKey);
         if (result != 0) {
             return result;
         }
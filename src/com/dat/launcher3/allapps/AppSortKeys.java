@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.launcher3.allapps;
+
+import android.content.Context;
+
+import com.dat.launcher3.AppInfo;
+import com.dat.launcher3.compat.AlphabeticIndexCompat;
+
+import java.text.Collator;
+import java.util.Locale;
+
+/**
+ * Computes the section name and the collation key of app titles, so that the all apps list can
+ * be sorted and sectioned without comparing the titles again.
+ *
+ * The keys are computed on the worker thread by {@link com.dat.launcher3.AllAppsList}, when an
+ * app is loaded or its title changes. A locale change reloads all the apps, and so all the keys.
+ */
+public class AppSortKeys {
+
+    private static AppSortKeys sInstance;
+
+    public static synchronized AppSortKeys getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new AppSortKeys(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private final Context mContext;
+
+    private Locale mLocale;
+    private Collator mCollator;
+    private AlphabeticIndexCompat mIndexer;
+    private int mGeneration;
+
+    private AppSortKeys(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Updates the keys of {@param info} if its title or the locale changed.
+     * @return true if the keys changed.
+     */
+    public synchronized boolean update(AppInfo info) {
+        checkLocale();
+        if (isUpToDateLocked(info)) {
+            return false;
+        }
+        String title = info.title == null ? "" : info.title.toString();
+        info.sectionName = mIndexer.computeSectionName(title);
+        info.titleSortKey = mCollator.getCollationKey(title);
+        info.sortKeysTitle = info.title;
+        info.sortKeysGeneration = mGeneration;
+        return true;
+    }
+
+    private boolean isUpToDateLocked(AppInfo info) {
+        return info.titleSortKey != null && info.sortKeysGeneration == mGeneration
+                && info.sortKeysTitle == info.title;
+    }
+
+    /**
+     * Recreates the collator and the indexer if the locale changed.
+     */
+    private void checkLocale() {
+        Locale locale = mContext.getResources().getConfiguration().locale;
+        if (locale.equals(mLocale)) {
+            return;
+        }
+        mLocale = locale;
+        mCollator = Collator.getInstance(locale);
+        mIndexer = new AlphabeticIndexCompat(mContext);
+        mGeneration++;
+    }
+}
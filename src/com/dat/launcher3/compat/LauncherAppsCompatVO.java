@@ -35,8 +35,8 @@ import com.dat.launcher3.LauncherModel;
 import com.dat.launcher3.ShortcutInfo;
 import com.dat.launcher3.compat.ShortcutConfigActivityInfo.ShortcutConfigActivityInfoVO;
 import com.dat.launcher3.graphics.LauncherIcons;
+import com.dat.launcher3.model.ModelTaskScheduler;
 import com.dat.launcher3.shortcuts.ShortcutInfoCompat;
-import com.dat.launcher3.util.LooperExecutor;
 import com.dat.launcher3.util.PackageUserKey;
 
 import java.util.ArrayList;
@@ -119,19 +119,20 @@ public class LauncherAppsCompatVO extends LauncherAppsCompatVL {
                 }
             } else {
                 // Block the worker thread until the accept() is called.
-                new LooperExecutor(LauncherModel.getWorkerLooper()).execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            Thread.sleep(acceptDelay);
-                        } catch (InterruptedException e) {
-                            // Ignore
-                        }
-                        if (request.isValid()) {
-                            request.accept();
-                        }
-                    }
-                });
+                LauncherModel.getScheduler().execute(ModelTaskScheduler.PRIORITY_INTERACTIVE,
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    Thread.sleep(acceptDelay);
+                                } catch (InterruptedException e) {
+                                    // Ignore
+                                }
+                                if (request.isValid()) {
+                                    request.accept();
+                                }
+                            }
+                        });
             }
 
             ShortcutInfoCompat compat = new ShortcutInfoCompat(request.getShortcutInfo());
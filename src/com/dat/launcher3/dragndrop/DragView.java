@@ -58,12 +58,15 @@ import com.dat.launcher3.anim.Interpolators;
 import com.dat.launcher3.compat.LauncherAppsCompat;
 import com.dat.launcher3.compat.ShortcutConfigActivityInfo;
 import com.dat.launcher3.config.FeatureFlags;
+import com.dat.launcher3.graphics.DragBitmapPool;
 import com.dat.launcher3.graphics.LauncherIcons;
+import com.dat.launcher3.model.ModelTaskScheduler;
 import com.dat.launcher3.shortcuts.DeepShortcutManager;
 import com.dat.launcher3.shortcuts.ShortcutInfoCompat;
 import com.dat.launcher3.shortcuts.ShortcutKey;
 import com.dat.launcher3.util.Themes;
 import com.dat.launcher3.util.Thunk;
+import com.dat.launcher3.util.TraceHelper;
 import com.dat.launcher3.widget.PendingAddShortcutInfo;
 
 import java.util.Arrays;
@@ -78,6 +81,12 @@ public class DragView extends View {
     public static final int COLOR_CHANGE_DURATION = 120;
     public static final int VIEW_ZOOM_DURATION = 150;
 
+    /**
+     * Section measuring the time from the long press on an item to the first frame of its
+     * drag view.
+     */
+    public static final String TRACE_DRAG_LATENCY = "DragView: long press to visible";
+
     @Thunk static float sDragAlpha = 1f;
 
     private boolean mDrawBitmap = true;
@@ -206,8 +215,7 @@ public class DragView extends View {
             return;
         }
         // Load the adaptive icon on a background thread and add the view in ui thread.
-        final Looper workerLooper = LauncherModel.getWorkerLooper();
-        new Handler(workerLooper).postAtFrontOfQueue(new Runnable() {
+        LauncherModel.getScheduler().post(ModelTaskScheduler.PRIORITY_INTERACTIVE, new Runnable() {
             @Override
             public void run() {
                 LauncherAppState appState = LauncherAppState.getInstance(mLauncher);
@@ -443,6 +451,9 @@ public class DragView extends View {
 
     @Override
     protected void onDraw(Canvas canvas) {
+        if (!mHasDrawn) {
+            TraceHelper.endSection(TRACE_DRAG_LATENCY);
+        }
         mHasDrawn = true;
 
         if (mDrawBitmap) {
@@ -489,7 +500,7 @@ public class DragView extends View {
                 mCrossFadeProgress = animation.getAnimatedFraction();
                 invalidate();
             }
-        });
+        }, null);
         va.start();
     }
 
@@ -627,6 +638,7 @@ public class DragView extends View {
     public void remove() {
         if (getParent() != null) {
             mDragLayer.removeView(DragView.this);
+            DragBitmapPool.INSTANCE.release(mBitmap);
         }
     }
 
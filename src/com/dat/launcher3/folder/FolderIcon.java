@@ -463,6 +463,18 @@ public class FolderIcon extends FrameLayout implements FolderListener {
         if (mFolder == null) return;
         if (mFolder.getItemCount() == 0 && !mAnimating) return;
 
+        if (!mPreviewItemManager.drawCachedPreview(canvas)) {
+            drawPreviewItems(canvas);
+        }
+
+        if (!mBackground.drawingDelegated()) {
+            mBackground.drawBackgroundStroke(canvas);
+        }
+
+        drawBadge(canvas);
+    }
+
+    private void drawPreviewItems(Canvas canvas) {
         final int saveCount;
 
         if (canvas.isHardwareAccelerated()) {
@@ -478,12 +490,6 @@ public class FolderIcon extends FrameLayout implements FolderListener {
             mBackground.clipCanvasHardware(canvas);
         }
         canvas.restoreToCount(saveCount);
-
-        if (!mBackground.drawingDelegated()) {
-            mBackground.drawBackgroundStroke(canvas);
-        }
-
-        drawBadge(canvas);
     }
 
     public void drawBadge(Canvas canvas) {
@@ -546,6 +552,14 @@ public class FolderIcon extends FrameLayout implements FolderListener {
         return mPreviewItemManager.verifyDrawable(who) || super.verifyDrawable(who);
     }
 
+    @Override
+    public void invalidateDrawable(@NonNull Drawable drawable) {
+        if (mPreviewItemManager.verifyDrawable(drawable)) {
+            mPreviewItemManager.invalidatePreviewCache();
+        }
+        super.invalidateDrawable(drawable);
+    }
+
     @Override
     public void onItemsChanged(boolean animate) {
         updatePreviewItems(animate);
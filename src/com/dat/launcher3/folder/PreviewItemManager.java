@@ -19,8 +19,14 @@ package com.dat.launcher3.folder;
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
 import android.animation.ValueAnimator;
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.RecordingCanvas;
 import android.graphics.Rect;
+import android.graphics.RenderNode;
+import android.os.Build;
 import android.graphics.drawable.Drawable;
 import android.support.annotation.NonNull;
 import android.view.View;
@@ -29,6 +35,8 @@ import android.widget.TextView;
 import com.dat.launcher3.BubbleTextView;
 import com.dat.launcher3.ShortcutInfo;
 import com.dat.launcher3.Utilities;
+import com.dat.launcher3.graphics.BitmapRenderer;
+import com.dat.launcher3.util.TraceHelper;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -40,6 +48,10 @@ import static com.dat.launcher3.folder.FolderIcon.DROP_IN_ANIMATION_DURATION;
 
 /**
  * Manages the drawing and animations of {@link PreviewItemDrawingParams} for a {@link FolderIcon}.
+ *
+ * While the preview is not animating, the items clipped to the folder background are rendered
+ * once and then drawn from the cache, in a {@link RenderNode} layer on Q and above, or in a
+ * bitmap on devices which do not use hardware bitmaps for icons.
  */
 public class PreviewItemManager {
 
@@ -60,6 +72,12 @@ public class PreviewItemManager {
     private float mCurrentPageItemsTransX = 0;
     private boolean mShouldSlideInFirstPage;
 
+    // The cached rendering of the static preview
+    private RenderNode mPreviewNode;
+    private Bitmap mPreviewBitmap;
+    private Canvas mPreviewCanvas;
+    private boolean mPreviewCacheDirty = true;
+
     static final int INITIAL_ITEM_ANIMATION_DURATION = 350;
     private static final int FINAL_ITEM_ANIMATION_DURATION = 200;
 
@@ -164,9 +182,101 @@ public class PreviewItemManager {
     }
 
     public void onParamsChanged() {
+        mPreviewCacheDirty = true;
         mIcon.invalidate();
     }
 
+    /**
+     * Marks the cached preview as outdated, so that it is rendered again on the next draw.
+     */
+    void invalidatePreviewCache() {
+        mPreviewCacheDirty = true;
+    }
+
+    /**
+     * Draws the preview items clipped to the folder background from the cache, rendering them
+     * first if they changed.
+     * @return false if the preview is animating or can not be cached, and must be drawn directly.
+     */
+    boolean drawCachedPreview(Canvas canvas) {
+        int width = mIcon.getWidth();
+        int height = mIcon.getHeight();
+        if (!isPreviewStatic() || width <= 0 || height <= 0) {
+            mPreviewCacheDirty = true;
+            return false;
+        }
+        if (Utilities.ATLEAST_Q && canvas.isHardwareAccelerated()) {
+            drawPreviewNode(canvas, width, height);
+            return true;
+        } else if (!BitmapRenderer.USE_HARDWARE_BITMAP) {
+            drawPreviewBitmap(canvas, width, height);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean isPreviewStatic() {
+        if (mShouldSlideInFirstPage || mIcon.mAnimating || mIcon.mBackground.mScale != 1f) {
+            return false;
+        }
+        for (int i = 0; i < mFirstPageParams.size(); i++) {
+            if (mFirstPageParams.get(i).anim != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @TargetApi(Build.VERSION_CODES.Q)
+    private void drawPreviewNode(Canvas canvas, int width, int height) {
+        if (mPreviewNode == null) {
+            mPreviewNode = new RenderNode("FolderPreview");
+            // Keep the rendered items in a layer, which is only updated when they are recorded.
+            mPreviewNode.setUseCompositingLayer(true, null);
+        }
+        if (mPreviewNode.getWidth() != width || mPreviewNode.getHeight() != height) {
+            mPreviewNode.setPosition(0, 0, width, height);
+            mPreviewCacheDirty = true;
+        }
+        if (mPreviewCacheDirty || !mPreviewNode.hasDisplayList()) {
+            TraceHelper.beginSpan("FolderIcon: render preview");
+            RecordingCanvas c = mPreviewNode.beginRecording(width, height);
+            try {
+                drawClipped(c);
+            } finally {
+                mPreviewNode.endRecording();
+            }
+            TraceHelper.endSpan();
+            mPreviewCacheDirty = false;
+        }
+        canvas.drawRenderNode(mPreviewNode);
+    }
+
+    private void drawPreviewBitmap(Canvas canvas, int width, int height) {
+        if (mPreviewBitmap == null || mPreviewBitmap.getWidth() != width
+                || mPreviewBitmap.getHeight() != height) {
+            mPreviewBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mPreviewCanvas = new Canvas(mPreviewBitmap);
+            mPreviewCacheDirty = true;
+        }
+        if (mPreviewCacheDirty) {
+            TraceHelper.beginSpan("FolderIcon: render preview");
+            mPreviewBitmap.eraseColor(Color.TRANSPARENT);
+            drawClipped(mPreviewCanvas);
+            TraceHelper.endSpan();
+            mPreviewCacheDirty = false;
+        }
+        canvas.drawBitmap(mPreviewBitmap, 0, 0, null);
+    }
+
+    /**
+     * Draws the items on a canvas with its own layer, and masks them with the folder background.
+     */
+    private void drawClipped(Canvas canvas) {
+        draw(canvas);
+        mIcon.mBackground.clipCanvasHardware(canvas);
+    }
+
     private void drawPreviewItem(Canvas canvas, PreviewItemDrawingParams params) {
         canvas.save();
         canvas.translate(params.transX, params.transY);
@@ -194,12 +304,14 @@ public class PreviewItemManager {
                 mFirstPageParams.get(index) : null;
         if (params != null) {
             params.hidden = hidden;
+            mPreviewCacheDirty = true;
         }
     }
 
     void buildParamsForPage(int page, ArrayList<PreviewItemDrawingParams> params, boolean animate) {
         List<BubbleTextView> items = mIcon.getPreviewItemsOnPage(page);
         int prevNumItems = params.size();
+        mPreviewCacheDirty = true;
 
         // We adjust the size of the list to match the number of items in the preview.
         while (items.size() < params.size()) {
@@ -243,6 +355,9 @@ public class PreviewItemManager {
     }
 
     void onFolderClose(int currentPage) {
+        // The icons may have changed state while they were drawn in the folder.
+        mPreviewCacheDirty = true;
+
         // If we are not closing on the first page, we animate the current page preview items
         // out, and animate the first page preview items in.
         mShouldSlideInFirstPage = currentPage != 0;
@@ -263,6 +378,8 @@ public class PreviewItemManager {
                 @Override
                 public void onAnimationEnd(Animator animation) {
                     mCurrentPageParams.clear();
+                    mShouldSlideInFirstPage = false;
+                    onParamsChanged();
                 }
             });
             slideAnimator.setStartDelay(SLIDE_IN_FIRST_PAGE_ANIMATION_DURATION_DELAY);
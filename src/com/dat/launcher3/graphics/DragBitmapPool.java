@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.launcher3.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Handler;
+
+import com.dat.launcher3.util.UiThreadHelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A small pool of software bitmaps used for the drag previews of widgets, so that picking up a
+ * widget does not allocate a bitmap of its size every time.
+ *
+ * A bitmap large enough for the request is reconfigured to the requested size. Bitmaps are
+ * returned to the pool on the background thread, after the drag outline was generated from them.
+ */
+public class DragBitmapPool {
+
+    public static final DragBitmapPool INSTANCE = new DragBitmapPool();
+
+    private static final int MAX_POOL_SIZE = 2;
+
+    private final Handler mWorkerHandler = new Handler(UiThreadHelper.getBackgroundLooper());
+
+    // All guarded by this
+    private final ArrayList<Bitmap> mPool = new ArrayList<>();
+    private final Set<Bitmap> mInUse = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private DragBitmapPool() { }
+
+    /**
+     * Returns a cleared ARGB_8888 bitmap of the given size, which should be released with
+     * {@link #release(Bitmap)} once it is no longer drawn.
+     */
+    public synchronized Bitmap obtain(int width, int height) {
+        int byteCount = width * height * 4;
+        Bitmap result = null;
+        for (int i = 0; i < mPool.size(); i++) {
+            Bitmap b = mPool.get(i);
+            if (b.getAllocationByteCount() >= byteCount && (result == null
+                    || b.getAllocationByteCount() < result.getAllocationByteCount())) {
+                result = b;
+            }
+        }
+        if (result != null) {
+            mPool.remove(result);
+            result.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+            result.eraseColor(Color.TRANSPARENT);
+        } else {
+            result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        mInUse.add(result);
+        return result;
+    }
+
+    /**
+     * Returns {@param bitmap} to the pool, if it was obtained from it. This is done after all the
+     * work already posted to the background thread, which may still read the bitmap.
+     */
+    public void release(Bitmap bitmap) {
+        mWorkerHandler.post(() -> {
+            synchronized (DragBitmapPool.this) {
+                if (!mInUse.remove(bitmap)) {
+                    return;
+                }
+                if (mPool.size() < MAX_POOL_SIZE) {
+                    mPool.add(bitmap);
+                } else {
+                    // Keep the largest bitmaps, which can be reconfigured for any smaller size.
+                    Bitmap smallest = bitmap;
+                    for (Bitmap b : mPool) {
+                        if (b.getAllocationByteCount() < smallest.getAllocationByteCount()) {
+                            smallest = b;
+                        }
+                    }
+                    if (smallest != bitmap) {
+                        mPool.remove(smallest);
+                        mPool.add(bitmap);
+                    }
+                }
+            }
+        });
+    }
+
+    public synchronized void clear() {
+        mPool.clear();
+    }
+}
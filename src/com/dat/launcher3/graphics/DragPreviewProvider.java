@@ -130,15 +130,29 @@ public class DragPreviewProvider {
             width = (int) (mView.getWidth() * scale);
             height = (int) (mView.getHeight() * scale);
 
-            // Use software renderer for widgets as we know that they already work
-            return BitmapRenderer.createSoftwareBitmap(width + blurSizeOutline,
-                    height + blurSizeOutline, (c) -> drawDragView(c, scale));
+            // Use software renderer for widgets as we know that they already work. The bitmap
+            // is returned to the pool when the drag view is removed.
+            Bitmap b = DragBitmapPool.INSTANCE.obtain(width + blurSizeOutline,
+                    height + blurSizeOutline);
+            drawDragView(new Canvas(b), scale);
+            return b;
         }
 
         return BitmapRenderer.createHardwareBitmap(width + blurSizeOutline,
                 height + blurSizeOutline, (c) -> drawDragView(c, 1));
     }
 
+    /**
+     * Returns true if the outline is already being generated for this drag.
+     */
+    public boolean isOutlineRequested() {
+        return mOutlineGeneratorCallback != null;
+    }
+
+    /**
+     * Generates the outline of {@param preview} on a background thread, which is set to
+     * {@link #generatedDragOutline} when done.
+     */
     public final void generateDragOutline(Bitmap preview) {
         if (FeatureFlags.IS_DOGFOOD_BUILD && mOutlineGeneratorCallback != null) {
             throw new RuntimeException("Drag outline generated twice");
@@ -38,7 +38,7 @@ import com.dat.launcher3.LauncherAppState;
 import com.dat.launcher3.LauncherModel;
 import com.dat.launcher3.R;
 import com.dat.launcher3.Utilities;
-import com.dat.launcher3.util.LooperExecutor;
+import com.dat.launcher3.model.ModelTaskScheduler;
 
 import java.lang.reflect.Field;
 
@@ -165,7 +165,7 @@ public class IconShapeOverride {
                         mContext.getString(R.string.icon_shape_override_progress),
                         true /* indeterminate */,
                         false /* cancelable */);
-                new LooperExecutor(LauncherModel.getWorkerLooper()).execute(
+                LauncherModel.getScheduler().execute(ModelTaskScheduler.PRIORITY_INTERACTIVE,
                         new OverrideApplyHandler(mContext, newValue));
             }
             return false;
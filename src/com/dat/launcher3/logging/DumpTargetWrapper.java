@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.launcher3.logging;
+
+import android.content.ComponentName;
+import android.os.Process;
+import android.text.TextUtils;
+
+import com.dat.launcher3.ItemInfo;
+import com.dat.launcher3.LauncherAppWidgetInfo;
+import com.dat.launcher3.LauncherSettings;
+import com.dat.launcher3.model.nano.LauncherDumpProto;
+import com.dat.launcher3.model.nano.LauncherDumpProto.ContainerType;
+import com.dat.launcher3.model.nano.LauncherDumpProto.DumpTarget;
+import com.dat.launcher3.model.nano.LauncherDumpProto.ItemType;
+import com.dat.launcher3.model.nano.LauncherDumpProto.UserType;
+import com.google.protobuf.nano.MessageNano;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+
+/**
+ * Writes the launcher hierarchy as a flattened list of {@link DumpTarget}s in a single pass.
+ *
+ * Each target is written as soon as it is visited, wrapped in its own
+ * {@link LauncherDumpProto.LauncherImpression}. Since repeated fields of concatenated messages
+ * are merged, the output is a single valid LauncherImpression, without ever holding the whole
+ * list in memory.
+ *
+ * Containers are written when started and, if they had any children, written again when ended
+ * to act as a delimiter:
+ *   HOTSEAT, item, FOLDER, item, item, FOLDER, HOTSEAT, WORKSPACE, ...
+ */
+public class DumpTargetWrapper {
+
+    // Maximum nesting is workspace -> folder -> item
+    private static final int MAX_DEPTH = 2;
+
+    private final OutputStream mOut;
+    private final PrintWriter mDebugWriter;
+    private final String mDebugPrefix;
+
+    private final LauncherDumpProto.LauncherImpression mImpression =
+            new LauncherDumpProto.LauncherImpression();
+    private final DumpTarget[] mSingleTarget = new DumpTarget[1];
+    private final DumpTarget mItemTarget = new DumpTarget();
+    private byte[] mBuffer = new byte[256];
+
+    private final DumpTarget[] mContainers = new DumpTarget[MAX_DEPTH];
+    private final boolean[] mContainerHasChildren = new boolean[MAX_DEPTH];
+    private int mDepth = 0;
+
+    private int mTargetCount = 0;
+
+    /**
+     * Creates a wrapper which writes the serialized proto to {@param fd}.
+     */
+    public DumpTargetWrapper(FileDescriptor fd) {
+        mOut = new BufferedOutputStream(new FileOutputStream(fd));
+        mDebugWriter = null;
+        mDebugPrefix = null;
+    }
+
+    /**
+     * Creates a wrapper which writes a human readable line per target to {@param writer}.
+     */
+    public DumpTargetWrapper(String prefix, PrintWriter writer) {
+        mOut = null;
+        mDebugWriter = writer;
+        mDebugPrefix = prefix;
+    }
+
+    public void startContainer(int containerType, int pageId) throws IOException {
+        DumpTarget container = pushContainer();
+        container.type = DumpTarget.Type.CONTAINER;
+        container.containerType = containerType;
+        container.pageId = pageId;
+        write(container);
+    }
+
+    /**
+     * Starts a folder container, using the position of {@param info}.
+     */
+    public void startFolder(ItemInfo info, int pageId) throws IOException {
+        DumpTarget container = pushContainer();
+        container.type = DumpTarget.Type.CONTAINER;
+        container.containerType = ContainerType.FOLDER;
+        container.pageId = pageId;
+        writeToDumpTarget(container, info);
+        write(container);
+    }
+
+    public void endContainer() throws IOException {
+        mDepth--;
+        if (mContainerHasChildren[mDepth]) {
+            write(mContainers[mDepth]);
+        }
+    }
+
+    public void writeItem(ItemInfo info) throws IOException {
+        DumpTarget target = mItemTarget.clear();
+        target.type = DumpTarget.Type.ITEM;
+        target.itemType = getItemType(info);
+        writeToDumpTarget(target, info);
+        write(target);
+    }
+
+    /**
+     * Flushes any pending output.
+     * @return the number of targets written.
+     */
+    public int finish() throws IOException {
+        if (mOut != null) {
+            mOut.flush();
+        }
+        return mTargetCount;
+    }
+
+    private DumpTarget pushContainer() {
+        if (mDepth > 0) {
+            mContainerHasChildren[mDepth - 1] = true;
+        }
+        if (mContainers[mDepth] == null) {
+            mContainers[mDepth] = new DumpTarget();
+        }
+        mContainerHasChildren[mDepth] = false;
+        return mContainers[mDepth++].clear();
+    }
+
+    private void write(DumpTarget target) throws IOException {
+        if (mDepth > 0 && target != mContainers[mDepth - 1]) {
+            mContainerHasChildren[mDepth - 1] = true;
+        }
+        mTargetCount++;
+        if (mDebugWriter != null) {
+            mDebugWriter.println(mDebugPrefix + getDumpTargetStr(target));
+            return;
+        }
+        mSingleTarget[0] = target;
+        mImpression.targets = mSingleTarget;
+        int size = mImpression.getSerializedSize();
+        if (size > mBuffer.length) {
+            mBuffer = new byte[Math.max(size, mBuffer.length * 2)];
+        }
+        MessageNano.toByteArray(mImpression, mBuffer, 0, size);
+        mOut.write(mBuffer, 0, size);
+    }
+
+    private static int getItemType(ItemInfo info) {
+        switch (info.itemType) {
+            case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
+                return ItemType.APP_ICON;
+            case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
+            case LauncherSettings.Favorites.ITEM_TYPE_CUSTOM_APPWIDGET:
+                return ItemType.WIDGET;
+            case LauncherSettings.Favorites.ITEM_TYPE_DEEP_SHORTCUT:
+                return ItemType.SHORTCUT;
+            default:
+                return ItemType.UNKNOWN_ITEMTYPE;
+        }
+    }
+
+    private static void writeToDumpTarget(DumpTarget target, ItemInfo info) {
+        ComponentName cn = info instanceof LauncherAppWidgetInfo
+                ? ((LauncherAppWidgetInfo) info).providerName : info.getTargetComponent();
+        target.component = cn == null ? "" : cn.flattenToString();
+        target.packageName = cn == null ? "" : cn.getPackageName();
+        if (info instanceof LauncherAppWidgetInfo) {
+            target.itemId = String.valueOf(((LauncherAppWidgetInfo) info).appWidgetId);
+        }
+        target.gridX = info.cellX;
+        target.gridY = info.cellY;
+        target.spanX = info.spanX;
+        target.spanY = info.spanY;
+        target.userType = Process.myUserHandle().equals(info.user)
+                ? UserType.DEFAULT : UserType.WORK;
+    }
+
+    public static String getDumpTargetStr(DumpTarget t) {
+        if (t == null) {
+            return "";
+        }
+        switch (t.type) {
+            case DumpTarget.Type.ITEM:
+                return getItemStr(t);
+            case DumpTarget.Type.CONTAINER:
+                String str = LoggerUtils.getFieldName(t.containerType, ContainerType.class);
+                if (t.containerType == ContainerType.WORKSPACE) {
+                    str += " id=" + t.pageId;
+                } else if (t.containerType == ContainerType.FOLDER) {
+                    str += " grid(" + t.gridX + "," + t.gridY + ")";
+                }
+                return str;
+            default:
+                return "UNKNOWN TARGET TYPE";
+        }
+    }
+
+    private static String getItemStr(DumpTarget t) {
+        String typeStr = LoggerUtils.getFieldName(t.itemType, ItemType.class);
+        if (!TextUtils.isEmpty(t.packageName)) {
+            typeStr += ", package=" + t.packageName;
+        }
+        if (!TextUtils.isEmpty(t.component)) {
+            typeStr += ", component=" + t.component;
+        }
+        return typeStr + ", grid(" + t.gridX + "," + t.gridY + "), span(" + t.spanX + ","
+                + t.spanY + "), pageIdx=" + t.pageId + " user=" + t.userType;
+    }
+}
@@ -3,27 +3,43 @@ package com.dat.launcher3.logging;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
+import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 import android.util.Pair;
 
 import com.dat.launcher3.Utilities;
 import com.dat.launcher3.config.FeatureFlags;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Wrapper around {@link Log} to allow writing to a file.
  * This class can safely be called from main thread.
  *
+ * Logging a line only stores the timestamp and references to the tag and message in a
+ * pre-allocated record, without taking any lock. A background thread writes the records in
+ * batches using a compact binary format, and they are only formatted as text when dumped
+ * through {@link #flushAll}. If the writer falls behind by a full queue, new records are dropped
+ * and the number of dropped records is logged, so that the caller never waits for the disk.
+ *
  * Note: This should only be used for logging errors which have a persistent effect on user's data,
  * but whose effect may not be visible immediately.
  */
@@ -37,20 +53,32 @@ public final class FileLog {
 
     private static final long MAX_LOG_FILE_SIZE = 4 << 20;  // 4 mb
 
-    private static Handler sHandler = null;
-    private static File sLogsDirectory = null;
+    // Written at the start of every log file, to identify the record format.
+    private static final int FILE_MAGIC = 0x4C4F4731;  // "LOG1"
+
+    private static final LogRecordQueue sQueue = ENABLED ? new LogRecordQueue() : null;
+    private static final AtomicBoolean sWritePending = new AtomicBoolean(false);
+    private static final AtomicLong sDroppedCount = new AtomicLong(0);
+
+    private static volatile Handler sHandler = null;
+    // Only changed on the writer thread once it is started
+    private static volatile File sLogsDirectory = null;
 
     public static void setDir(File logsDir) {
         if (ENABLED) {
             synchronized (DATE_FORMAT) {
-                // If the target directory changes, stop any active thread.
-                if (sHandler != null && !logsDir.equals(sLogsDirectory)) {
-                    ((HandlerThread) sHandler.getLooper().getThread()).quit();
-                    sHandler = null;
+                if (sHandler != null) {
+                    // Change the directory on the writer thread, after the pending records were
+                    // written to the previous one.
+                    Message.obtain(sHandler, LogWriterCallback.MSG_SET_DIR, logsDir)
+                            .sendToTarget();
+                    return;
                 }
+                sLogsDirectory = logsDir;
             }
+        } else {
+            sLogsDirectory = logsDir;
         }
-        sLogsDirectory = logsDir;
     }
 
     public static void d(String tag, String msg, Exception e) {
@@ -81,22 +109,28 @@ public final class FileLog {
         if (!ENABLED) {
             return;
         }
-        String out = String.format("%s %s %s", DATE_FORMAT.format(new Date()), tag, msg);
-        if (e != null) {
-            out += "\n" + Log.getStackTraceString(e);
+        if (!sQueue.enqueue(System.currentTimeMillis(), tag, msg, e)) {
+            sDroppedCount.incrementAndGet();
+        }
+        if (sWritePending.compareAndSet(false, true)) {
+            getHandler().sendEmptyMessage(LogWriterCallback.MSG_WRITE);
         }
-        Message.obtain(getHandler(), LogWriterCallback.MSG_WRITE, out).sendToTarget();
     }
 
-    private static Handler getHandler() {
-        synchronized (DATE_FORMAT) {
-            if (sHandler == null) {
-                HandlerThread thread = new HandlerThread("file-logger");
-                thread.start();
-                sHandler = new Handler(thread.getLooper(), new LogWriterCallback());
+    @VisibleForTesting
+    static Handler getHandler() {
+        Handler handler = sHandler;
+        if (handler == null) {
+            synchronized (DATE_FORMAT) {
+                if (sHandler == null) {
+                    HandlerThread thread = new HandlerThread("file-logger");
+                    thread.start();
+                    sHandler = new Handler(thread.getLooper(), new LogWriterCallback());
+                }
+                handler = sHandler;
             }
         }
-        return sHandler;
+        return handler;
     }
 
     /**
@@ -114,84 +148,161 @@ public final class FileLog {
         latch.await(2, TimeUnit.SECONDS);
     }
 
+    /**
+     * Returns the number of records dropped because the queue was full.
+     */
+    static long getDroppedCount() {
+        return sDroppedCount.get();
+    }
+
+    /**
+     * A single log line, owned by a slot of {@link LogRecordQueue}.
+     */
+    private static class LogRecord {
+        long time;
+        String tag;
+        String msg;
+        Exception error;
+    }
+
+    /**
+     * Bounded multi-producer single-consumer queue of pre-allocated {@link LogRecord}s.
+     *
+     * Producers claim a slot with a CAS on the tail and publish it by updating the slot sequence,
+     * so enqueuing never blocks on a lock. If the writer falls behind by a full queue, the
+     * record is dropped rather than waiting for a slot to be released.
+     */
+    private static class LogRecordQueue {
+
+        private static final int CAPACITY = 4096;  // Must be a power of 2
+        private static final int MASK = CAPACITY - 1;
+
+        private final LogRecord[] mRecords = new LogRecord[CAPACITY];
+        // For each slot, the position which can write to it next, or that position + 1 once the
+        // record is published and ready to be read.
+        private final AtomicLongArray mSequences = new AtomicLongArray(CAPACITY);
+        private final AtomicLong mTail = new AtomicLong(0);
+
+        // Only accessed by the consumer thread
+        private long mHead = 0;
+
+        LogRecordQueue() {
+            for (int i = 0; i < CAPACITY; i++) {
+                mRecords[i] = new LogRecord();
+                mSequences.set(i, i);
+            }
+        }
+
+        /**
+         * Adds a record to the queue, or returns false if the queue is full.
+         */
+        boolean enqueue(long time, String tag, String msg, Exception error) {
+            long pos;
+            while (true) {
+                pos = mTail.get();
+                long seq = mSequences.get((int) pos & MASK);
+                if (seq == pos) {
+                    if (mTail.compareAndSet(pos, pos + 1)) {
+                        break;
+                    }
+                } else if (seq < pos) {
+                    // Queue is full
+                    return false;
+                }
+            }
+            int index = (int) pos & MASK;
+            LogRecord record = mRecords[index];
+            record.time = time;
+            record.tag = tag;
+            record.msg = msg;
+            record.error = error;
+            mSequences.lazySet(index, pos + 1);
+            return true;
+        }
+
+        /**
+         * Returns the next published record, or null if there is none. The record must be
+         * released using {@link #release} before calling this method again.
+         */
+        LogRecord peek() {
+            int index = (int) mHead & MASK;
+            return mSequences.get(index) == mHead + 1 ? mRecords[index] : null;
+        }
+
+        void release(LogRecord record) {
+            record.tag = null;
+            record.msg = null;
+            record.error = null;
+            mSequences.lazySet((int) mHead & MASK, mHead + CAPACITY);
+            mHead++;
+        }
+    }
+
     /**
      * Writes logs to the file.
      * Log files are named log-0 for even days of the year and log-1 for odd days of the year.
      * Logs older than 36 hours are purged.
+     *
+     * Each record is stored as: time (long), followed by the tag, message and exception stack
+     * trace as length-prefixed UTF-8 strings. A length of -1 denotes a null string.
      */
     private static class LogWriterCallback implements Handler.Callback {
 
         private static final long CLOSE_DELAY = 5000;  // 5 seconds
+        private static final int BUFFER_SIZE = 64 << 10;  // 64 kb
 
         private static final int MSG_WRITE = 1;
         private static final int MSG_CLOSE = 2;
         private static final int MSG_FLUSH = 3;
+        private static final int MSG_SET_DIR = 4;
+
+        private final ByteBuffer mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
 
         private String mCurrentFileName = null;
-        private PrintWriter mCurrentWriter = null;
+        private FileChannel mCurrentChannel = null;
+
+        // Dropped records which were already reported in the log
+        private long mReportedDropCount = 0;
 
         private void closeWriter() {
-            Utilities.closeSilently(mCurrentWriter);
-            mCurrentWriter = null;
+            try {
+                flushBuffer();
+            } catch (IOException e) {
+                Log.e("FileLog", "Error writing logs to file", e);
+            }
+            Utilities.closeSilently(mCurrentChannel);
+            mCurrentChannel = null;
+            mBuffer.clear();
         }
 
         @Override
         public boolean handleMessage(Message msg) {
-            if (sLogsDirectory == null || !ENABLED) {
+            if (!ENABLED) {
                 return true;
             }
             switch (msg.what) {
                 case MSG_WRITE: {
-                    Calendar cal = Calendar.getInstance();
-                    // suffix with 0 or 1 based on the day of the year.
-                    String fileName = FILE_NAME_PREFIX + (cal.get(Calendar.DAY_OF_YEAR) & 1);
-
-                    if (!fileName.equals(mCurrentFileName)) {
-                        closeWriter();
-                    }
-
-                    try {
-                        if (mCurrentWriter == null) {
-                            mCurrentFileName = fileName;
-
-                            boolean append = false;
-                            File logFile = new File(sLogsDirectory, fileName);
-                            if (logFile.exists()) {
-                                Calendar modifiedTime = Calendar.getInstance();
-                                modifiedTime.setTimeInMillis(logFile.lastModified());
-
-                                // If the file was modified more that 36 hours ago, purge the file.
-                                // We use instead of 24 to account for day-365 followed by day-1
-                                modifiedTime.add(Calendar.HOUR, 36);
-                                append = cal.before(modifiedTime)
-                                        && logFile.length() < MAX_LOG_FILE_SIZE;
-                            }
-                            mCurrentWriter = new PrintWriter(new FileWriter(logFile, append));
-                        }
-
-                        mCurrentWriter.println((String) msg.obj);
-                        mCurrentWriter.flush();
-
-                        // Auto close file stream after some time.
-                        sHandler.removeMessages(MSG_CLOSE);
-                        sHandler.sendEmptyMessageDelayed(MSG_CLOSE, CLOSE_DELAY);
-                    } catch (Exception e) {
-                        Log.e("FileLog", "Error writing logs to file", e);
-                        // Close stream, will try reopening during next log
-                        closeWriter();
-                    }
+                    sWritePending.set(false);
+                    writePendingRecords();
                     return true;
                 }
                 case MSG_CLOSE: {
                     closeWriter();
                     return true;
                 }
+                case MSG_SET_DIR: {
+                    writePendingRecords();
+                    closeWriter();
+                    sLogsDirectory = (File) msg.obj;
+                    return true;
+                }
                 case MSG_FLUSH: {
+                    writePendingRecords();
                     closeWriter();
                     Pair<PrintWriter, CountDownLatch> p =
                             (Pair<PrintWriter, CountDownLatch>) msg.obj;
 
-                    if (p.first != null) {
+                    if (p.first != null && sLogsDirectory != null) {
                         dumpFile(p.first, FILE_NAME_PREFIX + 0);
                         dumpFile(p.first, FILE_NAME_PREFIX + 1);
                     }
@@ -201,26 +312,199 @@ public final class FileLog {
             }
             return true;
         }
+
+        private void writePendingRecords() {
+            if (sLogsDirectory == null) {
+                // Nowhere to write, discard the records so that the producers are not blocked.
+                LogRecord record;
+                while ((record = sQueue.peek()) != null) {
+                    sQueue.release(record);
+                }
+                return;
+            }
+            long dropCount = sDroppedCount.get();
+            if (sQueue.peek() == null && dropCount == mReportedDropCount) {
+                return;
+            }
+
+            Calendar cal = Calendar.getInstance();
+            // suffix with 0 or 1 based on the day of the year.
+            String fileName = FILE_NAME_PREFIX + (cal.get(Calendar.DAY_OF_YEAR) & 1);
+
+            if (!fileName.equals(mCurrentFileName)) {
+                closeWriter();
+            }
+
+            try {
+                if (mCurrentChannel == null) {
+                    mCurrentFileName = fileName;
+                    openChannel(new File(sLogsDirectory, fileName), cal);
+                }
+
+                LogRecord record;
+                while ((record = sQueue.peek()) != null) {
+                    writeRecord(record);
+                    sQueue.release(record);
+                }
+                if (dropCount != mReportedDropCount) {
+                    LogRecord dropRecord = new LogRecord();
+                    dropRecord.time = System.currentTimeMillis();
+                    dropRecord.tag = "FileLog";
+                    dropRecord.msg = (dropCount - mReportedDropCount)
+                            + " records dropped, the queue was full";
+                    writeRecord(dropRecord);
+                    mReportedDropCount = dropCount;
+                }
+                flushBuffer();
+
+                // Auto close file stream after some time.
+                sHandler.removeMessages(MSG_CLOSE);
+                sHandler.sendEmptyMessageDelayed(MSG_CLOSE, CLOSE_DELAY);
+            } catch (Exception e) {
+                Log.e("FileLog", "Error writing logs to file", e);
+                // Close stream, will try reopening during next log
+                closeWriter();
+            }
+        }
+
+        private void openChannel(File logFile, Calendar cal) throws IOException {
+            boolean append = false;
+            if (logFile.exists()) {
+                Calendar modifiedTime = Calendar.getInstance();
+                modifiedTime.setTimeInMillis(logFile.lastModified());
+
+                // If the file was modified more that 36 hours ago, purge the file.
+                // We use instead of 24 to account for day-365 followed by day-1
+                modifiedTime.add(Calendar.HOUR, 36);
+                append = cal.before(modifiedTime)
+                        && logFile.length() < MAX_LOG_FILE_SIZE
+                        && hasValidHeader(logFile);
+            }
+            mCurrentChannel = new FileOutputStream(logFile, append).getChannel();
+            mBuffer.clear();
+            if (!append) {
+                mBuffer.putInt(FILE_MAGIC);
+            }
+        }
+
+        private void writeRecord(LogRecord record) throws IOException {
+            byte[] tag = encode(record.tag);
+            byte[] msg = encode(record.msg);
+            byte[] error = record.error == null
+                    ? null : encode(Log.getStackTraceString(record.error));
+
+            int size = 8 + sizeOf(tag) + sizeOf(msg) + sizeOf(error);
+            if (mBuffer.remaining() < size) {
+                flushBuffer();
+            }
+            ByteBuffer out = mBuffer;
+            if (size > out.capacity()) {
+                // Too large for the shared buffer, write it on its own.
+                out = ByteBuffer.allocate(size);
+            }
+            out.putLong(record.time);
+            put(out, tag);
+            put(out, msg);
+            put(out, error);
+            if (out != mBuffer) {
+                out.flip();
+                writeFully(out);
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            if (mCurrentChannel != null && mBuffer.position() > 0) {
+                mBuffer.flip();
+                writeFully(mBuffer);
+            }
+            mBuffer.clear();
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                mCurrentChannel.write(buffer);
+            }
+        }
+
+        private static byte[] encode(String str) {
+            return str == null ? null : str.getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static int sizeOf(byte[] data) {
+            return 4 + (data == null ? 0 : data.length);
+        }
+
+        private static void put(ByteBuffer buffer, byte[] data) {
+            if (data == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(data.length);
+                buffer.put(data);
+            }
+        }
+    }
+
+    private static boolean hasValidHeader(File logFile) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(logFile));
+            return in.readInt() == FILE_MAGIC;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            Utilities.closeSilently(in);
+        }
     }
 
     private static void dumpFile(PrintWriter out, String fileName) {
         File logFile = new File(sLogsDirectory, fileName);
         if (logFile.exists()) {
 
-            BufferedReader in = null;
+            DataInputStream in = null;
             try {
-                in = new BufferedReader(new FileReader(logFile));
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
                 out.println();
                 out.println("--- logfile: " + fileName + " ---");
-                String line;
-                while ((line = in.readLine()) != null) {
-                    out.println(line);
+                if (in.readInt() != FILE_MAGIC) {
+                    return;
+                }
+                Date date = new Date();
+                while (true) {
+                    long time;
+                    try {
+                        time = in.readLong();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    date.setTime(time);
+                    String tag = readString(in);
+                    String msg = readString(in);
+                    String error = readString(in);
+
+                    out.print(DATE_FORMAT.format(date));
+                    out.print(' ');
+                    out.print(tag);
+                    out.print(' ');
+                    out.println(msg);
+                    if (error != null) {
+                        out.println(error);
+                    }
                 }
             } catch (Exception e) {
-                // ignore
+                // ignore, the last record may be incomplete if the process died while writing.
             } finally {
                 Utilities.closeSilently(in);
             }
         }
     }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.launcher3.logging;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.util.Log;
+
+import com.dat.launcher3.LauncherFiles;
+import com.dat.launcher3.logging.UserEventDispatcher.PendingEvent;
+import com.dat.launcher3.userevent.nano.LauncherLogProto;
+import com.dat.launcher3.util.TraceHelper;
+import com.google.protobuf.nano.InvalidProtocolBufferNanoException;
+import com.google.protobuf.nano.MessageNano;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Moves the work of {@link UserEventDispatcher} off the UI thread.
+ *
+ * Events captured on the UI thread are enriched and persisted to a {@link UserEventRing} as soon
+ * as possible on a background thread, and then dispatched in batches. Events which were persisted
+ * but not dispatched before the process died are dispatched along with the first batch of the
+ * next process.
+ *
+ * The time spent on each thread is recorded by {@link TraceHelper}, and can be read with
+ * $ adb shell dumpsys activity com.dat.launcher3/com.dat.launcher3.Launcher
+ */
+public class UserEventBatcher implements Handler.Callback {
+
+    private static final String TAG = "UserEventBatcher";
+
+    private static final int RING_CAPACITY = 64 * 1024;
+
+    private static final int MSG_PERSIST = 1;
+    private static final int MSG_DISPATCH = 2;
+
+    private static final int MAX_BATCH_SIZE = 32;
+    private static final long BATCH_DELAY_MS = 1000;
+
+    private static UserEventBatcher sInstance;
+
+    public static synchronized UserEventBatcher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new UserEventBatcher(
+                    new File(context.getApplicationContext().getFilesDir(), LauncherFiles.USER_EVENTS_RING));
+        }
+        return sInstance;
+    }
+
+    private final File mRingFile;
+    private final Handler mHandler;
+
+    // Events captured on the UI thread, guarded by itself.
+    private ArrayList<PendingEvent> mCaptured = new ArrayList<>();
+
+    // Below fields are only accessed on the worker thread.
+    private ArrayList<PendingEvent> mDraining = new ArrayList<>();
+    private final ArrayList<PendingEvent> mPersisted = new ArrayList<>();
+    private ArrayList<LauncherLogProto.LauncherEvent> mRecovered;
+    private UserEventRing mRing;
+    private boolean mRingOpened;
+    private byte[] mBuffer = new byte[256];
+
+    UserEventBatcher(File ringFile) {
+        mRingFile = ringFile;
+        HandlerThread thread = new HandlerThread("user-event-logger",
+                Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper(), this);
+    }
+
+    /**
+     * Queues an event captured on the UI thread.
+     */
+    void add(PendingEvent event) {
+        synchronized (this) {
+            mCaptured.add(event);
+            if (mCaptured.size() > 1) {
+                // The worker has not drained the previous events yet.
+                return;
+            }
+        }
+        mHandler.sendEmptyMessage(MSG_PERSIST);
+    }
+
+    @Override
+    public boolean handleMessage(Message msg) {
+        switch (msg.what) {
+            case MSG_PERSIST:
+                persistCapturedEvents();
+                if (mPersisted.size() >= MAX_BATCH_SIZE) {
+                    mHandler.removeMessages(MSG_DISPATCH);
+                    dispatchPersistedEvents();
+                } else if (!mPersisted.isEmpty() && !mHandler.hasMessages(MSG_DISPATCH)) {
+                    mHandler.sendEmptyMessageDelayed(MSG_DISPATCH, BATCH_DELAY_MS);
+                }
+                return true;
+            case MSG_DISPATCH:
+                persistCapturedEvents();
+                dispatchPersistedEvents();
+                return true;
+        }
+        return false;
+    }
+
+    private void persistCapturedEvents() {
+        synchronized (this) {
+            ArrayList<PendingEvent> captured = mCaptured;
+            mCaptured = mDraining;
+            mDraining = captured;
+        }
+        if (mDraining.isEmpty()) {
+            return;
+        }
+        TraceHelper.beginSpan("UserEvent: persist");
+        UserEventRing ring = getRing();
+        for (PendingEvent pending : mDraining) {
+            pending.dispatcher.fillHashes(pending);
+            if (ring != null) {
+                int size = pending.event.getSerializedSize();
+                if (size > mBuffer.length) {
+                    mBuffer = new byte[Math.max(size, mBuffer.length * 2)];
+                }
+                MessageNano.toByteArray(pending.event, mBuffer, 0, size);
+                if (!ring.append(mBuffer, size)) {
+                    Log.w(TAG, "Event too large to be persisted: " + size);
+                }
+            }
+            mPersisted.add(pending);
+        }
+        mDraining.clear();
+        TraceHelper.endSpan();
+    }
+
+    private void dispatchPersistedEvents() {
+        if (mPersisted.isEmpty()) {
+            return;
+        }
+        TraceHelper.beginSpan("UserEvent: dispatch");
+        if (mRecovered != null) {
+            // Events recovered from the previous process have no dispatcher of their own.
+            UserEventDispatcher dispatcher = mPersisted.get(0).dispatcher;
+            for (LauncherLogProto.LauncherEvent event : mRecovered) {
+                dispatcher.dispatchUserEventInBackground(event, null);
+            }
+            mRecovered = null;
+        }
+        for (PendingEvent pending : mPersisted) {
+            pending.dispatcher.dispatchUserEventInBackground(pending.event, pending.intent);
+        }
+        mPersisted.clear();
+        if (mRing != null) {
+            mRing.releaseAll();
+        }
+        TraceHelper.endSpan();
+    }
+
+    private UserEventRing getRing() {
+        if (!mRingOpened) {
+            mRingOpened = true;
+            try {
+                mRing = new UserEventRing(mRingFile, RING_CAPACITY);
+                mRecovered = parse(mRing.readAll());
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to open " + mRingFile, e);
+            }
+        }
+        return mRing;
+    }
+
+    private static ArrayList<LauncherLogProto.LauncherEvent> parse(ArrayList<byte[]> records) {
+        if (records.isEmpty()) {
+            return null;
+        }
+        ArrayList<LauncherLogProto.LauncherEvent> events = new ArrayList<>(records.size());
+        for (byte[] record : records) {
+            try {
+                events.add(LauncherLogProto.LauncherEvent.parseFrom(record));
+            } catch (InvalidProtocolBufferNanoException e) {
+                Log.w(TAG, "Dropping corrupted event", e);
+            }
+        }
+        return events;
+    }
+}
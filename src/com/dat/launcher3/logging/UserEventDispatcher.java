@@ -40,12 +40,20 @@ import com.dat.launcher3.userevent.nano.LauncherLogProto;
 import com.dat.launcher3.util.ComponentKey;
 import com.dat.launcher3.util.InstantAppResolver;
 import com.dat.launcher3.util.LogConfig;
+import com.dat.launcher3.util.TraceHelper;
 
 import java.util.Locale;
 import java.util.UUID;
 
 /**
  * Manages the creation of {@link LauncherLogProto.LauncherEvent}.
+ *
+ * Events are built on the UI thread, with only the data which requires the view hierarchy or the
+ * current state. The proto objects themselves are created there, as {@link LogContainerProvider}
+ * and {@link UserEventDelegate} fill them in directly. Hashing, serializing, persisting and
+ * dispatching is done in batches by {@link UserEventBatcher}, see
+ * {@link #dispatchUserEventInBackground}.
+ *
  * To debug this class, execute following command before side loading a new apk.
  *
  * $ adb shell setprop log.tag.UserEvent VERBOSE
@@ -74,6 +82,7 @@ public class UserEventDispatcher {
         ued.mIsInMultiWindowMode = dp.isMultiWindowMode;
         ued.mUuidStr = uuidStr;
         ued.mInstantAppResolver = InstantAppResolver.newInstance(context);
+        ued.mBatcher = UserEventBatcher.getInstance(context);
         return ued;
     }
 
@@ -134,6 +143,7 @@ public class UserEventDispatcher {
     protected InstantAppResolver mInstantAppResolver;
     private boolean mAppOrTaskLaunch;
     private UserEventDelegate mDelegate;
+    private UserEventBatcher mBatcher;
 
     //                      APP_ICON    SHORTCUT    WIDGET
     // --------------------------------------------------------------
@@ -161,13 +171,14 @@ public class UserEventDispatcher {
         LauncherLogProto.LauncherEvent event = LoggerUtils.newLauncherEvent(LoggerUtils.newTouchAction(LauncherLogProto.Action.Touch.TAP),
                 LoggerUtils.newItemTarget(v, mInstantAppResolver), LoggerUtils.newTarget(LauncherLogProto.Target.Type.CONTAINER));
 
+        DeferredHash hash = null;
         if (fillInLogContainerData(event, v)) {
             if (mDelegate != null) {
                 mDelegate.modifyUserEvent(event);
             }
-            fillIntentInfo(event.srcTarget[0], intent);
+            hash = fillIntentInfo(event.srcTarget[0], intent);
         }
-        dispatchUserEvent(event, intent);
+        dispatchUserEvent(event, intent, hash);
         mAppOrTaskLaunch = true;
     }
 
@@ -183,30 +194,50 @@ public class UserEventDispatcher {
         }
         event.srcTarget[0].itemType = LauncherLogProto.ItemType.TASK;
         event.srcTarget[0].pageIndex = taskIndex;
-        fillComponentInfo(event.srcTarget[0], componentKey.componentName);
-        dispatchUserEvent(event, null);
+        dispatchUserEvent(event, null,
+                fillComponentInfo(event.srcTarget[0], componentKey.componentName));
         mAppOrTaskLaunch = true;
     }
 
-    protected void fillIntentInfo(LauncherLogProto.Target target, Intent intent) {
+    /**
+     * Fills in the intent hash of {@param target}.
+     * @return the hashes of the component, to be filled in on the background thread.
+     */
+    protected DeferredHash fillIntentInfo(LauncherLogProto.Target target, Intent intent) {
         target.intentHash = intent.hashCode();
-        fillComponentInfo(target, intent.getComponent());
+        return fillComponentInfo(target, intent.getComponent());
     }
 
-    private void fillComponentInfo(LauncherLogProto.Target target, ComponentName cn) {
-        if (cn != null) {
-            target.packageNameHash = (mUuidStr + cn.getPackageName()).hashCode();
-            target.componentHash = (mUuidStr + cn.flattenToString()).hashCode();
+    private DeferredHash fillComponentInfo(LauncherLogProto.Target target, ComponentName cn) {
+        return cn == null ? null : new DeferredHash(target, cn, null);
+    }
+
+    /**
+     * Fills in the hashes deferred while building the event. Called on the background thread.
+     */
+    void fillHashes(PendingEvent pending) {
+        DeferredHash hash = pending.hash;
+        if (hash == null) {
+            return;
+        }
+        if (hash.component != null) {
+            hash.target.packageNameHash = (mUuidStr + hash.component.getPackageName()).hashCode();
+            hash.target.componentHash = (mUuidStr + hash.component.flattenToString()).hashCode();
+        }
+        if (hash.creator != null) {
+            // Requires a binder call
+            hash.target.packageNameHash = (mUuidStr + hash.creator.getCreatorPackage()).hashCode();
         }
     }
 
     public void logNotificationLaunch(View v, PendingIntent intent) {
         LauncherLogProto.LauncherEvent event = LoggerUtils.newLauncherEvent(LoggerUtils.newTouchAction(LauncherLogProto.Action.Touch.TAP),
                 LoggerUtils.newItemTarget(v, mInstantAppResolver), LoggerUtils.newTarget(LauncherLogProto.Target.Type.CONTAINER));
+        DeferredHash hash = null;
         if (fillInLogContainerData(event, v)) {
-            event.srcTarget[0].packageNameHash = (mUuidStr + intent.getCreatorPackage()).hashCode();
+            hash = new DeferredHash(event.srcTarget[0], null, intent);
         }
-        dispatchUserEvent(event, null);
+        dispatchUserEvent(event, null, hash);
     }
 
     public void logActionCommand(int command, LauncherLogProto.Target srcTarget) {
@@ -421,13 +452,46 @@ public class UserEventDispatcher {
         mActionDurationMillis = SystemClock.uptimeMillis();
     }
 
+    /**
+     * Completes the event with the current state and queues it. The event must not be modified
+     * after this call.
+     */
     public void dispatchUserEvent(LauncherLogProto.LauncherEvent ev, Intent intent) {
+        dispatchUserEvent(ev, intent, null);
+    }
+
+    /**
+     * Same as {@link #dispatchUserEvent(LauncherLogProto.LauncherEvent, Intent)}, where
+     * {@param hash} is filled in on the background thread before the event is dispatched.
+     */
+    protected void dispatchUserEvent(LauncherLogProto.LauncherEvent ev, Intent intent,
+            @Nullable DeferredHash hash) {
+        TraceHelper.beginSpan("UserEvent: capture");
         mAppOrTaskLaunch = false;
+        long now = SystemClock.uptimeMillis();
         ev.isInLandscapeMode = mIsInLandscapeMode;
         ev.isInMultiWindowMode = mIsInMultiWindowMode;
-        ev.elapsedContainerMillis = SystemClock.uptimeMillis() - mElapsedContainerMillis;
-        ev.elapsedSessionMillis = SystemClock.uptimeMillis() - mElapsedSessionMillis;
+        ev.elapsedContainerMillis = now - mElapsedContainerMillis;
+        ev.elapsedSessionMillis = now - mElapsedSessionMillis;
+
+        PendingEvent pending = new PendingEvent(this, ev, intent, hash);
 
+        if (mBatcher != null) {
+            mBatcher.add(pending);
+        } else {
+            fillHashes(pending);
+            dispatchUserEventInBackground(ev, intent);
+        }
+        TraceHelper.endSpan();
+    }
+
+    /**
+     * Called with a fully built event, in the order of {@link #dispatchUserEvent}. This runs on
+     * the background thread of {@link UserEventBatcher}, unless this dispatcher was not created
+     * through {@link #newInstance}. Events recovered from a previous process have no intent.
+     */
+    protected void dispatchUserEventInBackground(LauncherLogProto.LauncherEvent ev,
+            @Nullable Intent intent) {
         if (!IS_VERBOSE) {
             return;
         }
@@ -450,6 +514,41 @@ public class UserEventDispatcher {
         Log.d(TAG, log);
     }
 
+    /**
+     * The hashes of a target which are computed on the background thread: those of
+     * {@link #component}, or the package hash of the creator of {@link #creator}.
+     */
+    protected static final class DeferredHash {
+        final LauncherLogProto.Target target;
+        final ComponentName component;
+        final PendingIntent creator;
+
+        DeferredHash(LauncherLogProto.Target target, ComponentName component,
+                PendingIntent creator) {
+            this.target = target;
+            this.component = component;
+            this.creator = creator;
+        }
+    }
+
+    /**
+     * An event captured on the UI thread, along with the data to fill in on the background thread.
+     */
+    static class PendingEvent {
+        final UserEventDispatcher dispatcher;
+        final LauncherLogProto.LauncherEvent event;
+        final Intent intent;
+        final DeferredHash hash;
+
+        PendingEvent(UserEventDispatcher dispatcher, LauncherLogProto.LauncherEvent event,
+                Intent intent, DeferredHash hash) {
+            this.dispatcher = dispatcher;
+            this.event = event;
+            this.intent = intent;
+            this.hash = hash;
+        }
+    }
+
     private static String getTargetsStr(LauncherLogProto.Target[] targets) {
         String result = "child:" + LoggerUtils.getTargetStr(targets[0]);
         for (int i = 1; i < targets.length; i++) {
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.launcher3.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * Fixed size circular journal of serialized user events.
+ *
+ * The file is memory mapped, so records written to it survive the death of the process without
+ * any explicit sync. Records are appended at the tail and released from the head once they have
+ * been dispatched. When the ring is full, the oldest records are overwritten.
+ *
+ * Layout: int magic, int head, int tail, followed by the ring of records. Each record is a 2 byte
+ * length followed by the payload, and may wrap around the end of the ring. The tail is only
+ * updated once the payload is written, so a partially written record is never read back.
+ *
+ * Not thread safe, all the calls must be made on the same thread.
+ */
+class UserEventRing {
+
+    private static final int MAGIC = 0x55455631;    // "UEV1"
+    private static final int HEADER_SIZE = 12;
+    private static final int HEAD_OFFSET = 4;
+    private static final int TAIL_OFFSET = 8;
+    private static final int LENGTH_SIZE = 2;
+
+    static final int MAX_RECORD_SIZE = 0xFFFF;
+
+    private final MappedByteBuffer mBuffer;
+    private final int mCapacity;
+    private final byte[] mLength = new byte[LENGTH_SIZE];
+
+    private int mHead;
+    private int mTail;
+
+    UserEventRing(File file, int capacity) throws IOException {
+        mCapacity = capacity;
+        boolean reset;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            reset = raf.length() != HEADER_SIZE + capacity;
+            if (reset) {
+                raf.setLength(HEADER_SIZE + capacity);
+            }
+            // The mapping stays valid after the file is closed.
+            mBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + capacity);
+        }
+        mHead = mBuffer.getInt(HEAD_OFFSET);
+        mTail = mBuffer.getInt(TAIL_OFFSET);
+        if (reset || mBuffer.getInt(0) != MAGIC || !isValid()) {
+            mHead = mTail = 0;
+            writeHeader();
+            mBuffer.putInt(0, MAGIC);
+        }
+    }
+
+    /**
+     * Returns true if the records between the head and the tail are well formed.
+     */
+    private boolean isValid() {
+        if (mHead < 0 || mHead >= mCapacity || mTail < 0 || mTail >= mCapacity) {
+            return false;
+        }
+        int used = getUsed();
+        int pos = mHead;
+        while (used > 0) {
+            if (used < LENGTH_SIZE) {
+                return false;
+            }
+            int size = LENGTH_SIZE + readLength(pos);
+            if (size > used) {
+                return false;
+            }
+            used -= size;
+            pos = (pos + size) % mCapacity;
+        }
+        return true;
+    }
+
+    /**
+     * Appends a record, dropping the oldest records if there isn't enough space.
+     * @return false if the record can never fit in the ring.
+     */
+    boolean append(byte[] data, int length) {
+        int size = LENGTH_SIZE + length;
+        // One byte is always left unused, to tell a full ring from an empty one.
+        if (length > MAX_RECORD_SIZE || size >= mCapacity) {
+            return false;
+        }
+        if (mCapacity - 1 - getUsed() < size) {
+            while (mCapacity - 1 - getUsed() < size) {
+                mHead = (mHead + LENGTH_SIZE + readLength(mHead)) % mCapacity;
+            }
+            // Release the dropped records before their space is reused.
+            writeHeader();
+        }
+        mLength[0] = (byte) (length >> 8);
+        mLength[1] = (byte) length;
+        write(mTail, mLength, LENGTH_SIZE);
+        write((mTail + LENGTH_SIZE) % mCapacity, data, length);
+        mTail = (mTail + size) % mCapacity;
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * Returns all the records which have not been released yet, oldest first.
+     */
+    ArrayList<byte[]> readAll() {
+        ArrayList<byte[]> records = new ArrayList<>();
+        int pos = mHead;
+        while (pos != mTail) {
+            byte[] record = new byte[readLength(pos)];
+            read((pos + LENGTH_SIZE) % mCapacity, record);
+            records.add(record);
+            pos = (pos + LENGTH_SIZE + record.length) % mCapacity;
+        }
+        return records;
+    }
+
+    /**
+     * Releases all the records written so far.
+     */
+    void releaseAll() {
+        if (mHead != mTail) {
+            mHead = mTail;
+            writeHeader();
+        }
+    }
+
+    private int getUsed() {
+        return (mTail - mHead + mCapacity) % mCapacity;
+    }
+
+    private void writeHeader() {
+        mBuffer.putInt(HEAD_OFFSET, mHead);
+        mBuffer.putInt(TAIL_OFFSET, mTail);
+    }
+
+    private int readLength(int pos) {
+        read(pos, mLength);
+        return ((mLength[0] & 0xFF) << 8) | (mLength[1] & 0xFF);
+    }
+
+    private void write(int pos, byte[] src, int length) {
+        int first = Math.min(length, mCapacity - pos);
+        mBuffer.position(HEADER_SIZE + pos);
+        mBuffer.put(src, 0, first);
+        if (first < length) {
+            mBuffer.position(HEADER_SIZE);
+            mBuffer.put(src, first, length - first);
+        }
+    }
+
+    private void read(int pos, byte[] dst) {
+        int first = Math.min(dst.length, mCapacity - pos);
+        mBuffer.position(HEADER_SIZE + pos);
+        mBuffer.get(dst, 0, first);
+        if (first < dst.length) {
+            mBuffer.position(HEADER_SIZE);
+            mBuffer.get(dst, first, dst.length - first);
+        }
+    }
+}
@@ -28,7 +28,7 @@ import com.dat.launcher3.ShortcutInfo;
 import com.dat.launcher3.util.ComponentKey;
 import com.dat.launcher3.util.ItemInfoMatcher;
 import com.dat.launcher3.util.MultiHashMap;
-import com.dat.launcher3.widget.WidgetListRowEntry;
+import com.dat.launcher3.widget.WidgetsChangeSet;
 
 import java.util.ArrayList;
 import java.util.concurrent.Executor;
@@ -66,6 +66,7 @@ public abstract class BaseModelUpdateTask implements ModelUpdateTask {
             return;
         }
         execute(mApp, mDataModel, mAllAppsList);
+        mDataModel.invalidateSnapshot();
     }
 
     /**
@@ -117,8 +118,7 @@ public abstract class BaseModelUpdateTask implements ModelUpdateTask {
     }
 
     public void bindUpdatedWidgets(BgDataModel dataModel) {
-        final ArrayList<WidgetListRowEntry> widgets =
-                dataModel.widgetsModel.getWidgetsList(mApp.getContext());
+        final WidgetsChangeSet widgets = dataModel.widgetsModel.getWidgetsChangeSet();
         scheduleCallbackTask(new CallbackTask() {
             @Override
             public void execute(Callbacks callbacks) {
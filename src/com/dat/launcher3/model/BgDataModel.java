@@ -34,16 +34,15 @@ import com.dat.launcher3.shortcuts.DeepShortcutManager;
 import com.dat.launcher3.shortcuts.ShortcutInfoCompat;
 import com.dat.launcher3.shortcuts.ShortcutKey;
 import com.dat.launcher3.util.ComponentKey;
-import com.dat.launcher3.util.LongArrayMap;
+import com.dat.launcher3.util.LongObjectHashMap;
 import com.dat.launcher3.util.MultiHashMap;
-import com.google.protobuf.nano.MessageNano;
 
 import java.io.FileDescriptor;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -51,6 +50,9 @@ import java.util.Map;
 
 /**
  * All the data stored in-memory and managed by the LauncherModel
+ *
+ * The collections are only modified on the worker thread, while holding the lock on this object.
+ * Other threads can read a {@link Snapshot} of the items, which is only copied when it is read.
  */
 public class BgDataModel {
 
@@ -60,7 +62,7 @@ public class BgDataModel {
      * Map of all the ItemInfos (shortcuts, folders, and widgets) created by
      * LauncherModel to their ids
      */
-    public final LongArrayMap<ItemInfo> itemsIdMap = new LongArrayMap<>();
+    public final LongObjectHashMap<ItemInfo> itemsIdMap = new LongObjectHashMap<>();
 
     /**
      * List of all the folders and shortcuts directly on the home screen (no widgets
@@ -76,7 +78,7 @@ public class BgDataModel {
     /**
      * Map of id to FolderInfos of all the folders created by LauncherModel
      */
-    public final LongArrayMap<FolderInfo> folders = new LongArrayMap<>();
+    public final LongObjectHashMap<FolderInfo> folders = new LongObjectHashMap<>();
 
     /**
      * Ordered list of workspace screens ids.
@@ -108,6 +110,37 @@ public class BgDataModel {
      */
     public int lastBindId = 0;
 
+    private volatile Snapshot mSnapshot = new Snapshot(this, 0);
+    // True if the items changed since mSnapshot was built
+    private volatile boolean mSnapshotDirty;
+
+    /**
+     * Returns a {@link Snapshot} of the items, building a new one if the model changed since the
+     * last call. This can be called on any thread, but it waits for the model lock when a new
+     * snapshot has to be built.
+     */
+    public Snapshot getSnapshot() {
+        if (mSnapshotDirty) {
+            rebuildSnapshot();
+        }
+        return mSnapshot;
+    }
+
+    /**
+     * Marks the current {@link Snapshot} as outdated. Called on the worker thread after the model
+     * is loaded or changed. The copy is only made when the snapshot is next read.
+     */
+    public void invalidateSnapshot() {
+        mSnapshotDirty = true;
+    }
+
+    private synchronized void rebuildSnapshot() {
+        if (mSnapshotDirty) {
+            mSnapshotDirty = false;
+            mSnapshot = new Snapshot(this, mSnapshot.version + 1);
+        }
+    }
+
     /**
      * Clears all the data
      */
@@ -121,38 +154,47 @@ public class BgDataModel {
         deepShortcutMap.clear();
     }
 
-    public synchronized void dump(String prefix, FileDescriptor fd, PrintWriter writer,
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer,
             String[] args) {
         if (Arrays.asList(args).contains("--proto")) {
             dumpProto(prefix, fd, writer, args);
             return;
         }
-        writer.println(prefix + "Data Model:");
+        dumpState(prefix, writer, args);
+    }
+
+    private void dumpState(String prefix, PrintWriter writer, String[] args) {
+        Snapshot snapshot = getSnapshot();
+        writer.println(prefix + "Data Model: version " + snapshot.version);
         writer.print(prefix + " ---- workspace screens: ");
-        for (int i = 0; i < workspaceScreens.size(); i++) {
-            writer.print(" " + workspaceScreens.get(i).toString());
+        for (int i = 0; i < snapshot.workspaceScreens.size(); i++) {
+            writer.print(" " + snapshot.workspaceScreens.get(i).toString());
         }
         writer.println();
         writer.println(prefix + " ---- workspace items ");
-        for (int i = 0; i < workspaceItems.size(); i++) {
-            writer.println(prefix + '\t' + workspaceItems.get(i).toString());
+        for (int i = 0; i < snapshot.workspaceItems.size(); i++) {
+            writer.println(prefix + '\t' + snapshot.workspaceItems.get(i).toString());
         }
         writer.println(prefix + " ---- appwidget items ");
-        for (int i = 0; i < appWidgets.size(); i++) {
-            writer.println(prefix + '\t' + appWidgets.get(i).toString());
+        for (int i = 0; i < snapshot.appWidgets.size(); i++) {
+            writer.println(prefix + '\t' + snapshot.appWidgets.get(i).toString());
         }
         writer.println(prefix + " ---- folder items ");
-        for (int i = 0; i< folders.size(); i++) {
-            writer.println(prefix + '\t' + folders.valueAt(i).toString());
+        for (int i = 0; i< snapshot.getFolderCount(); i++) {
+            writer.println(prefix + '\t' + snapshot.getFolderAt(i).toString());
         }
         writer.println(prefix + " ---- items id map ");
-        for (int i = 0; i< itemsIdMap.size(); i++) {
-            writer.println(prefix + '\t' + itemsIdMap.valueAt(i).toString());
+        for (int i = 0; i< snapshot.getItemCount(); i++) {
+            writer.println(prefix + '\t' + snapshot.getItemAt(i).toString());
         }
 
         if (args.length > 0 && TextUtils.equals(args[0], "--all")) {
+            final MultiHashMap<ComponentKey, String> shortcutMapCopy;
+            synchronized (this) {
+                shortcutMapCopy = deepShortcutMap.clone();
+            }
             writer.println(prefix + "shortcuts");
-            for (ArrayList<String> map : deepShortcutMap.values()) {
+            for (ArrayList<String> map : shortcutMapCopy.values()) {
                 writer.print(prefix + "  ");
                 for (String str : map) {
                     writer.print(str + ", ");
@@ -162,85 +204,69 @@ public class BgDataModel {
         }
     }
 
-    private synchronized void dumpProto(String prefix, FileDescriptor fd, PrintWriter writer,
+    /**
+     * Streams the model as {@link LauncherDumpProto.LauncherImpression}, from a
+     * {@link Snapshot}, so that a large dump does not hold the model lock while writing.
+     */
+    private void dumpProto(String prefix, FileDescriptor fd, PrintWriter writer,
             String[] args) {
-
-        // Add top parent nodes. (L1)
-        DumpTargetWrapper hotseat = new DumpTargetWrapper(LauncherDumpProto.ContainerType.HOTSEAT, 0);
-        LongArrayMap<DumpTargetWrapper> workspaces = new LongArrayMap<>();
-        for (int i = 0; i < workspaceScreens.size(); i++) {
-            workspaces.put(workspaceScreens.get(i),
-                    new DumpTargetWrapper(LauncherDumpProto.ContainerType.WORKSPACE, i));
-        }
-        DumpTargetWrapper dtw;
-        // Add non leaf / non top nodes (L2)
-        for (int i = 0; i < folders.size(); i++) {
-            FolderInfo fInfo = folders.valueAt(i);
-            dtw = new DumpTargetWrapper(LauncherDumpProto.ContainerType.FOLDER, folders.size());
-            dtw.writeToDumpTarget(fInfo);
-            for(ShortcutInfo sInfo: fInfo.contents) {
-                DumpTargetWrapper child = new DumpTargetWrapper(sInfo);
-                child.writeToDumpTarget(sInfo);
-                dtw.add(child);
-            }
-            if (fInfo.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
-                hotseat.add(dtw);
-            } else if (fInfo.container == LauncherSettings.Favorites.CONTAINER_DESKTOP) {
-                workspaces.get(fInfo.screenId).add(dtw);
-            }
-        }
-        // Add leaf nodes (L3): *Info
-        for (int i = 0; i < workspaceItems.size(); i++) {
-            ItemInfo info = workspaceItems.get(i);
-            if (info instanceof FolderInfo) {
-                continue;
-            }
-            dtw = new DumpTargetWrapper(info);
-            dtw.writeToDumpTarget(info);
-            if (info.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
-                hotseat.add(dtw);
-            } else if (info.container == LauncherSettings.Favorites.CONTAINER_DESKTOP) {
-                workspaces.get(info.screenId).add(dtw);
-            }
-        }
-        for (int i = 0; i < appWidgets.size(); i++) {
-            ItemInfo info = appWidgets.get(i);
-            dtw = new DumpTargetWrapper(info);
-            dtw.writeToDumpTarget(info);
+        final Snapshot snapshot = getSnapshot();
+        final List<Long> screens = snapshot.workspaceScreens;
+        final ArrayList<ItemInfo> items = new ArrayList<>(
+                snapshot.workspaceItems.size() + snapshot.appWidgets.size());
+        items.addAll(snapshot.workspaceItems);
+        items.addAll(snapshot.appWidgets);
+
+        // Group the items by container: hotseat first, followed by the workspace screens in
+        // order. Items on unknown screens are dropped. The sort is stable, so the relative
+        // order of the model is preserved within a container.
+        final int hotseatRank = -1;
+        final int unknownRank = Integer.MAX_VALUE;
+        int[] ranks = new int[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            ItemInfo info = items.get(i);
             if (info.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT) {
-                hotseat.add(dtw);
+                ranks[i] = hotseatRank;
             } else if (info.container == LauncherSettings.Favorites.CONTAINER_DESKTOP) {
-                workspaces.get(info.screenId).add(dtw);
+                int index = screens.indexOf(info.screenId);
+                ranks[i] = index < 0 ? unknownRank : index;
+            } else {
+                ranks[i] = unknownRank;
             }
         }
-
-
-        // Traverse target wrapper
-        ArrayList<LauncherDumpProto.DumpTarget> targetList = new ArrayList<>();
-        targetList.addAll(hotseat.getFlattenedList());
-        for (int i = 0; i < workspaces.size(); i++) {
-            targetList.addAll(workspaces.valueAt(i).getFlattenedList());
+        Integer[] order = new Integer[items.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
         }
-
-        if (Arrays.asList(args).contains("--debug")) {
-            for (int i = 0; i < targetList.size(); i++) {
-                writer.println(prefix + DumpTargetWrapper.getDumpTargetStr(targetList.get(i)));
-            }
-            return;
-        } else {
-            LauncherDumpProto.LauncherImpression proto = new LauncherDumpProto.LauncherImpression();
-            proto.targets = new LauncherDumpProto.DumpTarget[targetList.size()];
-            for (int i = 0; i < targetList.size(); i++) {
-                proto.targets[i] = targetList.get(i);
-            }
-            FileOutputStream fos = new FileOutputStream(fd);
-            try {
-
-                fos.write(MessageNano.toByteArray(proto));
-                Log.d(TAG, MessageNano.toByteArray(proto).length + "Bytes");
-            } catch (IOException e) {
-                Log.e(TAG, "Exception writing dumpsys --proto", e);
+        Arrays.sort(order, (a, b) -> Integer.compare(ranks[a], ranks[b]));
+
+        DumpTargetWrapper dtw = Arrays.asList(args).contains("--debug")
+                ? new DumpTargetWrapper(prefix, writer) : new DumpTargetWrapper(fd);
+        try {
+            int next = 0;
+            for (int rank = hotseatRank; rank < screens.size(); rank++) {
+                dtw.startContainer(rank == hotseatRank
+                        ? LauncherDumpProto.ContainerType.HOTSEAT
+                        : LauncherDumpProto.ContainerType.WORKSPACE,
+                        rank == hotseatRank ? 0 : rank);
+                for (; next < order.length && ranks[order[next]] == rank; next++) {
+                    ItemInfo info = items.get(order[next]);
+                    if (info instanceof FolderInfo) {
+                        dtw.startFolder(info, snapshot.getFolderCount());
+                        for (ShortcutInfo sInfo : snapshot.getFolderContents(info.id)) {
+                            dtw.writeItem(sInfo);
+                        }
+                        dtw.endContainer();
+                    } else {
+                        dtw.writeItem(info);
+                    }
+                }
+                dtw.endContainer();
             }
+            int count = dtw.finish();
+            Log.d(TAG, "Dumped " + count + " targets");
+        } catch (IOException e) {
+            Log.e(TAG, "Exception writing dumpsys --proto", e);
         }
     }
 
@@ -355,6 +381,90 @@ public class BgDataModel {
         return folderInfo;
     }
 
+    /**
+     * An immutable copy of the item collections of {@link BgDataModel}. The items themselves are
+     * shared with the model.
+     */
+    public static class Snapshot {
+
+        /**
+         * Incremented every time a snapshot is built
+         */
+        public final int version;
+
+        public final List<ItemInfo> workspaceItems;
+        public final List<LauncherAppWidgetInfo> appWidgets;
+        public final List<Long> workspaceScreens;
+
+        private final LongObjectHashMap<ItemInfo> itemsIdMap;
+        private final LongObjectHashMap<FolderInfo> folders;
+        // Contents of each folder by id, sorted by rank
+        private final LongObjectHashMap<List<ShortcutInfo>> folderContents =
+                new LongObjectHashMap<>();
+
+        Snapshot(BgDataModel model, int version) {
+            this.version = version;
+            itemsIdMap = model.itemsIdMap.clone();
+            workspaceItems = Collections.unmodifiableList(new ArrayList<>(model.workspaceItems));
+            appWidgets = Collections.unmodifiableList(new ArrayList<>(model.appWidgets));
+            folders = model.folders.clone();
+            workspaceScreens = Collections.unmodifiableList(
+                    new ArrayList<>(model.workspaceScreens));
+
+            // FolderInfo.contents is changed on the UI thread, so the contents are collected
+            // from the id map instead, which is only changed under the model lock.
+            for (int i = 0; i < itemsIdMap.size(); i++) {
+                ItemInfo info = itemsIdMap.valueAt(i);
+                if (info instanceof ShortcutInfo && folders.containsKey(info.container)) {
+                    List<ShortcutInfo> contents = folderContents.get(info.container);
+                    if (contents == null) {
+                        contents = new ArrayList<>();
+                        folderContents.put(info.container, contents);
+                    }
+                    contents.add((ShortcutInfo) info);
+                }
+            }
+            for (int i = 0; i < folderContents.size(); i++) {
+                List<ShortcutInfo> contents = folderContents.valueAt(i);
+                Collections.sort(contents, (a, b) -> Integer.compare(a.rank, b.rank));
+                folderContents.put(folderContents.keyAt(i), Collections.unmodifiableList(contents));
+            }
+        }
+
+        public ItemInfo getItem(long id) {
+            return itemsIdMap.get(id);
+        }
+
+        public int getItemCount() {
+            return itemsIdMap.size();
+        }
+
+        public ItemInfo getItemAt(int index) {
+            return itemsIdMap.valueAt(index);
+        }
+
+        public FolderInfo getFolder(long id) {
+            return folders.get(id);
+        }
+
+        public int getFolderCount() {
+            return folders.size();
+        }
+
+        public FolderInfo getFolderAt(int index) {
+            return folders.valueAt(index);
+        }
+
+        /**
+         * Returns the contents of the folder {@param id}, or an empty list if there is no such
+         * folder.
+         */
+        public List<ShortcutInfo> getFolderContents(long id) {
+            List<ShortcutInfo> contents = folderContents.get(id);
+            return contents == null ? Collections.emptyList() : contents;
+        }
+    }
+
     /**
      * Clear all the deep shortcuts for the given package, and re-add the new shortcuts.
      */
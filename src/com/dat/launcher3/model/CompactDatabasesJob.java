@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.launcher3.model;
+
+import android.content.Context;
+
+import com.dat.launcher3.LauncherAppState;
+import com.dat.launcher3.LauncherSettings;
+import com.dat.launcher3.Utilities;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rebuilds the databases of the launcher, the icon cache and the widget previews, one per step,
+ * to release the space left by deleted rows.
+ *
+ * Each step is a full VACUUM which blocks the database it rebuilds, so the job only runs while
+ * the screen is off or the device is charging.
+ */
+public class CompactDatabasesJob implements MaintenanceScheduler.Job {
+
+    private static final String JOB_KEY = "compact_databases";
+
+    private static final String LAST_COMPACT_TIME = "last_db_compact_time";
+    private static final long COMPACT_INTERVAL_MS = TimeUnit.DAYS.toMillis(7);
+
+    private final LauncherAppState mApp;
+    private int mStep;
+
+    private CompactDatabasesJob(LauncherAppState app) {
+        mApp = app;
+    }
+
+    /**
+     * Schedules the compaction if the databases were not compacted recently.
+     */
+    public static void scheduleIfNeeded(LauncherAppState app) {
+        long lastCompactTime = Utilities.getDevicePrefs(app.getContext())
+                .getLong(LAST_COMPACT_TIME, 0);
+        long now = System.currentTimeMillis();
+        if (lastCompactTime <= now && now - lastCompactTime < COMPACT_INTERVAL_MS) {
+            return;
+        }
+        app.getMaintenanceScheduler().enqueue(JOB_KEY, new CompactDatabasesJob(app),
+                true /* deviceIdleOnly */);
+    }
+
+    @Override
+    public boolean runStep() {
+        Context context = mApp.getContext();
+        switch (mStep++) {
+            case 0:
+                LauncherSettings.Settings.call(context.getContentResolver(),
+                        LauncherSettings.Settings.METHOD_VACUUM);
+                return false;
+            case 1:
+                mApp.getIconCache().compactDb();
+                return false;
+            default:
+                mApp.getWidgetCache().compactDb();
+                Utilities.getDevicePrefs(context).edit()
+                        .putLong(LAST_COMPACT_TIME, System.currentTimeMillis()).apply();
+                return true;
+        }
+    }
+}
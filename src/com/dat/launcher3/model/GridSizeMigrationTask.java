@@ -11,7 +11,6 @@ import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.graphics.Point;
 import android.net.Uri;
-import android.text.TextUtils;
 import android.util.Log;
 import com.dat.launcher3.InvariantDeviceProfile;
 import com.dat.launcher3.ItemInfo;
@@ -27,7 +26,9 @@ import com.dat.launcher3.compat.AppWidgetManagerCompat;
 import com.dat.launcher3.compat.PackageInstallerCompat;
 import com.dat.launcher3.config.FeatureFlags;
 import com.dat.launcher3.util.GridOccupancy;
+import com.dat.launcher3.util.LongArrayList;
 import com.dat.launcher3.util.LongArrayMap;
+import com.dat.launcher3.util.LongObjectHashMap;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -60,7 +61,7 @@ public class GridSizeMigrationTask {
     private final InvariantDeviceProfile mIdp;
 
     private final ContentValues mTempValues = new ContentValues();
-    protected final ArrayList<Long> mEntryToRemove = new ArrayList<>();
+    protected final LongArrayList mEntryToRemove = new LongArrayList();
     private final ArrayList<ContentProviderOperation> mUpdateOperations = new ArrayList<>();
     protected final ArrayList<DbEntry> mCarryOver = new ArrayList<>();
     private final HashSet<String> mValidPackages;
@@ -119,7 +120,7 @@ public class GridSizeMigrationTask {
 
         if (!mEntryToRemove.isEmpty()) {
             if (DEBUG) {
-                Log.d(TAG, "Removing items: " + TextUtils.join(", ", mEntryToRemove));
+                Log.d(TAG, "Removing items: " + mEntryToRemove.toConcatString());
             }
             mContext.getContentResolver().delete(LauncherSettings.Favorites.CONTENT_URI,
                     Utilities.createDbSelectionQuery(
@@ -197,7 +198,7 @@ public class GridSizeMigrationTask {
         }
 
         if (!mCarryOver.isEmpty()) {
-            LongArrayMap<DbEntry> itemMap = new LongArrayMap<>();
+            LongObjectHashMap<DbEntry> itemMap = new LongObjectHashMap<>(mCarryOver.size());
             for (DbEntry e : mCarryOver) {
                 itemMap.put(e.id, e);
             }
@@ -27,9 +27,11 @@ import android.database.CursorWrapper;
 import android.graphics.BitmapFactory;
 import android.os.UserHandle;
 import android.provider.BaseColumns;
+import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.LongSparseArray;
+import android.util.LruCache;
 
 import com.dat.launcher3.AppInfo;
 import com.dat.launcher3.IconCache;
@@ -37,6 +39,7 @@ import com.dat.launcher3.InvariantDeviceProfile;
 import com.dat.launcher3.ItemInfo;
 import com.dat.launcher3.LauncherAppState;
 import com.dat.launcher3.LauncherSettings;
+import com.dat.launcher3.LauncherSettings.Favorites;
 import com.dat.launcher3.ShortcutInfo;
 import com.dat.launcher3.Utilities;
 import com.dat.launcher3.Workspace;
@@ -48,6 +51,7 @@ import com.dat.launcher3.graphics.LauncherIcons;
 import com.dat.launcher3.logging.FileLog;
 import com.dat.launcher3.util.ContentWriter;
 import com.dat.launcher3.util.GridOccupancy;
+import com.dat.launcher3.util.LongArrayList;
 import com.dat.launcher3.util.LongArrayMap;
 
 import java.net.URISyntaxException;
@@ -61,6 +65,41 @@ public class LoaderCursor extends CursorWrapper {
 
     private static final String TAG = "LoaderCursor";
 
+    /**
+     * The columns read while loading the workspace. The icon is only included for the items which
+     * usually need it, i.e. shortcuts and restored items, see {@link #isIconInProjection()}.
+     */
+    public static final String[] PROJECTION = new String[] {
+            Favorites._ID,
+            Favorites.CONTAINER,
+            Favorites.ITEM_TYPE,
+            Favorites.SCREEN,
+            Favorites.CELLX,
+            Favorites.CELLY,
+            Favorites.SPANX,
+            Favorites.SPANY,
+            Favorites.RANK,
+            Favorites.OPTIONS,
+            Favorites.PROFILE_ID,
+            Favorites.RESTORED,
+            Favorites.INTENT,
+            Favorites.TITLE,
+            Favorites.ICON_PACKAGE,
+            Favorites.ICON_RESOURCE,
+            Favorites.APPWIDGET_ID,
+            Favorites.APPWIDGET_PROVIDER,
+            "CASE WHEN " + Favorites.RESTORED + " != 0 OR " + Favorites.ITEM_TYPE + " != "
+                    + Favorites.ITEM_TYPE_APPLICATION + " THEN " + Favorites.ICON
+                    + " END AS " + Favorites.ICON,
+    };
+
+    private static final int INTENT_CACHE_SIZE = 500;
+
+    // Parsed intents by their description, kept across loads. Only copies are returned, as the
+    // loaded intents can be modified.
+    private static final LruCache<String, Intent> sIntentCache =
+            new LruCache<>(INTENT_CACHE_SIZE);
+
     public final LongSparseArray<UserHandle> allUsers = new LongSparseArray<>();
 
     private final Context mContext;
@@ -68,8 +107,8 @@ public class LoaderCursor extends CursorWrapper {
     private final IconCache mIconCache;
     private final InvariantDeviceProfile mIDP;
 
-    private final ArrayList<Long> itemsToRemove = new ArrayList<>();
-    private final ArrayList<Long> restoredRows = new ArrayList<>();
+    private final LongArrayList itemsToRemove = new LongArrayList();
+    private final LongArrayList restoredRows = new LongArrayList();
     private final LongArrayMap<GridOccupancy> occupied = new LongArrayMap<>();
 
     private final int iconPackageIndex;
@@ -102,8 +141,8 @@ public class LoaderCursor extends CursorWrapper {
         mIDP = app.getInvariantDeviceProfile();
         mUserManager = UserManagerCompat.getInstance(mContext);
 
-        // Init column indices
-        iconIndex = getColumnIndexOrThrow(LauncherSettings.Favorites.ICON);
+        // Init column indices.
+        iconIndex = getColumnIndex(LauncherSettings.Favorites.ICON);
         iconPackageIndex = getColumnIndexOrThrow(LauncherSettings.Favorites.ICON_PACKAGE);
         iconResourceIndex = getColumnIndexOrThrow(LauncherSettings.Favorites.ICON_RESOURCE);
         titleIndex = getColumnIndexOrThrow(LauncherSettings.Favorites.TITLE);
@@ -136,13 +175,49 @@ public class LoaderCursor extends CursorWrapper {
 
     public Intent parseIntent() {
         String intentDescription = getString(intentIndex);
-        try {
-            return TextUtils.isEmpty(intentDescription) ?
-                    null : Intent.parseUri(intentDescription, 0);
-        } catch (URISyntaxException e) {
-            Log.e(TAG, "Error parsing Intent");
+        if (TextUtils.isEmpty(intentDescription)) {
             return null;
         }
+        Intent intent = sIntentCache.get(intentDescription);
+        if (intent == null) {
+            try {
+                intent = Intent.parseUri(intentDescription, 0);
+            } catch (URISyntaxException e) {
+                Log.e(TAG, "Error parsing Intent");
+                return null;
+            }
+            sIntentCache.put(intentDescription, intent);
+        }
+        return new Intent(intent);
+    }
+
+    @VisibleForTesting
+    static void clearIntentCache() {
+        sIntentCache.evictAll();
+    }
+
+    /**
+     * Returns true if the icon column of the current row holds the saved icon, false if it was
+     * left out by {@link #PROJECTION}.
+     */
+    private boolean isIconInProjection() {
+        return restoreFlag != 0 || itemType != Favorites.ITEM_TYPE_APPLICATION;
+    }
+
+    /**
+     * Returns the icon saved for the current item. An app without a cached icon is the only case
+     * which reads it from the DB, as its icon is not in the cursor.
+     */
+    private byte[] getIconBlob() {
+        byte[] data = iconIndex >= 0 ? getBlob(iconIndex) : null;
+        if (data != null || (iconIndex >= 0 && isIconInProjection())) {
+            return data;
+        }
+        try (Cursor c = mContext.getContentResolver().query(Favorites.CONTENT_URI,
+                new String[] {Favorites.ICON}, Favorites._ID + " = ?",
+                new String[] {Long.toString(id)}, null)) {
+            return c != null && c.moveToNext() ? c.getBlob(0) : null;
+        }
     }
 
     public ShortcutInfo loadSimpleShortcut() {
@@ -183,7 +258,10 @@ public class LoaderCursor extends CursorWrapper {
         }
 
         // Failed to load from resource, try loading from DB.
-        byte[] data = getBlob(iconIndex);
+        byte[] data = getIconBlob();
+        if (data == null) {
+            return false;
+        }
         try (LauncherIcons li = LauncherIcons.obtain(mContext)) {
             li.createIconBitmap(BitmapFactory.decodeByteArray(data, 0, data.length)).applyTo(info);
             return true;
@@ -32,18 +32,18 @@ import com.dat.launcher3.PagedView;
 import com.dat.launcher3.Utilities;
 import com.dat.launcher3.config.FeatureFlags;
 import com.dat.launcher3.util.ComponentKey;
+import com.dat.launcher3.util.LongHashSet;
 import com.dat.launcher3.util.LooperIdleLock;
 import com.dat.launcher3.util.MultiHashMap;
+import com.dat.launcher3.util.TraceHelper;
 import com.dat.launcher3.util.ViewOnDrawExecutor;
-import com.dat.launcher3.widget.WidgetListRowEntry;
+import com.dat.launcher3.widget.WidgetsChangeSet;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Set;
 import java.util.concurrent.Executor;
 
 /**
@@ -225,7 +225,7 @@ public class LoaderResults {
         // Order the set of items by their containers first, this allows use to walk through the
         // list sequentially, build up a list of containers that are in the specified screen,
         // as well as all items in those containers.
-        Set<Long> itemsOnScreen = new HashSet<>();
+        LongHashSet itemsOnScreen = new LongHashSet();
         Collections.sort(allWorkspaceItems, new Comparator<ItemInfo>() {
             @Override
             public int compare(ItemInfo lhs, ItemInfo rhs) {
@@ -306,7 +306,9 @@ public class LoaderResults {
                 public void run() {
                     Callbacks callbacks = mCallbacks.get();
                     if (callbacks != null) {
+                        TraceHelper.beginSpan("bind: items");
                         callbacks.bindItems(workspaceItems.subList(start, start+chunkSize), false);
+                        TraceHelper.endSpan();
                     }
                 }
             };
@@ -321,7 +323,9 @@ public class LoaderResults {
                 public void run() {
                     Callbacks callbacks = mCallbacks.get();
                     if (callbacks != null) {
+                        TraceHelper.beginSpan("bind: widget");
                         callbacks.bindItems(Collections.singletonList(widget), false);
+                        TraceHelper.endSpan();
                     }
                 }
             };
@@ -339,7 +343,9 @@ public class LoaderResults {
             public void run() {
                 Callbacks callbacks = mCallbacks.get();
                 if (callbacks != null) {
+                    TraceHelper.beginSpan("bind: deep shortcuts");
                     callbacks.bindDeepShortcutMap(shortcutMapCopy);
+                    TraceHelper.endSpan();
                 }
             }
         };
@@ -355,7 +361,9 @@ public class LoaderResults {
             public void run() {
                 Callbacks callbacks = mCallbacks.get();
                 if (callbacks != null) {
+                    TraceHelper.beginSpan("bind: all apps");
                     callbacks.bindAllApplications(list);
+                    TraceHelper.endSpan();
                 }
             }
         };
@@ -363,13 +371,14 @@ public class LoaderResults {
     }
 
     public void bindWidgets() {
-        final ArrayList<WidgetListRowEntry> widgets =
-                mBgDataModel.widgetsModel.getWidgetsList(mApp.getContext());
+        final WidgetsChangeSet widgets = mBgDataModel.widgetsModel.getWidgetsChangeSet();
         Runnable r = new Runnable() {
             public void run() {
                 Callbacks callbacks = mCallbacks.get();
                 if (callbacks != null) {
+                    TraceHelper.beginSpan("bind: widgets list");
                     callbacks.bindAllWidgets(widgets);
+                    TraceHelper.endSpan();
                 }
             }
         };
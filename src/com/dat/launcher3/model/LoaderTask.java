@@ -140,14 +140,14 @@ public class LoaderTask implements Runnable {
     private void sendFirstScreenActiveInstallsBroadcast() {
         ArrayList<ItemInfo> firstScreenItems = new ArrayList<>();
 
-        ArrayList<ItemInfo> allItems = new ArrayList<>();
-        synchronized (mBgDataModel) {
-            allItems.addAll(mBgDataModel.workspaceItems);
-            allItems.addAll(mBgDataModel.appWidgets);
-        }
-        long firstScreen = mBgDataModel.workspaceScreens.isEmpty()
+        BgDataModel.Snapshot snapshot = mBgDataModel.getSnapshot();
+        ArrayList<ItemInfo> allItems = new ArrayList<>(
+                snapshot.workspaceItems.size() + snapshot.appWidgets.size());
+        allItems.addAll(snapshot.workspaceItems);
+        allItems.addAll(snapshot.appWidgets);
+        long firstScreen = snapshot.workspaceScreens.isEmpty()
                 ? -1 // In this case, we can still look at the items in the hotseat.
-                : mBgDataModel.workspaceScreens.get(0);
+                : snapshot.workspaceScreens.get(0);
         LoaderResults.filterCurrentWorkspaceItems(firstScreen, allItems, firstScreenItems,
                 new ArrayList<>() /* otherScreenItems are ignored */);
         mFirstScreenBroadcast.sendBroadcasts(mApp.getContext(), firstScreenItems);
@@ -165,6 +165,7 @@ public class LoaderTask implements Runnable {
         try (LauncherModel.LoaderTransaction transaction = mApp.getModel().beginLoader(this)) {
             TraceHelper.partitionSection(TAG, "step 1.1: loading workspace");
             loadWorkspace();
+            mBgDataModel.invalidateSnapshot();
 
             verifyNotStopped();
             TraceHelper.partitionSection(TAG, "step 1.2: bind workspace workspace");
@@ -188,7 +189,7 @@ public class LoaderTask implements Runnable {
             mResults.bindAllApps();
 
             verifyNotStopped();
-            TraceHelper.partitionSection(TAG, "step 2.3: Update icon cache");
+            TraceHelper.partitionSection(TAG, "step 2.3: Schedule icon cache update");
             updateIconCache();
 
             // Take a break
@@ -217,6 +218,8 @@ public class LoaderTask implements Runnable {
             TraceHelper.partitionSection(TAG, "step 4.2: Binding widgets");
             mResults.bindWidgets();
 
+            CompactDatabasesJob.scheduleIfNeeded(mApp);
+
             transaction.commit();
         } catch (CancellationException e) {
             // Loader stopped, ignore
@@ -272,7 +275,8 @@ public class LoaderTask implements Runnable {
 
             Map<ShortcutKey, ShortcutInfoCompat> shortcutKeyToPinnedShortcuts = new HashMap<>();
             final LoaderCursor c = new LoaderCursor(contentResolver.query(
-                    LauncherSettings.Favorites.CONTENT_URI, null, null, null, null), mApp);
+                    LauncherSettings.Favorites.CONTENT_URI, LoaderCursor.PROJECTION,
+                    null, null, null), mApp);
 
             HashMap<ComponentKey, AppWidgetProviderInfo> widgetProvidersMap = null;
 
@@ -803,7 +807,10 @@ public class LoaderTask implements Runnable {
                 }
             }
         }
-        mIconCache.updateDbIcons(packagesToIgnore);
+        // Updating the icons of the apps which changed while the launcher was dead requires
+        // scanning all the apps, so it is done once the device is idle.
+        mApp.getMaintenanceScheduler().enqueue("update_icon_db",
+                mIconCache.newUpdateDbIconsJob(packagesToIgnore));
     }
 
     private void loadAllApps() {
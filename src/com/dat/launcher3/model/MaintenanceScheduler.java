@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.launcher3.model;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.dat.launcher3.LauncherModel;
+
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs the maintenance jobs of the caches and databases when they do not compete with the user:
+ * while the launcher is not visible, the screen is off or the device is charging.
+ *
+ * Jobs run in steps on the worker thread, as background tasks of the {@link ModelTaskScheduler}.
+ * Steps are run for at most {@link #CHUNK_BUDGET_MS} before the other tasks of the model get a
+ * turn. A job which is interrupted because the device is in use again resumes at its next step
+ * once it is idle.
+ *
+ * Jobs whose steps cannot be made short, such as rebuilding a database, can be restricted to
+ * run only while the screen is off or the device is charging, see
+ * {@link #enqueue(Object, Job, boolean)}.
+ */
+public class MaintenanceScheduler {
+
+    private static final String TAG = "MaintenanceScheduler";
+
+    private static final long CHUNK_BUDGET_MS = 8;
+
+    private final Context mContext;
+    private final ModelTaskScheduler mScheduler = LauncherModel.getScheduler();
+    private final Runnable mRunJobs = this::runJobs;
+
+    // All guarded by this
+    private final LinkedHashMap<Object, Job> mJobs = new LinkedHashMap<>();
+    // Keys of the pending jobs which only run while the device is idle
+    private final HashSet<Object> mDeviceIdleJobs = new HashSet<>();
+    // Assume the launcher is in use until one is attached, see LauncherAppState#setLauncher
+    private boolean mLauncherVisible = true;
+    private boolean mScreenOn;
+    private boolean mCharging;
+    private boolean mRunScheduled;
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            synchronized (MaintenanceScheduler.this) {
+                switch (intent.getAction()) {
+                    case Intent.ACTION_SCREEN_ON:
+                        mScreenOn = true;
+                        break;
+                    case Intent.ACTION_SCREEN_OFF:
+                        mScreenOn = false;
+                        break;
+                    case Intent.ACTION_POWER_CONNECTED:
+                        mCharging = true;
+                        break;
+                    case Intent.ACTION_POWER_DISCONNECTED:
+                        mCharging = false;
+                        break;
+                }
+                scheduleIfNeededLocked();
+            }
+        }
+    };
+
+    public MaintenanceScheduler(Context context) {
+        mContext = context;
+        mScreenOn = ((PowerManager) context.getSystemService(Context.POWER_SERVICE))
+                .isInteractive();
+        Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        mCharging = battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_SCREEN_ON);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+        filter.addAction(Intent.ACTION_POWER_CONNECTED);
+        filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+        context.registerReceiver(mReceiver, filter);
+    }
+
+    public void unregister() {
+        mContext.unregisterReceiver(mReceiver);
+    }
+
+    /**
+     * Adds {@param job} to the pending jobs. It replaces any pending job with the same
+     * {@param key}, which keeps its place in the order of the jobs.
+     */
+    public void enqueue(Object key, Job job) {
+        enqueue(key, job, false /* deviceIdleOnly */);
+    }
+
+    /**
+     * Same as {@link #enqueue(Object, Job)}.
+     *
+     * @param deviceIdleOnly if true, the job only runs while the screen is off or the device is
+     *                       charging, and not merely while the launcher is not visible.
+     */
+    public synchronized void enqueue(Object key, Job job, boolean deviceIdleOnly) {
+        mJobs.put(key, job);
+        if (deviceIdleOnly) {
+            mDeviceIdleJobs.add(key);
+        } else {
+            mDeviceIdleJobs.remove(key);
+        }
+        scheduleIfNeededLocked();
+    }
+
+    public synchronized void setLauncherVisible(boolean visible) {
+        mLauncherVisible = visible;
+        scheduleIfNeededLocked();
+    }
+
+    private boolean isDeviceIdleLocked() {
+        return !mScreenOn || mCharging;
+    }
+
+    private boolean isIdleLocked() {
+        return !mLauncherVisible || isDeviceIdleLocked();
+    }
+
+    /**
+     * Returns the first pending job which can run now, or null if there is none.
+     */
+    private Map.Entry<Object, Job> getNextJobLocked() {
+        if (!isIdleLocked()) {
+            return null;
+        }
+        boolean deviceIdle = isDeviceIdleLocked();
+        for (Map.Entry<Object, Job> entry : mJobs.entrySet()) {
+            if (deviceIdle || !mDeviceIdleJobs.contains(entry.getKey())) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void scheduleIfNeededLocked() {
+        if (!mRunScheduled && getNextJobLocked() != null) {
+            mRunScheduled = true;
+            mScheduler.post(ModelTaskScheduler.PRIORITY_BACKGROUND, mRunJobs, mRunJobs);
+        }
+    }
+
+    private void runJobs() {
+        long deadline = SystemClock.uptimeMillis() + CHUNK_BUDGET_MS;
+        while (true) {
+            Object key;
+            Job job;
+            synchronized (this) {
+                Map.Entry<Object, Job> entry = getNextJobLocked();
+                if (entry == null) {
+                    mRunScheduled = false;
+                    return;
+                }
+                if (SystemClock.uptimeMillis() >= deadline) {
+                    // Let the other tasks of the model run before the next chunk.
+                    mScheduler.post(ModelTaskScheduler.PRIORITY_BACKGROUND, mRunJobs, mRunJobs);
+                    return;
+                }
+                key = entry.getKey();
+                job = entry.getValue();
+            }
+
+            boolean complete;
+            try {
+                complete = job.runStep();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Dropping maintenance job " + key, e);
+                complete = true;
+            }
+            if (complete) {
+                synchronized (this) {
+                    // The job may have been replaced while it was running.
+                    if (mJobs.get(key) == job) {
+                        mJobs.remove(key);
+                        mDeviceIdleJobs.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "MaintenanceScheduler:");
+        writer.println(prefix + "\tidle=" + isIdleLocked() + " launcherVisible=" + mLauncherVisible
+                + " screenOn=" + mScreenOn + " charging=" + mCharging);
+        for (Object key : mJobs.keySet()) {
+            writer.println(prefix + "\tpending: " + key
+                    + (mDeviceIdleJobs.contains(key) ? " (device idle only)" : ""));
+        }
+    }
+
+    /**
+     * A maintenance job, which is run in short steps.
+     */
+    public interface Job {
+
+        /**
+         * Runs the next step of the job, which should not take more than a few milliseconds.
+         * @return true once the job is complete
+         */
+        boolean runStep();
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.launcher3.model;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the tasks of the model on the worker thread by priority class, so that a user action is
+ * not delayed behind background work.
+ *
+ * Tasks of the same class run in the order they were submitted. One task runs per message of the
+ * worker looper, so messages posted directly to it are not delayed by a long queue. A task which
+ * waited longer than {@link #MAX_WAIT_MS} runs before the tasks of higher classes, so that lower
+ * classes are never starved.
+ */
+public class ModelTaskScheduler {
+
+    /**
+     * Changes made by the user, such as committing a drop.
+     */
+    public static final int PRIORITY_INTERACTIVE = 0;
+    /**
+     * Model updates whose results are bound to the UI.
+     */
+    public static final int PRIORITY_BIND = 1;
+    /**
+     * Background maintenance, such as updating the icon cache.
+     */
+    public static final int PRIORITY_BACKGROUND = 2;
+
+    private static final int PRIORITY_COUNT = 3;
+    private static final String[] PRIORITY_NAMES = {"interactive", "bind", "background"};
+
+    private static final long MAX_WAIT_MS = 250;
+
+    private final Handler mHandler;
+    private final Runnable mRunNextTask = this::runNextTask;
+
+    // All guarded by mQueues
+    private final List<ArrayDeque<Task>> mQueues = new ArrayList<>(PRIORITY_COUNT);
+    private final QueueStats[] mStats = new QueueStats[PRIORITY_COUNT];
+    private boolean mRunScheduled;
+
+    public ModelTaskScheduler(Looper looper) {
+        mHandler = new Handler(looper);
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            mQueues.add(new ArrayDeque<>());
+            mStats[i] = new QueueStats();
+        }
+    }
+
+    /**
+     * Returns an executor for the tasks of {@param priority}.
+     */
+    public Executor getExecutor(int priority) {
+        return task -> execute(priority, task);
+    }
+
+    /**
+     * Runs {@param task} now if called on the worker thread, as it already blocks the queue,
+     * otherwise adds it to the queue of {@param priority}.
+     */
+    public void execute(int priority, Runnable task) {
+        if (mHandler.getLooper() == Looper.myLooper()) {
+            synchronized (mQueues) {
+                mStats[priority].onTaskStarted(0);
+            }
+            task.run();
+        } else {
+            post(priority, task, null);
+        }
+    }
+
+    /**
+     * Adds {@param task} to the queue of {@param priority}. It can be removed before it runs with
+     * {@link #removeTasks(Object)} and {@param token}.
+     */
+    public void post(int priority, Runnable task, Object token) {
+        synchronized (mQueues) {
+            mQueues.get(priority).add(new Task(task, token, SystemClock.uptimeMillis()));
+            if (!mRunScheduled) {
+                mRunScheduled = true;
+                mHandler.post(mRunNextTask);
+            }
+        }
+    }
+
+    /**
+     * Removes the pending tasks which were posted with {@param token}.
+     */
+    public void removeTasks(Object token) {
+        synchronized (mQueues) {
+            for (ArrayDeque<Task> queue : mQueues) {
+                Iterator<Task> it = queue.iterator();
+                while (it.hasNext()) {
+                    if (it.next().token == token) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    private void runNextTask() {
+        Task task;
+        synchronized (mQueues) {
+            long now = SystemClock.uptimeMillis();
+            int priority = getNextPriorityLocked(now);
+            if (priority < 0) {
+                mRunScheduled = false;
+                return;
+            }
+            task = mQueues.get(priority).poll();
+            mStats[priority].onTaskStarted(now - task.enqueueTime);
+        }
+
+        task.runnable.run();
+
+        synchronized (mQueues) {
+            if (getNextPriorityLocked(0) >= 0) {
+                mHandler.post(mRunNextTask);
+            } else {
+                mRunScheduled = false;
+            }
+        }
+    }
+
+    /**
+     * Returns the class of the task to run next, or -1 if there is no task.
+     */
+    private int getNextPriorityLocked(long now) {
+        // Run the task which waited the longest, if it waited too long.
+        int starving = -1;
+        for (int i = 1; i < PRIORITY_COUNT; i++) {
+            Task head = mQueues.get(i).peek();
+            if (head != null && now - head.enqueueTime >= MAX_WAIT_MS && (starving < 0
+                    || head.enqueueTime < mQueues.get(starving).peek().enqueueTime)) {
+                starving = i;
+            }
+        }
+        if (starving >= 0) {
+            return starving;
+        }
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            if (!mQueues.get(i).isEmpty()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "ModelTaskScheduler:");
+        synchronized (mQueues) {
+            for (int i = 0; i < PRIORITY_COUNT; i++) {
+                QueueStats stats = mStats[i];
+                writer.println(prefix + "\t" + PRIORITY_NAMES[i]
+                        + ": pending=" + mQueues.get(i).size()
+                        + " run=" + stats.count
+                        + " avgWait=" + (stats.count == 0 ? 0 : stats.totalWaitMs / stats.count)
+                        + "ms maxWait=" + stats.maxWaitMs + "ms");
+            }
+        }
+    }
+
+    private static class Task {
+        final Runnable runnable;
+        final Object token;
+        final long enqueueTime;
+
+        Task(Runnable runnable, Object token, long enqueueTime) {
+            this.runnable = runnable;
+            this.token = token;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+
+    /**
+     * Time spent by the tasks of a class in its queue.
+     */
+    private static class QueueStats {
+        int count;
+        long totalWaitMs;
+        long maxWaitMs;
+
+        void onTaskStarted(long waitMs) {
+            count++;
+            totalWaitMs += waitMs;
+            maxWaitMs = Math.max(maxWaitMs, waitMs);
+        }
+    }
+}
@@ -37,7 +37,6 @@ import com.dat.launcher3.LauncherSettings.Settings;
 import com.dat.launcher3.ShortcutInfo;
 import com.dat.launcher3.util.ContentWriter;
 import com.dat.launcher3.util.ItemInfoMatcher;
-import com.dat.launcher3.util.LooperExecutor;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -64,7 +63,8 @@ public class ModelWriter {
         mContext = context;
         mModel = model;
         mBgDataModel = dataModel;
-        mWorkerExecutor = new LooperExecutor(LauncherModel.getWorkerLooper());
+        mWorkerExecutor = LauncherModel.getScheduler()
+                .getExecutor(ModelTaskScheduler.PRIORITY_INTERACTIVE);
         mHasVerticalHotseat = hasVerticalHotseat;
         mVerifyChanges = verifyChanges;
         mUiHandler = new Handler(Looper.getMainLooper());
@@ -234,6 +234,7 @@ public class ModelWriter {
                 mBgDataModel.addItem(mContext, item, true);
                 verifier.verifyModel();
             }
+            mBgDataModel.invalidateSnapshot();
         });
     }
 
@@ -265,6 +266,7 @@ public class ModelWriter {
                 mBgDataModel.removeItem(mContext, item);
                 verifier.verifyModel();
             }
+            mBgDataModel.invalidateSnapshot();
         });
     }
 
@@ -284,6 +286,7 @@ public class ModelWriter {
             cr.delete(LauncherSettings.Favorites.getContentUri(info.id), null, null);
             mBgDataModel.removeItem(mContext, info);
             verifier.verifyModel();
+            mBgDataModel.invalidateSnapshot();
         });
     }
 
@@ -385,6 +388,7 @@ public class ModelWriter {
                 }
                 mVerifier.verifyModel();
             }
+            mBgDataModel.invalidateSnapshot();
         }
     }
 
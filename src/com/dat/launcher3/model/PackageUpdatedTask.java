@@ -20,6 +20,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Process;
 import android.os.UserHandle;
+import android.support.annotation.VisibleForTesting;
 import android.util.ArrayMap;
 import android.util.Log;
 
@@ -54,6 +55,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 /**
@@ -76,7 +78,7 @@ public class PackageUpdatedTask extends BaseModelUpdateTask {
 
     private final int mOp;
     private final UserHandle mUser;
-    private final String[] mPackages;
+    private String[] mPackages;
 
     public PackageUpdatedTask(int op, UserHandle user, String... packages) {
         mOp = op;
@@ -84,6 +86,27 @@ public class PackageUpdatedTask extends BaseModelUpdateTask {
         mPackages = packages;
     }
 
+    /**
+     * Adds the packages of {@param other} to this task, if it has the same operation and user,
+     * so that both are applied in a single pass over the model. Must be called before this task
+     * is executed.
+     * @return true if the tasks were merged.
+     */
+    public boolean merge(PackageUpdatedTask other) {
+        if (mOp != other.mOp || !mUser.equals(other.mUser)) {
+            return false;
+        }
+        LinkedHashSet<String> packages = new LinkedHashSet<>(Arrays.asList(mPackages));
+        Collections.addAll(packages, other.mPackages);
+        mPackages = packages.toArray(new String[packages.size()]);
+        return true;
+    }
+
+    @VisibleForTesting
+    String[] getPackages() {
+        return mPackages;
+    }
+
     @Override
     public void execute(LauncherAppState app, BgDataModel dataModel, AllAppsList appsList) {
         final Context context = app.getContext();
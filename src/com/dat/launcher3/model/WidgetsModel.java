@@ -9,10 +9,11 @@ import android.content.pm.PackageManager;
 import android.os.Process;
 import android.os.UserHandle;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.util.Log;
+import android.util.Pair;
 
 import com.dat.launcher3.AppFilter;
-import com.dat.launcher3.IconCache;
 import com.dat.launcher3.InvariantDeviceProfile;
 import com.dat.launcher3.LauncherAppState;
 import com.dat.launcher3.LauncherAppWidgetProviderInfo;
@@ -22,55 +23,68 @@ import com.dat.launcher3.compat.AppWidgetManagerCompat;
 import com.dat.launcher3.compat.LauncherAppsCompat;
 import com.dat.launcher3.compat.ShortcutConfigActivityInfo;
 import com.dat.launcher3.config.FeatureFlags;
-import com.dat.launcher3.util.MultiHashMap;
 import com.dat.launcher3.util.PackageUserKey;
 import com.dat.launcher3.util.Preconditions;
 import com.dat.launcher3.widget.WidgetItemComparator;
 import com.dat.launcher3.widget.WidgetListRowEntry;
-import com.dat.launcher3.widget.WidgetsDiffReporter;
-import com.dat.launcher3.widget.WidgetsListAdapter;
+import com.dat.launcher3.widget.WidgetsChangeSet;
+import com.dat.launcher3.widget.WidgetsListAdapter.WidgetListRowEntryComparator;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Locale;
 import java.util.Map;
 
 /**
  * Widgets data model that is used by the adapters of the widget views and controllers.
  *
- * <p> The widgets and shortcuts are organized using package name as its index.
+ * <p> The widgets and shortcuts are tracked per {@link PackageUserKey}, and shown as one sorted
+ * row per package. An update only rebuilds the rows of the packages which changed, and records
+ * the structural changes to the sorted rows so that the UI can apply them without diffing.
  */
 public class WidgetsModel {
 
     private static final String TAG = "WidgetsModel";
     private static final boolean DEBUG = false;
 
-    /* Map of widgets and shortcuts that are tracked per package. */
-    private final MultiHashMap<PackageItemInfo, WidgetItem> mWidgetsList = new MultiHashMap<>();
+    private static final String OBSOLETE_PREVIEWS_JOB = "remove_obsolete_previews";
+
+    /* Widgets and shortcuts that can be shown in the picker, per package and user. */
+    private final HashMap<PackageUserKey, ArrayList<WidgetItem>> mWidgetItems = new HashMap<>();
+
+    /* Rows currently shown, sorted. A row is never modified once added. */
+    private final ArrayList<WidgetListRowEntry> mRows = new ArrayList<>();
+
+    // Both comparators use a Collator of the current locale, see #updateLocale.
+    private WidgetListRowEntryComparator mRowComparator;
+    private WidgetItemComparator mWidgetComparator;
+    private Locale mLocale;
+
+    // Version of mRows, and the operations since the version last returned to the UI.
+    private int mVersion = 0;
+    private int mBoundVersion = 0;
+    private int[] mPendingOps = new int[16];
+    private int mPendingOpCount = 0;
 
     private AppFilter mAppFilter;
+    private AlphabeticIndexCompat mIndexer;
 
     /**
-     * Returns a list of {@link WidgetListRowEntry}. All {@link WidgetItem} in a single row
-     * are sorted (based on label and user), but the overall list of {@link WidgetListRowEntry}s
-     * is not sorted. This list is sorted at the UI when using
-     * {@link WidgetsDiffReporter}
+     * Returns the sorted list of {@link WidgetListRowEntry}, along with the changes since the
+     * last time this was called.
      *
-     * @see WidgetsListAdapter#setWidgets(ArrayList)
+     * @see WidgetsListAdapter#applyChangeSet(WidgetsChangeSet)
      */
-    public synchronized ArrayList<WidgetListRowEntry> getWidgetsList(Context context) {
-        ArrayList<WidgetListRowEntry> result = new ArrayList<>();
-        AlphabeticIndexCompat indexer = new AlphabeticIndexCompat(context);
-
-        WidgetItemComparator widgetComparator = new WidgetItemComparator();
-        for (Map.Entry<PackageItemInfo, ArrayList<WidgetItem>> entry : mWidgetsList.entrySet()) {
-            WidgetListRowEntry row = new WidgetListRowEntry(entry.getKey(), entry.getValue());
-            row.titleSectionName = indexer.computeSectionName(row.pkgItem.title);
-            Collections.sort(row.widgets, widgetComparator);
-            result.add(row);
-        }
-        return result;
+    public synchronized WidgetsChangeSet getWidgetsChangeSet() {
+        WidgetsChangeSet changeSet = new WidgetsChangeSet(mBoundVersion, mVersion,
+                new ArrayList<>(mRows), mPendingOps, mPendingOpCount);
+        mBoundVersion = mVersion;
+        mPendingOpCount = 0;
+        return changeSet;
     }
 
     /**
@@ -110,7 +124,8 @@ public class WidgetsModel {
             }
         }
 
-        app.getWidgetCache().removeObsoletePreviews(widgetsAndShortcuts, packageUser);
+        app.getMaintenanceScheduler().enqueue(Pair.create(OBSOLETE_PREVIEWS_JOB, packageUser),
+                app.getWidgetCache().newObsoletePreviewsJob(widgetsAndShortcuts, packageUser));
     }
 
     private synchronized void setWidgetsAndShortcuts(ArrayList<WidgetItem> rawWidgetsShortcuts,
@@ -119,42 +134,12 @@ public class WidgetsModel {
             Log.d(TAG, "addWidgetsAndShortcuts, widgetsShortcuts#=" + rawWidgetsShortcuts.size());
         }
 
-        // Temporary list for {@link PackageItemInfos} to avoid having to go through
-        // {@link mPackageItemInfos} to locate the key to be used for {@link #mWidgetsList}
-        HashMap<String, PackageItemInfo> tmpPackageItemInfos = new HashMap<>();
-
-        // clear the lists.
-        if (packageUser == null) {
-            mWidgetsList.clear();
-        } else {
-            // Only clear the widgets for the given package/user.
-            PackageItemInfo packageItem = null;
-            for (PackageItemInfo item : mWidgetsList.keySet()) {
-                if (item.packageName.equals(packageUser.mPackageName)) {
-                    packageItem = item;
-                    break;
-                }
-            }
-            if (packageItem != null) {
-                // We want to preserve the user that was on the packageItem previously,
-                // so add it to tmpPackageItemInfos here to avoid creating a new entry.
-                tmpPackageItemInfos.put(packageItem.packageName, packageItem);
-
-                Iterator<WidgetItem> widgetItemIterator = mWidgetsList.get(packageItem).iterator();
-                while (widgetItemIterator.hasNext()) {
-                    WidgetItem nextWidget = widgetItemIterator.next();
-                    if (nextWidget.componentName.getPackageName().equals(packageUser.mPackageName)
-                            && nextWidget.user.equals(packageUser.mUser)) {
-                        widgetItemIterator.remove();
-                    }
-                }
-            }
-        }
+        // Only a full update can follow a locale change, see LauncherModel#forceReload.
+        boolean localeChanged = (packageUser == null || mLocale == null)
+                && updateLocale(app.getContext());
 
+        HashMap<PackageUserKey, ArrayList<WidgetItem>> newItems = new HashMap<>();
         InvariantDeviceProfile idp = app.getInvariantDeviceProfile();
-        UserHandle myUser = Process.myUserHandle();
-
-        // add and update.
         for (WidgetItem item : rawWidgetsShortcuts) {
             if (item.widgetInfo != null) {
                 if ((item.widgetInfo.getWidgetFeatures() & WIDGET_FEATURE_HIDE_FROM_PICKER) != 0) {
@@ -186,23 +171,201 @@ public class WidgetsModel {
                 continue;
             }
 
-            String packageName = item.componentName.getPackageName();
-            PackageItemInfo pInfo = tmpPackageItemInfos.get(packageName);
+            PackageUserKey key = new PackageUserKey(item.componentName.getPackageName(), item.user);
+            ArrayList<WidgetItem> items = newItems.get(key);
+            if (items == null) {
+                items = new ArrayList<>();
+                newItems.put(key, items);
+            }
+            items.add(item);
+        }
+
+        // Find the packages whose items changed.
+        HashSet<String> changedPackages = new HashSet<>();
+        if (packageUser == null) {
+            for (PackageUserKey key : mWidgetItems.keySet()) {
+                if (!newItems.containsKey(key)) {
+                    changedPackages.add(key.mPackageName);
+                }
+            }
+            for (Map.Entry<PackageUserKey, ArrayList<WidgetItem>> entry : newItems.entrySet()) {
+                Collections.sort(entry.getValue(), mWidgetComparator);
+                if (!isSameItems(mWidgetItems.get(entry.getKey()), entry.getValue())) {
+                    changedPackages.add(entry.getKey().mPackageName);
+                }
+            }
+            mWidgetItems.clear();
+            mWidgetItems.putAll(newItems);
+        } else {
+            // Always rebuild the updated package, as its icon or title might have changed.
+            changedPackages.add(packageUser.mPackageName);
+            ArrayList<WidgetItem> items = newItems.get(packageUser);
+            if (items == null) {
+                mWidgetItems.remove(packageUser);
+            } else {
+                Collections.sort(items, mWidgetComparator);
+                mWidgetItems.put(packageUser, items);
+            }
+        }
+
+        if (localeChanged) {
+            // The titles, sections and order of all the rows depend on the locale.
+            for (PackageUserKey key : mWidgetItems.keySet()) {
+                changedPackages.add(key.mPackageName);
+            }
+            for (WidgetListRowEntry row : mRows) {
+                changedPackages.add(row.pkgItem.packageName);
+            }
+        }
+
+        HashMap<String, WidgetListRowEntry> newRows = new HashMap<>();
+        for (String packageName : changedPackages) {
+            WidgetListRowEntry row = buildRow(app, packageName);
+            if (row != null) {
+                newRows.put(packageName, row);
+            }
+        }
+        applyRowChanges(changedPackages, newRows, localeChanged);
+    }
+
+    /**
+     * Recreates the comparators and the indexer if the locale changed since the last call.
+     *
+     * @return true if the locale changed, in which case all the rows need to be rebuilt.
+     */
+    @VisibleForTesting
+    synchronized boolean updateLocale(Context context) {
+        Locale locale = context.getResources().getConfiguration().locale;
+        if (locale.equals(mLocale)) {
+            return false;
+        }
+        mLocale = locale;
+        mRowComparator = new WidgetListRowEntryComparator();
+        mWidgetComparator = new WidgetItemComparator();
+        mIndexer = null;
+        return true;
+    }
+
+    /**
+     * Returns a new row with all the items of {@param packageName}, or null if there is none.
+     */
+    private WidgetListRowEntry buildRow(LauncherAppState app, String packageName) {
+        UserHandle myUser = Process.myUserHandle();
+        PackageItemInfo pInfo = null;
+        ArrayList<WidgetItem> widgets = new ArrayList<>();
+        for (Map.Entry<PackageUserKey, ArrayList<WidgetItem>> entry : mWidgetItems.entrySet()) {
+            if (!entry.getKey().mPackageName.equals(packageName)) {
+                continue;
+            }
             if (pInfo == null) {
                 pInfo = new PackageItemInfo(packageName);
-                pInfo.user = item.user;
-                tmpPackageItemInfos.put(packageName,  pInfo);
+                pInfo.user = entry.getKey().mUser;
             } else if (!myUser.equals(pInfo.user)) {
-                // Keep updating the user, until we get the primary user.
-                pInfo.user = item.user;
+                // Prefer the primary user.
+                pInfo.user = entry.getKey().mUser;
             }
-            mWidgetsList.addToList(pInfo, item);
+            widgets.addAll(entry.getValue());
+        }
+        if (pInfo == null) {
+            return null;
+        }
+        app.getIconCache().getTitleAndIconForApp(pInfo, true /* userLowResIcon */);
+        Collections.sort(widgets, mWidgetComparator);
+
+        WidgetListRowEntry row = new WidgetListRowEntry(pInfo, widgets);
+        if (mIndexer == null) {
+            mIndexer = new AlphabeticIndexCompat(app.getContext());
         }
+        row.titleSectionName = mIndexer.computeSectionName(pInfo.title);
+        return row;
+    }
 
-        // Update each package entry
-        IconCache iconCache = app.getIconCache();
-        for (PackageItemInfo p : tmpPackageItemInfos.values()) {
-            iconCache.getTitleAndIconForApp(p, true /* userLowResIcon */);
+    /**
+     * Updates the sorted rows, replacing the rows of {@param changedPackages} with
+     * {@param newRows}, and records the operations.
+     *
+     * @param reorder true if the order of the current rows is no longer valid, in which case all
+     *                of them are removed and inserted again.
+     */
+    @VisibleForTesting
+    synchronized void applyRowChanges(HashSet<String> changedPackages,
+            HashMap<String, WidgetListRowEntry> newRows, boolean reorder) {
+        if (changedPackages.isEmpty()) {
+            return;
+        }
+        ArrayList<WidgetListRowEntry> changedInPlace = new ArrayList<>();
+        for (int i = mRows.size() - 1; reorder && i >= 0; i--) {
+            mRows.remove(i);
+            addOp(WidgetsChangeSet.OP_REMOVE, i);
+        }
+        for (int i = mRows.size() - 1; i >= 0; i--) {
+            WidgetListRowEntry row = mRows.get(i);
+            String packageName = row.pkgItem.packageName;
+            if (!changedPackages.contains(packageName)) {
+                continue;
+            }
+            WidgetListRowEntry newRow = newRows.get(packageName);
+            if (newRow != null && newRow.pkgItem.title.equals(row.pkgItem.title)) {
+                // Same position, as the rows are sorted by title.
+                mRows.set(i, newRow);
+                changedInPlace.add(newRow);
+                newRows.remove(packageName);
+            } else {
+                mRows.remove(i);
+                addOp(WidgetsChangeSet.OP_REMOVE, i);
+            }
+        }
+
+        ArrayList<WidgetListRowEntry> inserted = new ArrayList<>(newRows.values());
+        Collections.sort(inserted, mRowComparator);
+        for (WidgetListRowEntry row : inserted) {
+            int index = Collections.binarySearch(mRows, row, mRowComparator);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            // Insert after any row with the same title.
+            while (index < mRows.size() && mRowComparator.compare(mRows.get(index), row) == 0) {
+                index++;
+            }
+            mRows.add(index, row);
+            addOp(WidgetsChangeSet.OP_INSERT, index);
+        }
+
+        if (!changedInPlace.isEmpty()) {
+            for (int i = 0; i < mRows.size(); i++) {
+                if (changedInPlace.contains(mRows.get(i))) {
+                    addOp(WidgetsChangeSet.OP_CHANGE, i);
+                }
+            }
+        }
+        mVersion++;
+    }
+
+    private void addOp(int op, int index) {
+        if (mPendingOpCount * 2 == mPendingOps.length) {
+            mPendingOps = Arrays.copyOf(mPendingOps, mPendingOps.length * 2);
+        }
+        mPendingOps[mPendingOpCount * 2] = op;
+        mPendingOps[mPendingOpCount * 2 + 1] = index;
+        mPendingOpCount++;
+    }
+
+    /**
+     * Returns true if both sorted lists have the same items, with the same label and size.
+     */
+    private static boolean isSameItems(ArrayList<WidgetItem> oldItems,
+            ArrayList<WidgetItem> newItems) {
+        if (oldItems == null || oldItems.size() != newItems.size()) {
+            return false;
+        }
+        Iterator<WidgetItem> oldIterator = oldItems.iterator();
+        for (WidgetItem newItem : newItems) {
+            WidgetItem oldItem = oldIterator.next();
+            if (!oldItem.equals(newItem) || !oldItem.label.equals(newItem.label)
+                    || oldItem.spanX != newItem.spanX || oldItem.spanY != newItem.spanY) {
+                return false;
+            }
         }
+        return true;
     }
-}
\ No newline at end of file
+}
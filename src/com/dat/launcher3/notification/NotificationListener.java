@@ -34,6 +34,7 @@ import android.util.Log;
 import android.util.Pair;
 
 import com.dat.launcher3.LauncherModel;
+import com.dat.launcher3.model.ModelTaskScheduler;
 import com.dat.launcher3.util.PackageUserKey;
 import com.dat.launcher3.util.SettingsObserver;
 
@@ -44,6 +45,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * A {@link NotificationListenerService} that sends updates to its
@@ -66,7 +68,7 @@ public class NotificationListener extends NotificationListenerService {
     private static boolean sIsConnected;
     private static boolean sIsCreated;
 
-    private final Handler mWorkerHandler;
+    private final Executor mWorkerExecutor;
     private final Handler mUiHandler;
     private final Ranking mTempRanking = new Ranking();
     /** Maps groupKey's to the corresponding group of notifications. */
@@ -79,37 +81,6 @@ public class NotificationListener extends NotificationListenerService {
 
     private SettingsObserver mNotificationBadgingObserver;
 
-    private final Handler.Callback mWorkerCallback = new Handler.Callback() {
-        @Override
-        public boolean handleMessage(Message message) {
-            switch (message.what) {
-                case MSG_NOTIFICATION_POSTED:
-                    mUiHandler.obtainMessage(message.what, message.obj).sendToTarget();
-                    break;
-                case MSG_NOTIFICATION_REMOVED:
-                    mUiHandler.obtainMessage(message.what, message.obj).sendToTarget();
-                    break;
-                case MSG_NOTIFICATION_FULL_REFRESH:
-                    List<StatusBarNotification> activeNotifications;
-                    if (sIsConnected) {
-                        try {
-                            activeNotifications = filterNotifications(getActiveNotifications());
-                        } catch (SecurityException ex) {
-                            Log.e(TAG, "SecurityException: failed to fetch notifications");
-                            activeNotifications = new ArrayList<StatusBarNotification>();
-
-                        }
-                    } else {
-                        activeNotifications = new ArrayList<StatusBarNotification>();
-                    }
-
-                    mUiHandler.obtainMessage(message.what, activeNotifications).sendToTarget();
-                    break;
-            }
-            return true;
-        }
-    };
-
     private final Handler.Callback mUiCallback = new Handler.Callback() {
         @Override
         public boolean handleMessage(Message message) {
@@ -141,7 +112,8 @@ public class NotificationListener extends NotificationListenerService {
 
     public NotificationListener() {
         super();
-        mWorkerHandler = new Handler(LauncherModel.getWorkerLooper(), mWorkerCallback);
+        mWorkerExecutor = LauncherModel.getScheduler()
+                .getExecutor(ModelTaskScheduler.PRIORITY_BIND);
         mUiHandler = new Handler(Looper.getMainLooper(), mUiCallback);
         sNotificationListenerInstance = this;
     }
@@ -208,7 +180,42 @@ public class NotificationListener extends NotificationListenerService {
     }
 
     private void onNotificationFullRefresh() {
-        mWorkerHandler.obtainMessage(MSG_NOTIFICATION_FULL_REFRESH).sendToTarget();
+        sendToWorker(MSG_NOTIFICATION_FULL_REFRESH, null);
+    }
+
+    /**
+     * Runs {@link #handleOnWorker} on the worker thread, in order with the other tasks of the
+     * model.
+     */
+    private void sendToWorker(int what, Object obj) {
+        mWorkerExecutor.execute(() -> handleOnWorker(what, obj));
+    }
+
+    private void handleOnWorker(int what, Object obj) {
+        switch (what) {
+            case MSG_NOTIFICATION_POSTED:
+                mUiHandler.obtainMessage(what, obj).sendToTarget();
+                break;
+            case MSG_NOTIFICATION_REMOVED:
+                mUiHandler.obtainMessage(what, obj).sendToTarget();
+                break;
+            case MSG_NOTIFICATION_FULL_REFRESH:
+                List<StatusBarNotification> activeNotifications;
+                if (sIsConnected) {
+                    try {
+                        activeNotifications = filterNotifications(getActiveNotifications());
+                    } catch (SecurityException ex) {
+                        Log.e(TAG, "SecurityException: failed to fetch notifications");
+                        activeNotifications = new ArrayList<StatusBarNotification>();
+
+                    }
+                } else {
+                    activeNotifications = new ArrayList<StatusBarNotification>();
+                }
+
+                mUiHandler.obtainMessage(what, activeNotifications).sendToTarget();
+                break;
+        }
     }
 
     @Override
@@ -225,8 +232,7 @@ public class NotificationListener extends NotificationListenerService {
             // There is a bug in platform where we can get a null notification; just ignore it.
             return;
         }
-        mWorkerHandler.obtainMessage(MSG_NOTIFICATION_POSTED, new NotificationPostedMsg(sbn))
-            .sendToTarget();
+        sendToWorker(MSG_NOTIFICATION_POSTED, new NotificationPostedMsg(sbn));
         if (sStatusBarNotificationsChangedListener != null) {
             sStatusBarNotificationsChangedListener.onNotificationPosted(sbn);
         }
@@ -257,8 +263,7 @@ public class NotificationListener extends NotificationListenerService {
         Pair<PackageUserKey, NotificationKeyData> packageUserKeyAndNotificationKey
             = new Pair<>(PackageUserKey.fromNotification(sbn),
             NotificationKeyData.fromNotification(sbn));
-        mWorkerHandler.obtainMessage(MSG_NOTIFICATION_REMOVED, packageUserKeyAndNotificationKey)
-            .sendToTarget();
+        sendToWorker(MSG_NOTIFICATION_REMOVED, packageUserKeyAndNotificationKey);
         if (sStatusBarNotificationsChangedListener != null) {
             sStatusBarNotificationsChangedListener.onNotificationRemoved(sbn);
         }
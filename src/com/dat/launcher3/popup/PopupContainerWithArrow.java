@@ -55,6 +55,7 @@ import com.dat.launcher3.dragndrop.DragLayer;
 import com.dat.launcher3.dragndrop.DragOptions;
 import com.dat.launcher3.dragndrop.DragView;
 import com.dat.launcher3.logging.LoggerUtils;
+import com.dat.launcher3.model.ModelTaskScheduler;
 import com.dat.launcher3.notification.NotificationInfo;
 import com.dat.launcher3.notification.NotificationItemView;
 import com.dat.launcher3.notification.NotificationKeyData;
@@ -272,10 +273,10 @@ public class PopupContainerWithArrow extends ArrowPopup implements DragSource,
         setLayoutTransition(new LayoutTransition());
 
         // Load the shortcuts on a background thread and update the container as it animates.
-        final Looper workerLooper = LauncherModel.getWorkerLooper();
-        new Handler(workerLooper).postAtFrontOfQueue(PopupPopulator.createUpdateRunnable(
-                mLauncher, originalItemInfo, new Handler(Looper.getMainLooper()),
-                this, shortcutIds, mShortcuts, notificationKeys));
+        LauncherModel.getScheduler().post(ModelTaskScheduler.PRIORITY_INTERACTIVE,
+                PopupPopulator.createUpdateRunnable(mLauncher, originalItemInfo,
+                        new Handler(Looper.getMainLooper()), this, shortcutIds, mShortcuts,
+                        notificationKeys), null);
     }
 
     private String getTitleForAccessibility() {
@@ -33,6 +33,7 @@ import com.dat.launcher3.util.ComponentKey;
 import com.dat.launcher3.util.MultiHashMap;
 import com.dat.launcher3.util.PackageUserKey;
 import com.dat.launcher3.widget.WidgetListRowEntry;
+import com.dat.launcher3.widget.WidgetsChangeSet;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -63,7 +64,7 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
     /** Maps packages to their BadgeInfo's . */
     private Map<PackageUserKey, BadgeInfo> mPackageUserToBadgeInfos = new HashMap<>();
     /** Maps packages to their Widgets */
-    private ArrayList<WidgetListRowEntry> mAllWidgets = new ArrayList<>();
+    private WidgetsChangeSet mAllWidgets = WidgetsChangeSet.EMPTY;
 
     public PopupDataProvider(Launcher launcher) {
         mLauncher = launcher;
@@ -209,16 +210,19 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
         notificationListener.cancelNotificationFromLauncher(notificationKey);
     }
 
-    public void setAllWidgets(ArrayList<WidgetListRowEntry> allWidgets) {
+    public void setAllWidgets(WidgetsChangeSet allWidgets) {
         mAllWidgets = allWidgets;
     }
 
-    public ArrayList<WidgetListRowEntry> getAllWidgets() {
+    /**
+     * Returns the last bound widgets, along with the changes from the previous version.
+     */
+    public WidgetsChangeSet getWidgetsChangeSet() {
         return mAllWidgets;
     }
 
     public List<WidgetItem> getWidgetsForPackageUser(PackageUserKey packageUserKey) {
-        for (WidgetListRowEntry entry : mAllWidgets) {
+        for (WidgetListRowEntry entry : mAllWidgets.rows) {
             if (entry.pkgItem.packageName.equals(packageUserKey.mPackageName)) {
                 ArrayList<WidgetItem> widgets = new ArrayList<>(entry.widgets);
                 // Remove widgets not associated with the correct user.
@@ -19,6 +19,7 @@ package com.dat.launcher3.provider;
 import static com.dat.launcher3.Utilities.getDevicePrefs;
 
 import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
@@ -30,6 +31,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Process;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.ArrayMap;
 import android.util.LongSparseArray;
@@ -54,6 +56,9 @@ import com.dat.launcher3.util.LongArrayMap;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Utility class to import data from another Launcher which is based on Launcher3 schema.
@@ -65,8 +70,10 @@ public class ImportDataTask {
 
     private static final String TAG = "ImportDataTask";
     private static final int MIN_ITEM_COUNT_FOR_SUCCESSFUL_MIGRATION = 6;
-    // Insert items progressively to avoid OOM exception when loading icons.
-    private static final int BATCH_INSERT_SIZE = 15;
+    // Insert items progressively to avoid OOM exception when loading icons. The rows are read
+    // while the previous batches are inserted, and reading waits when too many are pending.
+    private static final int BATCH_INSERT_SIZE = 50;
+    private static final int MAX_PENDING_BATCHES = 2;
 
     private final Context mContext;
 
@@ -85,6 +92,7 @@ public class ImportDataTask {
     }
 
     public boolean importWorkspace() throws Exception {
+        long startTime = SystemClock.uptimeMillis();
         ArrayList<Long> allScreens = LauncherDbUtils.getScreenIdsFromCursor(
                 mContext.getContentResolver().query(mOtherScreensUri, null, null, null,
                         LauncherSettings.WorkspaceScreens.SCREEN_RANK));
@@ -119,6 +127,7 @@ public class ImportDataTask {
         // Create empty DB flag.
         LauncherSettings.Settings.call(mContext.getContentResolver(),
                 LauncherSettings.Settings.METHOD_CLEAR_EMPTY_DB_FLAG);
+        FileLog.d(TAG, "Import completed in " + (SystemClock.uptimeMillis() - startTime) + "ms");
         return true;
     }
 
@@ -126,6 +135,8 @@ public class ImportDataTask {
      * 1) Imports all the workspace entries from the source provider.
      * 2) For home screen entries, maps the screen id based on {@param screenIdMap}
      * 3) In the end fills any holes in hotseat with items from default hotseat layout.
+     *
+     * The entries are inserted in batches by a {@link BatchInserter}, while the next ones are read.
      */
     private void importWorkspaceItems(
             long firsetScreenId, LongSparseArray<Long> screenIdMap) throws Exception {
@@ -147,6 +158,8 @@ public class ImportDataTask {
         }
 
         ArrayList<ContentProviderOperation> insertOperations = new ArrayList<>(BATCH_INSERT_SIZE);
+        BatchInserter inserter = new BatchInserter(mContext.getContentResolver());
+        inserter.start();
 
         // Set of package names present in hotseat
         final HashSet<String> hotseatTargetApps = new HashSet<>();
@@ -290,21 +303,25 @@ public class ImportDataTask {
                 }
 
                 if (insertOperations.size() >= BATCH_INSERT_SIZE) {
-                    mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY,
-                            insertOperations);
-                    insertOperations.clear();
+                    inserter.submit(insertOperations);
+                    insertOperations = new ArrayList<>(BATCH_INSERT_SIZE);
                 }
             }
+
+            FileLog.d(TAG, totalItemsOnWorkspace + " items imported from external source");
+            if (totalItemsOnWorkspace < MIN_ITEM_COUNT_FOR_SUCCESSFUL_MIGRATION) {
+                throw new Exception("Insufficient data");
+            }
+            if (!insertOperations.isEmpty()) {
+                inserter.submit(insertOperations);
+                insertOperations = new ArrayList<>();
+            }
+        } finally {
+            // Wait for the submitted batches, even on failure, so that the DB is not reset
+            // while they are inserted.
+            inserter.finish();
         }
-        FileLog.d(TAG, totalItemsOnWorkspace + " items imported from external source");
-        if (totalItemsOnWorkspace < MIN_ITEM_COUNT_FOR_SUCCESSFUL_MIGRATION) {
-            throw new Exception("Insufficient data");
-        }
-        if (!insertOperations.isEmpty()) {
-            mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY,
-                    insertOperations);
-            insertOperations.clear();
-        }
+        inserter.throwIfFailed();
 
         LongArrayMap<Object> hotseatItems = GridSizeMigrationTask.removeBrokenHotseatItems(mContext);
         int myHotseatCount = LauncherAppState.getIDP(mContext).numHotseatIcons;
@@ -384,6 +401,97 @@ public class ImportDataTask {
                 : R.xml.dw_tablet_hotseat;
     }
 
+    /**
+     * Inserts batches of operations in the launcher DB on a background thread, in the order they
+     * are submitted. {@link #submit} waits when {@link #MAX_PENDING_BATCHES} are pending.
+     */
+    private static class BatchInserter implements Runnable {
+
+        // Marks the end of the batches
+        private static final ArrayList<ContentProviderOperation> END = new ArrayList<>();
+        // How often a full queue checks that the inserter thread is still running
+        private static final long QUEUE_POLL_MS = 500;
+
+        private final ContentResolver mResolver;
+        private final ArrayBlockingQueue<ArrayList<ContentProviderOperation>> mQueue =
+                new ArrayBlockingQueue<>(MAX_PENDING_BATCHES);
+        private final CountDownLatch mDone = new CountDownLatch(1);
+
+        private volatile Exception mError;
+
+        BatchInserter(ContentResolver resolver) {
+            mResolver = resolver;
+        }
+
+        void start() {
+            Utilities.THREAD_POOL_EXECUTOR.execute(this);
+        }
+
+        void submit(ArrayList<ContentProviderOperation> batch) throws Exception {
+            throwIfFailed();
+            if (!enqueue(batch)) {
+                throwIfFailed();
+            }
+        }
+
+        /**
+         * Waits until all the submitted batches are inserted, or skipped after a failure. If the
+         * inserter thread stopped early, this returns and {@link #throwIfFailed} reports it.
+         */
+        void finish() throws InterruptedException {
+            if (enqueue(END)) {
+                mDone.await();
+            }
+        }
+
+        /**
+         * Adds {@param batch} to the queue, waiting while it is full. Returns false if the
+         * inserter thread stopped before the batch could be added, so that the caller does not
+         * wait forever for a thread which will not take it.
+         */
+        private boolean enqueue(ArrayList<ContentProviderOperation> batch)
+                throws InterruptedException {
+            while (!mQueue.offer(batch, QUEUE_POLL_MS, TimeUnit.MILLISECONDS)) {
+                if (mDone.getCount() == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void throwIfFailed() throws Exception {
+            if (mError != null) {
+                throw mError;
+            }
+        }
+
+        @Override
+        public void run() {
+            boolean ended = false;
+            try {
+                ArrayList<ContentProviderOperation> batch;
+                while ((batch = mQueue.take()) != END) {
+                    // After a failure, keep taking the batches so that submit() does not block.
+                    if (mError == null) {
+                        try {
+                            mResolver.applyBatch(LauncherProvider.AUTHORITY, batch);
+                        } catch (Exception e) {
+                            mError = e;
+                        }
+                    }
+                }
+                ended = true;
+            } catch (InterruptedException e) {
+                mError = e;
+            } finally {
+                if (!ended && mError == null) {
+                    mError = new IllegalStateException("Batch inserter stopped");
+                }
+                mDone.countDown();
+            }
+        }
+    }
+
     /**
      * Extension of {@link DefaultLayoutParser} which only allows icons and shortcuts.
      */
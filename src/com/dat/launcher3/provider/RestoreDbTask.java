@@ -20,6 +20,7 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
 
 import com.dat.launcher3.LauncherAppWidgetInfo;
 import com.dat.launcher3.LauncherProvider.DatabaseHelper;
@@ -46,10 +47,13 @@ public class RestoreDbTask {
     private static final String INFO_COLUMN_DEFAULT_VALUE = "dflt_value";
 
     public static boolean performRestore(DatabaseHelper helper) {
+        long startTime = SystemClock.uptimeMillis();
         SQLiteDatabase db = helper.getWritableDatabase();
         try (LauncherDbUtils.SQLiteTransaction t = new LauncherDbUtils.SQLiteTransaction(db)) {
             new RestoreDbTask().sanitizeDB(helper, db);
             t.commit();
+            FileLog.d(TAG, "Restore completed in " + (SystemClock.uptimeMillis() - startTime)
+                    + "ms");
             return true;
         } catch (Exception e) {
             FileLog.e(TAG, "Failed to verify db", e);
@@ -65,6 +69,7 @@ public class RestoreDbTask {
      *      the restored apps get installed.
      *   3. If the user serial for primary profile is different than that of the previous device,
      *      update the entries to the new profile id.
+     * The restore flags and the profile id are updated in a single pass over the table.
      */
     private void sanitizeDB(DatabaseHelper helper, SQLiteDatabase db) throws Exception {
         long oldProfileId = getDefaultProfileId(db);
@@ -75,25 +80,28 @@ public class RestoreDbTask {
             FileLog.d(TAG, itemsDeleted + " items belonging to a managed profile, were deleted");
         }
 
-        // Mark all items as restored.
+        // Mark all items as restored, and widgets with the appropriate restore flag.
         boolean keepAllIcons = Utilities.isPropertyEnabled(LogConfig.KEEP_ALL_ICONS);
-        ContentValues values = new ContentValues();
-        values.put(Favorites.RESTORED, ShortcutInfo.FLAG_RESTORED_ICON
-                | (keepAllIcons ? ShortcutInfo.FLAG_RESTORE_STARTED : 0));
-        db.update(Favorites.TABLE_NAME, values, null, null);
-
-        // Mark widgets with appropriate restore flag
-        values.put(Favorites.RESTORED,  LauncherAppWidgetInfo.FLAG_ID_NOT_VALID |
+        int itemFlags = ShortcutInfo.FLAG_RESTORED_ICON
+                | (keepAllIcons ? ShortcutInfo.FLAG_RESTORE_STARTED : 0);
+        int widgetFlags = LauncherAppWidgetInfo.FLAG_ID_NOT_VALID |
                 LauncherAppWidgetInfo.FLAG_PROVIDER_NOT_READY |
                 LauncherAppWidgetInfo.FLAG_UI_NOT_READY |
-                (keepAllIcons ? LauncherAppWidgetInfo.FLAG_RESTORE_STARTED : 0));
-        db.update(Favorites.TABLE_NAME, values, "itemType = ?",
-                new String[]{Integer.toString(Favorites.ITEM_TYPE_APPWIDGET)});
+                (keepAllIcons ? LauncherAppWidgetInfo.FLAG_RESTORE_STARTED : 0);
 
         long myProfileId = helper.getDefaultUserSerial();
-        if (Utilities.longCompare(oldProfileId, myProfileId) != 0) {
+        boolean changeProfileId = Utilities.longCompare(oldProfileId, myProfileId) != 0;
+        String sql = "UPDATE " + Favorites.TABLE_NAME + " SET " + Favorites.RESTORED
+                + " = CASE WHEN " + Favorites.ITEM_TYPE + " = " + Favorites.ITEM_TYPE_APPWIDGET
+                + " THEN " + widgetFlags + " ELSE " + itemFlags + " END";
+        if (changeProfileId) {
+            sql += ", " + Favorites.PROFILE_ID + " = " + myProfileId;
+        }
+        db.execSQL(sql);
+
+        if (changeProfileId) {
             FileLog.d(TAG, "Changing primary user id from " + oldProfileId + " to " + myProfileId);
-            migrateProfileId(db, myProfileId);
+            changeDefaultProfileId(db, myProfileId);
         }
     }
 
@@ -105,7 +113,13 @@ public class RestoreDbTask {
         ContentValues values = new ContentValues();
         values.put(Favorites.PROFILE_ID, newProfileId);
         db.update(Favorites.TABLE_NAME, values, null, null);
+        changeDefaultProfileId(db, newProfileId);
+    }
 
+    /**
+     * Changes the default value of the profile id column, keeping the existing entries.
+     */
+    private void changeDefaultProfileId(SQLiteDatabase db, long newProfileId) {
         // Change default value of the column.
         db.execSQL("ALTER TABLE favorites RENAME TO favorites_old;");
         Favorites.addTableToDb(db, newProfileId, false);
@@ -32,7 +32,9 @@ import com.dat.launcher3.ItemInfo;
 import com.dat.launcher3.Launcher;
 import com.dat.launcher3.dragndrop.DragController;
 import com.dat.launcher3.dragndrop.DragOptions;
+import com.dat.launcher3.dragndrop.DragView;
 import com.dat.launcher3.folder.Folder;
+import com.dat.launcher3.util.TraceHelper;
 
 /**
  * Class to handle long-clicks on workspace items and start drag as a result.
@@ -52,6 +54,8 @@ public class ItemLongClickListener {
         if (!(v.getTag() instanceof ItemInfo)) return false;
 
         launcher.setWaitingForResult(null);
+        // Ended when the drag view is shown
+        TraceHelper.beginSection(DragView.TRACE_DRAG_LATENCY);
         beginDrag(v, launcher, (ItemInfo) v.getTag(), new DragOptions());
         return true;
     }
@@ -81,7 +85,8 @@ public class ItemLongClickListener {
         if (!launcher.isInState(ALL_APPS) && !launcher.isInState(OVERVIEW)) return false;
         if (launcher.getWorkspace().isSwitchingState()) return false;
 
-        // Start the drag
+        // Start the drag, the section is ended when the drag view is shown
+        TraceHelper.beginSection(DragView.TRACE_DRAG_LATENCY);
         final DragController dragController = launcher.getDragController();
         dragController.addDragListener(new DragController.DragListener() {
             @Override
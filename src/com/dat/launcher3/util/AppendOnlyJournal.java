@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.launcher3.util;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * A file of string records, where adding a record only appends it to the end of the file.
+ *
+ * Each record is written as its length, the CRC32 of its content and its UTF-8 content. A
+ * record which was not completely written, for example because the process was killed, is
+ * detected when the file is read, and the file is truncated to the last complete record.
+ */
+public class AppendOnlyJournal {
+
+    private static final String TAG = "AppendOnlyJournal";
+
+    // Size of the length and the checksum of a record
+    private static final int HEADER_SIZE = 8;
+
+    private final File mFile;
+
+    // Opened on the first append, and closed before the file is rewritten
+    private FileOutputStream mOut;
+
+    public AppendOnlyJournal(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Appends {@param record} to the end of the journal.
+     */
+    public synchronized void append(String record) {
+        byte[] content = record.getBytes(StandardCharsets.UTF_8);
+        // Write the whole record at once, so that it is either complete or truncated.
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + content.length);
+        buffer.putInt(content.length);
+        buffer.putInt(checksum(content));
+        buffer.put(content);
+        try {
+            if (mOut == null) {
+                // Drop any incomplete record left by a previous process before appending.
+                read(r -> { });
+                mOut = new FileOutputStream(mFile, true);
+            }
+            mOut.write(buffer.array());
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write to " + mFile, e);
+            closeOutput();
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return mFile.length() == 0;
+    }
+
+    /**
+     * Reads the records in order, passing each one to {@param visitor} as it is decoded.
+     */
+    public synchronized void forEach(RecordVisitor visitor) {
+        read(visitor);
+    }
+
+    /**
+     * Removes the records for which {@param filter} returns true, by writing the others to a new
+     * file which replaces the journal.
+     */
+    public synchronized void removeIf(RecordFilter filter) {
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        boolean[] removedAny = new boolean[1];
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            read(record -> {
+                if (filter.shouldRemove(record)) {
+                    removedAny[0] = true;
+                    return;
+                }
+                byte[] content = record.getBytes(StandardCharsets.UTF_8);
+                try {
+                    out.writeInt(content.length);
+                    out.writeInt(checksum(content));
+                    out.write(content);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Unable to rewrite " + mFile, e);
+            tmpFile.delete();
+            return;
+        }
+        if (removedAny[0]) {
+            closeOutput();
+            if (!tmpFile.renameTo(mFile)) {
+                Log.e(TAG, "Unable to replace " + mFile);
+            }
+        }
+        tmpFile.delete();
+    }
+
+    /**
+     * Removes all the records.
+     */
+    public synchronized void clear() {
+        closeOutput();
+        truncate(0);
+    }
+
+    private void read(RecordVisitor visitor) {
+        if (!mFile.exists()) {
+            return;
+        }
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mFile)))) {
+            long fileLength = mFile.length();
+            while (validLength + HEADER_SIZE <= fileLength) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 0 || validLength + HEADER_SIZE + length > fileLength) {
+                    break;
+                }
+                byte[] content = new byte[length];
+                in.readFully(content);
+                if (checksum(content) != checksum) {
+                    break;
+                }
+                validLength += HEADER_SIZE + length;
+                visitor.onRecord(new String(content, StandardCharsets.UTF_8));
+            }
+        } catch (FileNotFoundException e) {
+            return;
+        } catch (EOFException e) {
+            // The last record is incomplete
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read " + mFile, e);
+            return;
+        }
+        if (validLength < mFile.length()) {
+            Log.w(TAG, "Dropping incomplete record at " + validLength + " in " + mFile);
+            closeOutput();
+            truncate(validLength);
+        }
+    }
+
+    private void truncate(long length) {
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.setLength(length);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to truncate " + mFile, e);
+        }
+    }
+
+    private void closeOutput() {
+        if (mOut != null) {
+            try {
+                mOut.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            mOut = null;
+        }
+    }
+
+    private static int checksum(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Receives the records of the journal.
+     */
+    public interface RecordVisitor {
+        void onRecord(String record);
+    }
+
+    /**
+     * Selects the records to remove from the journal.
+     */
+    public interface RecordFilter {
+        boolean shouldRemove(String record);
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.dat.launcher3.util;
 
+import java.text.CollationKey;
 import java.text.Collator;
 import java.util.Comparator;
 
@@ -28,6 +29,25 @@ public class LabelComparator implements Comparator<String> {
 
     @Override
     public int compare(String titleA, String titleB) {
+        int result = compareFirstChar(titleA, titleB);
+        if (result != 0) {
+            return result;
+        }
+
+        // Order by the title in the current locale
+        return mCollator.compare(titleA, titleB);
+    }
+
+    /**
+     * Same as {@link #compare(String, String)}, using the precomputed keys of the titles. Both
+     * keys must have been generated by the same collator.
+     */
+    public int compare(CollationKey keyA, CollationKey keyB) {
+        int result = compareFirstChar(keyA.getSourceString(), keyB.getSourceString());
+        return result != 0 ? result : keyA.compareTo(keyB);
+    }
+
+    private static int compareFirstChar(String titleA, String titleB) {
         // Ensure that we de-prioritize any titles that don't start with a
         // linguistic letter or digit
         boolean aStartsWithLetter = (titleA.length() > 0) &&
@@ -39,8 +59,6 @@ public class LabelComparator implements Comparator<String> {
         } else if (!aStartsWithLetter && bStartsWithLetter) {
             return 1;
         }
-
-        // Order by the title in the current locale
-        return mCollator.compare(titleA, titleB);
+        return 0;
     }
 }
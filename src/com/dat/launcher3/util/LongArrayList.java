@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.launcher3.util;
+
+import java.util.Arrays;
+
+/**
+ * A list of longs, which does not box the values.
+ */
+public class LongArrayList {
+
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private long[] mValues;
+    private int mSize;
+
+    public LongArrayList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongArrayList(int capacity) {
+        mValues = new long[capacity];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public long get(int index) {
+        checkIndex(index);
+        return mValues[index];
+    }
+
+    public void add(long value) {
+        if (mSize == mValues.length) {
+            mValues = Arrays.copyOf(mValues, Math.max(DEFAULT_CAPACITY, mSize * 2));
+        }
+        mValues[mSize++] = value;
+    }
+
+    public int indexOf(long value) {
+        for (int i = 0; i < mSize; i++) {
+            if (mValues[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(long value) {
+        return indexOf(value) >= 0;
+    }
+
+    public void removeIndex(int index) {
+        checkIndex(index);
+        System.arraycopy(mValues, index + 1, mValues, index, mSize - index - 1);
+        mSize--;
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * Returns the values separated by commas, as used in SQL selections.
+     */
+    public String toConcatString() {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < mSize; i++) {
+            if (i > 0) {
+                b.append(", ");
+            }
+            b.append(mValues[i]);
+        }
+        return b.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "[" + toConcatString() + "]";
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + mSize);
+        }
+    }
+}
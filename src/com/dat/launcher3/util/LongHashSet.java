@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.launcher3.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of longs using open addressing, which does not box the values.
+ */
+public class LongHashSet {
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    // Empty slots are marked by mUsed, as any long is a valid value.
+    private long[] mValues;
+    private boolean[] mUsed;
+    private int mSize;
+
+    public LongHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongHashSet(int capacity) {
+        int tableSize = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1) << 1;
+        mValues = new long[tableSize];
+        mUsed = new boolean[tableSize];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public boolean contains(long value) {
+        return mUsed[findSlot(value)];
+    }
+
+    /**
+     * Adds {@param value}, and returns true if it was not already in the set.
+     */
+    public boolean add(long value) {
+        int slot = findSlot(value);
+        if (mUsed[slot]) {
+            return false;
+        }
+        if ((mSize + 1) * 2 > mValues.length) {
+            grow();
+            slot = findSlot(value);
+        }
+        mValues[slot] = value;
+        mUsed[slot] = true;
+        mSize++;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(mUsed, false);
+        mSize = 0;
+    }
+
+    private int findSlot(long value) {
+        int mask = mValues.length - 1;
+        int slot = LongObjectHashMap.hash(value) & mask;
+        while (mUsed[slot] && mValues[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] values = mValues;
+        boolean[] used = mUsed;
+        mValues = new long[values.length * 2];
+        mUsed = new boolean[values.length * 2];
+        for (int i = 0; i < values.length; i++) {
+            if (used[i]) {
+                int slot = findSlot(values[i]);
+                mValues[slot] = values[i];
+                mUsed[slot] = true;
+            }
+        }
+    }
+}
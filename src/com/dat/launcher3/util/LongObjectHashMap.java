@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.launcher3.util;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map from long keys to objects, which does not box the keys.
+ *
+ * The entries are stored in dense arrays, indexed by an open-addressing hash table, so that
+ * lookups, insertions and removals take constant time and iterating does not allocate entries.
+ * Entries are iterated in insertion order, except that removing an entry moves the last entry to
+ * its index. Null values are not supported: putting null removes the key.
+ */
+public class LongObjectHashMap<E> implements Iterable<E>, Cloneable {
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private long[] mKeys;
+    private Object[] mValues;
+    private int mSize;
+
+    // Index of each entry in mKeys plus one, at the hash of its key, or 0 for an empty slot.
+    // Its length is a power of two, at least twice the capacity of the entries.
+    private int[] mTable;
+
+    public LongObjectHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongObjectHashMap(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mKeys = new long[capacity];
+        mValues = new Object[capacity];
+        mTable = new int[tableSizeFor(capacity)];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return indexOfKey(key) >= 0;
+    }
+
+    public E get(long key) {
+        int index = indexOfKey(key);
+        return index < 0 ? null : (E) mValues[index];
+    }
+
+    /**
+     * Returns the index of {@param key} in the entries, or -1 if it is not in the map.
+     */
+    public int indexOfKey(long key) {
+        int slot = findSlot(key);
+        return mTable[slot] - 1;
+    }
+
+    public long keyAt(int index) {
+        return mKeys[index];
+    }
+
+    public E valueAt(int index) {
+        return (E) mValues[index];
+    }
+
+    public void put(long key, E value) {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        int slot = findSlot(key);
+        if (mTable[slot] != 0) {
+            mValues[mTable[slot] - 1] = value;
+            return;
+        }
+        if (mSize == mKeys.length) {
+            grow();
+            slot = findSlot(key);
+        }
+        mKeys[mSize] = key;
+        mValues[mSize] = value;
+        mSize++;
+        mTable[slot] = mSize;
+    }
+
+    public void remove(long key) {
+        int slot = findSlot(key);
+        int index = mTable[slot] - 1;
+        if (index < 0) {
+            return;
+        }
+        deleteSlot(slot);
+
+        // Move the last entry to the removed index.
+        int last = mSize - 1;
+        if (index != last) {
+            long lastKey = mKeys[last];
+            mTable[findSlot(lastKey)] = index + 1;
+            mKeys[index] = lastKey;
+            mValues[index] = mValues[last];
+        }
+        mValues[last] = null;
+        mSize--;
+    }
+
+    public void clear() {
+        Arrays.fill(mValues, 0, mSize, null);
+        Arrays.fill(mTable, 0);
+        mSize = 0;
+    }
+
+    @Override
+    public LongObjectHashMap<E> clone() {
+        try {
+            LongObjectHashMap<E> clone = (LongObjectHashMap<E>) super.clone();
+            clone.mKeys = mKeys.clone();
+            clone.mValues = mValues.clone();
+            clone.mTable = mTable.clone();
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int mNextIndex = 0;
+
+            @Override
+            public boolean hasNext() {
+                return mNextIndex < mSize;
+            }
+
+            @Override
+            public E next() {
+                if (mNextIndex >= mSize) {
+                    throw new NoSuchElementException();
+                }
+                return (E) mValues[mNextIndex++];
+            }
+        };
+    }
+
+    /**
+     * Returns the slot of {@param key} in the table, or the empty slot where it would be added.
+     */
+    private int findSlot(long key) {
+        int mask = mTable.length - 1;
+        int slot = hash(key) & mask;
+        while (mTable[slot] != 0 && mKeys[mTable[slot] - 1] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Empties {@param slot}, and moves back the entries after it which would no longer be found.
+     */
+    private void deleteSlot(int slot) {
+        int mask = mTable.length - 1;
+        int next = (slot + 1) & mask;
+        while (mTable[next] != 0) {
+            int home = hash(mKeys[mTable[next] - 1]) & mask;
+            // Move the entry if its home slot is not between the empty slot and its slot.
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                mTable[slot] = mTable[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        mTable[slot] = 0;
+    }
+
+    private void grow() {
+        int capacity = mKeys.length * 2;
+        mKeys = Arrays.copyOf(mKeys, capacity);
+        mValues = Arrays.copyOf(mValues, capacity);
+        mTable = new int[tableSizeFor(capacity)];
+        for (int i = 0; i < mSize; i++) {
+            mTable[findSlot(mKeys[i])] = i + 1;
+        }
+    }
+
+    private static int tableSizeFor(int capacity) {
+        return Integer.highestOneBit(capacity * 2 - 1) << 1;
+    }
+
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -79,14 +79,38 @@ public abstract class SQLiteCacheHelper {
      * @see SQLiteDatabase#query(String, String[], String, String[], String, String, String)
      */
     public Cursor query(String[] columns, String selection, String[] selectionArgs) {
+        return query(columns, selection, selectionArgs, null);
+    }
+
+    /**
+     * @see SQLiteDatabase#query(String, String[], String, String[], String, String, String)
+     */
+    public Cursor query(String[] columns, String selection, String[] selectionArgs,
+            String orderBy) {
         return mOpenHelper.getReadableDatabase().query(
-                mTableName, columns, selection, selectionArgs, null, null, null);
+                mTableName, columns, selection, selectionArgs, null, null, orderBy);
     }
 
     public void clear() {
         mOpenHelper.clearDB(mOpenHelper.getWritableDatabase());
     }
 
+    /**
+     * Rebuilds the DB file to release the space left by deleted rows.
+     */
+    public void vacuum() {
+        if (mIgnoreWrites) {
+            return;
+        }
+        try {
+            mOpenHelper.getWritableDatabase().execSQL("VACUUM");
+        } catch (SQLiteFullException e) {
+            onDiskFull(e);
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Ignoring sqlite exception", e);
+        }
+    }
+
     protected abstract void onCreateTable(SQLiteDatabase db);
 
     /**
@@ -18,75 +18,422 @@ package com.dat.launcher3.util;
 import static android.util.Log.VERBOSE;
 import static android.util.Log.isLoggable;
 
-import android.os.SystemClock;
+import android.os.Process;
 import android.os.Trace;
-import android.util.ArrayMap;
 import android.util.Log;
-import android.util.MutableLong;
 
 import com.dat.launcher3.config.FeatureFlags;
 
+import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 /**
  * A wrapper around {@link Trace} to allow easier proguarding for production builds.
  *
+ * Every completed span is recorded with nanosecond timestamps in a ring buffer owned by the
+ * thread which ended it, and added to a per-span-name histogram. Recording only takes locks which
+ * are not shared with other recording threads, so it is always enabled. The results are
+ * available through
+ * $ adb shell dumpsys activity com.dat.launcher3.Launcher
+ * $ adb shell dumpsys activity com.dat.launcher3.Launcher --trace-json > trace.json
+ * where the latter can be opened in chrome://tracing.
+ *
+ * There are two kinds of spans:
+ *   - Named sections ({@link #beginSection}), which can end on a different thread and are split
+ *     into steps using {@link #partitionSection}.
+ *   - Nested spans ({@link #beginSpan}), which must begin and end on the same thread.
+ *
  * To enable any tracing log, execute the following command:
  * $ adb shell setprop log.tag.TAGNAME VERBOSE
  */
 public class TraceHelper {
 
-    private static final boolean ENABLED = FeatureFlags.IS_DOGFOOD_BUILD;
+    private static final String TAG = "TraceHelper";
+
+    private static final boolean LOG_ENABLED = FeatureFlags.IS_DOGFOOD_BUILD;
 
     private static final boolean SYSTEM_TRACE = false;
-    private static final ArrayMap<String, MutableLong> sUpTimes = ENABLED ? new ArrayMap<>() : null;
 
-    public static void beginSection(String sectionName) {
-        if (ENABLED) {
-            MutableLong time = sUpTimes.get(sectionName);
-            if (time == null) {
-                time = new MutableLong(isLoggable(sectionName, VERBOSE) ? 0 : -1);
-                sUpTimes.put(sectionName, time);
-            }
-            if (time.value >= 0) {
-                if (SYSTEM_TRACE) {
-                    Trace.beginSection(sectionName);
+    private static final int MAX_THREAD_BUFFERS = 16;
+
+    private static final ConcurrentHashMap<String, Section> sSections = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Histogram> sHistograms =
+            new ConcurrentHashMap<>();
+
+    // All the thread buffers, guarded by itself
+    private static final ArrayList<SpanBuffer> sBuffers = new ArrayList<>();
+    // Records the spans of the threads started once all the thread buffers are in use
+    private static final SpanBuffer sOverflowBuffer = new SpanBuffer(null);
+    private static final ThreadLocal<SpanBuffer> sThreadBuffer = new ThreadLocal<SpanBuffer>() {
+        @Override
+        protected SpanBuffer initialValue() {
+            synchronized (sBuffers) {
+                if (sBuffers.size() >= MAX_THREAD_BUFFERS) {
+                    // Forget the buffers of threads which are no longer running.
+                    Iterator<SpanBuffer> itr = sBuffers.iterator();
+                    while (itr.hasNext()) {
+                        if (itr.next().mThread.get() == null) {
+                            itr.remove();
+                        }
+                    }
+                }
+                if (sBuffers.size() >= MAX_THREAD_BUFFERS) {
+                    // Keep the spans of the running threads, which are still recording.
+                    return new SpanBuffer(sOverflowBuffer);
                 }
-                time.value = SystemClock.uptimeMillis();
+                SpanBuffer buffer = new SpanBuffer(null);
+                sBuffers.add(buffer);
+                return buffer;
+            }
+        }
+    };
+
+    public static void beginSection(String sectionName) {
+        Section section = sSections.get(sectionName);
+        if (section == null) {
+            section = new Section(sectionName);
+            Section existing = sSections.putIfAbsent(sectionName, section);
+            if (existing != null) {
+                section = existing;
             }
         }
+        if (SYSTEM_TRACE) {
+            Trace.beginSection(sectionName);
+        }
+        long now = System.nanoTime();
+        synchronized (section) {
+            section.startTime = now;
+            section.partitionTime = now;
+            section.partition = null;
+            section.active = true;
+        }
     }
 
     public static void partitionSection(String sectionName, String partition) {
-        if (ENABLED) {
-            MutableLong time = sUpTimes.get(sectionName);
-            if (time != null && time.value >= 0) {
+        Section section = sSections.get(sectionName);
+        if (section == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        synchronized (section) {
+            if (!section.active) {
+                return;
+            }
+            if (SYSTEM_TRACE) {
+                Trace.endSection();
+                Trace.beginSection(sectionName);
+            }
+            endPartition(section, now);
+            if (section.loggable) {
+                Log.d(sectionName, partition + " : " + toMillis(now - section.partitionTime));
+            }
+            section.partition = partition;
+            section.partitionTime = now;
+        }
+    }
+
+    public static void endSection(String sectionName) {
+        endSection(sectionName, "End");
+    }
+
+    public static void endSection(String sectionName, String msg) {
+        Section section = sSections.get(sectionName);
+        if (section == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        synchronized (section) {
+            if (!section.active) {
+                return;
+            }
+            section.active = false;
+            if (SYSTEM_TRACE) {
+                Trace.endSection();
+            }
+            endPartition(section, now);
+            record(sectionName, section.startTime, now);
+            if (section.loggable) {
+                Log.d(sectionName, msg + " : " + toMillis(now - section.startTime));
+            }
+        }
+    }
+
+    private static void endPartition(Section section, long now) {
+        if (section.partition != null) {
+            record(section.name + ": " + section.partition, section.partitionTime, now);
+        }
+    }
+
+    /**
+     * Starts a span nested in any span already running on the current thread. It must be closed
+     * with {@link #endSpan} on the same thread.
+     */
+    public static void beginSpan(String spanName) {
+        if (SYSTEM_TRACE) {
+            Trace.beginSection(spanName);
+        }
+        sThreadBuffer.get().push(spanName, System.nanoTime());
+    }
+
+    /**
+     * Ends the innermost span started on the current thread.
+     */
+    public static void endSpan() {
+        long now = System.nanoTime();
+        if (SYSTEM_TRACE) {
+            Trace.endSection();
+        }
+        sThreadBuffer.get().pop(now);
+    }
+
+    private static void record(String name, long start, long end) {
+        sThreadBuffer.get().add(name, start, end);
+    }
+
+    private static Histogram getHistogram(String name) {
+        Histogram histogram = sHistograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            Histogram existing = sHistograms.putIfAbsent(name, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
 
-                if (SYSTEM_TRACE) {
-                    Trace.endSection();
-                    Trace.beginSection(sectionName);
+    private static String toMillis(long nanos) {
+        return String.format(Locale.US, "%.2f", nanos / 1000000f);
+    }
+
+    /**
+     * Prints a summary of the durations of every span recorded so far.
+     */
+    public static void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Trace sections (ms):");
+        writer.println(prefix + String.format(Locale.US, "  %8s %9s %9s %9s %9s  %s",
+                "count", "p50", "p90", "p99", "max", "name"));
+        for (Map.Entry<String, Histogram> e : new TreeMap<>(sHistograms).entrySet()) {
+            Histogram h = e.getValue();
+            writer.println(prefix + String.format(Locale.US, "  %8d %9s %9s %9s %9s  %s",
+                    h.mCount.get(),
+                    toMillis(h.getPercentile(50)),
+                    toMillis(h.getPercentile(90)),
+                    toMillis(h.getPercentile(99)),
+                    toMillis(h.mMax.get()),
+                    e.getKey()));
+        }
+    }
+
+    /**
+     * Writes the recorded spans in the Chrome trace-event JSON format.
+     */
+    public static void dumpChromeTrace(PrintWriter writer) {
+        ArrayList<SpanBuffer> buffers;
+        synchronized (sBuffers) {
+            buffers = new ArrayList<>(sBuffers);
+        }
+        int pid = Process.myPid();
+        writer.print("{\"traceEvents\":[");
+        boolean first = true;
+        for (SpanBuffer buffer : buffers) {
+            if (!first) {
+                writer.print(',');
+            }
+            first = false;
+            writer.print("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":" + pid
+                    + ",\"tid\":" + buffer.mTid + ",\"args\":{\"name\":");
+            writeJsonString(writer, buffer.mThreadName);
+            writer.print("}}");
+        }
+        buffers.add(sOverflowBuffer);
+        for (SpanBuffer buffer : buffers) {
+            synchronized (buffer) {
+                int start = (buffer.mNext - buffer.mCount + SpanBuffer.CAPACITY)
+                        % SpanBuffer.CAPACITY;
+                for (int i = 0; i < buffer.mCount; i++) {
+                    int index = (start + i) % SpanBuffer.CAPACITY;
+                    writer.print(first ? "\n{\"name\":" : ",\n{\"name\":");
+                    first = false;
+                    writeJsonString(writer, buffer.mNames[index]);
+                    writer.print(String.format(Locale.US,
+                            ",\"ph\":\"X\",\"pid\":%d,\"tid\":%d,\"ts\":%.3f,\"dur\":%.3f}",
+                            pid, buffer.mTids[index],
+                            buffer.mStarts[index] / 1000.0, buffer.mDurations[index] / 1000.0));
                 }
+            }
+        }
+        writer.println("\n]}");
+    }
 
-                long now = SystemClock.uptimeMillis();
-                Log.d(sectionName, partition + " : " + (now - time.value));
-                time.value = now;
+    private static void writeJsonString(PrintWriter writer, String str) {
+        writer.print('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.print('\\');
+                writer.print(c);
+            } else if (c < 0x20) {
+                writer.print(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                writer.print(c);
             }
         }
+        writer.print('"');
     }
 
-    public static void endSection(String sectionName) {
-        if (ENABLED) {
-            endSection(sectionName, "End");
+    /**
+     * State of a named section. Access is guarded by the object itself.
+     */
+    private static class Section {
+        final String name;
+        final boolean loggable;
+
+        boolean active;
+        long startTime;
+        long partitionTime;
+        String partition;
+
+        Section(String name) {
+            this.name = name;
+            loggable = LOG_ENABLED && isLoggable(name, VERBOSE);
         }
     }
 
-    public static void endSection(String sectionName, String msg) {
-        if (ENABLED) {
-            MutableLong time = sUpTimes.get(sectionName);
-            if (time != null && time.value >= 0) {
-                if (SYSTEM_TRACE) {
-                    Trace.endSection();
+    /**
+     * Ring buffer of the spans completed on a single thread, along with the stack of the nested
+     * spans currently running on it. Only the owner thread adds to it, the lock is only
+     * contended while dumping. The threads which did not get their own buffer keep their stack
+     * in it, but add their spans to the shared overflow buffer.
+     */
+    private static class SpanBuffer {
+
+        static final int CAPACITY = 512;
+        static final int MAX_DEPTH = 32;
+
+        final WeakReference<Thread> mThread = new WeakReference<>(Thread.currentThread());
+        final String mThreadName = Thread.currentThread().getName();
+        final int mTid = Process.myTid();
+
+        // Where the completed spans are added, this buffer unless it is an overflow thread
+        final SpanBuffer mRecords;
+
+        final String[] mNames = new String[CAPACITY];
+        final int[] mTids = new int[CAPACITY];
+        final long[] mStarts = new long[CAPACITY];
+        final long[] mDurations = new long[CAPACITY];
+        int mNext = 0;
+        int mCount = 0;
+
+        // Stack of running spans, only accessed by the owner thread
+        final String[] mStackNames = new String[MAX_DEPTH];
+        final long[] mStackStarts = new long[MAX_DEPTH];
+        int mDepth = 0;
+
+        SpanBuffer(SpanBuffer records) {
+            mRecords = records == null ? this : records;
+        }
+
+        void push(String name, long start) {
+            if (mDepth < MAX_DEPTH) {
+                mStackNames[mDepth] = name;
+                mStackStarts[mDepth] = start;
+            }
+            mDepth++;
+        }
+
+        void pop(long end) {
+            if (mDepth == 0) {
+                Log.e(TAG, "endSpan called without a matching beginSpan");
+                return;
+            }
+            mDepth--;
+            if (mDepth < MAX_DEPTH) {
+                add(mStackNames[mDepth], mStackStarts[mDepth], end);
+                mStackNames[mDepth] = null;
+            }
+        }
+
+        void add(String name, long start, long end) {
+            SpanBuffer records = mRecords;
+            synchronized (records) {
+                int index = records.mNext;
+                records.mNames[index] = name;
+                records.mTids[index] = mTid;
+                records.mStarts[index] = start;
+                records.mDurations[index] = end - start;
+                records.mNext = (index + 1) % CAPACITY;
+                records.mCount = Math.min(records.mCount + 1, CAPACITY);
+            }
+            getHistogram(name).add(end - start);
+        }
+    }
+
+    /**
+     * Lock-free histogram with log-linear buckets: each power of two is split in 4 buckets,
+     * which keeps the percentiles within 25% of the actual value.
+     */
+    private static class Histogram {
+
+        private static final int SUB_BUCKET_BITS = 2;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKET_COUNT = 64 * SUB_BUCKETS;
+
+        final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+        final AtomicLong mCount = new AtomicLong();
+        final AtomicLong mMax = new AtomicLong();
+
+        void add(long nanos) {
+            nanos = Math.max(nanos, 0);
+            mBuckets.incrementAndGet(getBucket(nanos));
+            mCount.incrementAndGet();
+            long max;
+            while (nanos > (max = mMax.get()) && !mMax.compareAndSet(max, nanos));
+        }
+
+        /**
+         * Returns the upper bound of the bucket containing the given percentile, in nanos.
+         */
+        long getPercentile(int percentile) {
+            long count = mCount.get();
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (count * percentile + 99) / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mBuckets.get(i);
+                if (seen >= target) {
+                    return Math.min(getUpperBound(i), mMax.get());
                 }
-                Log.d(sectionName, msg + " : " + (SystemClock.uptimeMillis() - time.value));
             }
+            return mMax.get();
+        }
+
+        private static int getBucket(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int log = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (log - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return log * SUB_BUCKETS + sub;
+        }
+
+        private static long getUpperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int log = bucket / SUB_BUCKETS;
+            int sub = bucket % SUB_BUCKETS;
+            return ((SUB_BUCKETS + sub + 1L) << (log - SUB_BUCKET_BITS)) - 1;
         }
     }
 }
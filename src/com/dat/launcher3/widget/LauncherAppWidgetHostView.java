@@ -20,9 +20,13 @@ import android.appwidget.AppWidgetHostView;
 import android.appwidget.AppWidgetProviderInfo;
 import android.content.Context;
 import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Picture;
 import android.graphics.PointF;
 import android.graphics.Rect;
 import android.os.Handler;
+import android.os.Process;
 import android.os.SystemClock;
 import android.util.SparseBooleanArray;
 import android.view.KeyEvent;
@@ -32,6 +36,7 @@ import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewDebug;
 import android.view.ViewGroup;
+import android.view.ViewParent;
 import android.view.accessibility.AccessibilityNodeInfo;
 import android.widget.AdapterView;
 import android.widget.Advanceable;
@@ -40,16 +45,20 @@ import android.widget.RemoteViews;
 import com.dat.launcher3.CheckLongPressHelper;
 import com.dat.launcher3.ItemInfo;
 import com.dat.launcher3.Launcher;
+import com.dat.launcher3.LauncherAppState;
 import com.dat.launcher3.LauncherAppWidgetInfo;
 import com.dat.launcher3.LauncherAppWidgetProviderInfo;
 import com.dat.launcher3.R;
 import com.dat.launcher3.SimpleOnStylusPressListener;
 import com.dat.launcher3.StylusEventHelper;
 import com.dat.launcher3.Utilities;
+import com.dat.launcher3.Workspace;
 import com.dat.launcher3.dragndrop.DragLayer;
 import com.dat.launcher3.views.BaseDragLayer.TouchCompleteListener;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * {@inheritDoc}
@@ -79,6 +88,7 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView
     private boolean mChildrenFocused;
 
     private boolean mIsScrollable;
+    private boolean mCheckScrollable = true;
     private boolean mIsAttachedToWindow;
     private boolean mIsAutoAdvanceRegistered;
     private Runnable mAutoAdvanceRunnable;
@@ -93,6 +103,32 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView
      */
     private final PointF mTranslationForCentering = new PointF(0, 0);
 
+    /**
+     * Updates received while the widget is not visible, or sooner than mMinUpdateIntervalMs after
+     * the previous one, are deferred. Only the latest deferred update is kept. This includes the
+     * first update, so that the widgets of the other pages are inflated when they are shown.
+     */
+    private final long mMinUpdateIntervalMs;
+    private final Runnable mApplyDeferredUpdateRunnable = this::applyDeferredUpdate;
+    private boolean mHasAppliedUpdate;
+    private boolean mHasDeferredUpdate;
+    private RemoteViews mDeferredRemoteViews;
+    private long mLastUpdateTime;
+
+    // Whether the content was inflated from the provider's RemoteViews
+    private boolean mHasRemoteContent;
+    // Set while the first RemoteViews are inflated in the background, during which the last
+    // snapshot of the widget is drawn instead.
+    private boolean mIsWaitingForContent;
+    private boolean mIsSnapshotDirty;
+    private long mInflateStartTime;
+    private long mInflateDuration = -1;
+
+    private int mUpdatesReceived;
+    private int mUpdatesApplied;
+    private long mTotalApplyNanos;
+    private long mMaxApplyNanos;
+
     public LauncherAppWidgetHostView(Context context) {
         super(context);
         mLauncher = Launcher.getLauncher(context);
@@ -102,6 +138,9 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView
         setAccessibilityDelegate(mLauncher.getAccessibilityDelegate());
         setBackgroundResource(R.drawable.widget_internal_focus_bg);
 
+        int maxUpdateRate = getResources().getInteger(R.integer.config_widgetMaxUpdateRate);
+        mMinUpdateIntervalMs = maxUpdateRate > 0 ? TimeUnit.SECONDS.toMillis(1) / maxUpdateRate : 0;
+
         if (Utilities.ATLEAST_OREO) {
             setExecutor(Utilities.THREAD_POOL_EXECUTOR);
         }
@@ -124,6 +163,75 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView
 
     @Override
     public void updateAppWidget(RemoteViews remoteViews) {
+        mUpdatesReceived++;
+        long delay = getUpdateDelay();
+        if (delay == 0) {
+            applyUpdate(remoteViews);
+            return;
+        }
+        mDeferredRemoteViews = remoteViews;
+        mHasDeferredUpdate = true;
+        if (delay > 0) {
+            removeCallbacks(mApplyDeferredUpdateRunnable);
+            postDelayed(mApplyDeferredUpdateRunnable, delay);
+        }
+    }
+
+    /**
+     * Applies the last deferred update, if the widget can be updated now.
+     */
+    public void applyDeferredUpdate() {
+        removeCallbacks(mApplyDeferredUpdateRunnable);
+        if (!mHasDeferredUpdate) {
+            return;
+        }
+        long delay = getUpdateDelay();
+        if (delay > 0) {
+            postDelayed(mApplyDeferredUpdateRunnable, delay);
+        } else if (delay == 0) {
+            RemoteViews remoteViews = mDeferredRemoteViews;
+            mDeferredRemoteViews = null;
+            mHasDeferredUpdate = false;
+            applyUpdate(remoteViews);
+        }
+    }
+
+    /**
+     * Returns the time to wait before applying an update, or -1 if the widget is not visible.
+     */
+    private long getUpdateDelay() {
+        if (!mLauncher.hasBeenResumed() || !isOnVisiblePage()) {
+            return -1;
+        }
+        return Math.max(0, mLastUpdateTime + mMinUpdateIntervalMs - SystemClock.uptimeMillis());
+    }
+
+    private boolean isOnVisiblePage() {
+        // The widget is added to a ShortcutAndWidgetContainer, inside a CellLayout.
+        ViewParent container = getParent();
+        ViewParent page = container == null ? null : container.getParent();
+        if (page == null) {
+            return false;
+        }
+        ViewParent pagedView = page.getParent();
+        return !(pagedView instanceof Workspace)
+                || ((Workspace) pagedView).isPageInVisibleRange((View) page);
+    }
+
+    private void applyUpdate(RemoteViews remoteViews) {
+        long start = System.nanoTime();
+        if (!mHasAppliedUpdate && remoteViews != null && Utilities.ATLEAST_OREO) {
+            // The views are applied on the executor, and only added once fully inflated.
+            mIsWaitingForContent = true;
+            mInflateStartTime = SystemClock.uptimeMillis();
+            // Draw the persisted snapshot once it is decoded.
+            getSnapshotCache().load(getAppWidgetId(), this::invalidate);
+        }
+        mHasAppliedUpdate = true;
+        mHasRemoteContent = remoteViews != null;
+        mLastUpdateTime = SystemClock.uptimeMillis();
+        mCheckScrollable = true;
+        mIsSnapshotDirty = true;
         super.updateAppWidget(remoteViews);
 
         // The provider info or the views might have changed.
@@ -134,6 +242,62 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView
         // (framework issue). On resuming, we ensure that any widgets are inflated for the current
         // orientation.
         mReinflateOnConfigChange = !isSameOrientation();
+
+        long cost = System.nanoTime() - start;
+        mUpdatesApplied++;
+        mTotalApplyNanos += cost;
+        mMaxApplyNanos = Math.max(mMaxApplyNanos, cost);
+    }
+
+    public void dumpUpdateStats(String prefix, PrintWriter writer) {
+        AppWidgetProviderInfo info = getAppWidgetInfo();
+        writer.println(prefix + "widget id=" + getAppWidgetId()
+                + " provider=" + (info == null ? null : info.provider.flattenToShortString())
+                + " received=" + mUpdatesReceived
+                + " applied=" + mUpdatesApplied
+                + " deferred=" + mHasDeferredUpdate
+                + " meanApplyUs=" + (mUpdatesApplied == 0 ? 0
+                        : TimeUnit.NANOSECONDS.toMicros(mTotalApplyNanos / mUpdatesApplied))
+                + " maxApplyUs=" + TimeUnit.NANOSECONDS.toMicros(mMaxApplyNanos)
+                + " firstInflateMs=" + mInflateDuration);
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        if (mIsWaitingForContent) {
+            Bitmap snapshot = getSnapshotCache().get(getAppWidgetId(), getWidth(), getHeight());
+            if (snapshot != null) {
+                canvas.drawBitmap(snapshot, 0, 0, null);
+            }
+        }
+        super.dispatchDraw(canvas);
+    }
+
+    /**
+     * Saves the current rendering of the widget if it changed since the last snapshot, to be
+     * drawn the next time it is bound until its views are inflated. Only the drawing commands are
+     * recorded on the UI thread.
+     *
+     * @return true if a snapshot was recorded.
+     */
+    public boolean saveSnapshot() {
+        if (!mIsSnapshotDirty || !mHasRemoteContent || mIsWaitingForContent
+                || getWidth() <= 0 || getHeight() <= 0
+                || !(getTag() instanceof LauncherAppWidgetInfo)
+                || !Process.myUserHandle().equals(((LauncherAppWidgetInfo) getTag()).user)) {
+            // The content of work profile widgets is not saved in the personal profile.
+            return false;
+        }
+        mIsSnapshotDirty = false;
+        Picture picture = new Picture();
+        super.dispatchDraw(picture.beginRecording(getWidth(), getHeight()));
+        picture.endRecording();
+        getSnapshotCache().put(getAppWidgetId(), picture);
+        return true;
+    }
+
+    private WidgetSnapshotCache getSnapshotCache() {
+        return LauncherAppState.getInstance(getContext()).getWidgetSnapshotCache();
     }
 
     private boolean isSameOrientation() {
@@ -230,16 +394,19 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView
 
         mIsAttachedToWindow = true;
         checkIfAutoAdvance();
+        applyDeferredUpdate();
     }
 
     @Override
     protected void onDetachedFromWindow() {
+        saveSnapshot();
         super.onDetachedFromWindow();
 
         // We can't directly use isAttachedToWindow() here, as this is called before the internal
         // state is updated. So isAttachedToWindow() will return true until next frame.
         mIsAttachedToWindow = false;
         checkIfAutoAdvance();
+        removeCallbacks(mApplyDeferredUpdateRunnable);
     }
 
     @Override
@@ -361,7 +528,22 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView
 
     public void switchToErrorView() {
         // Update the widget with 0 Layout id, to reset the view to error view.
-        updateAppWidget(new RemoteViews(getAppWidgetInfo().provider.getPackageName(), 0));
+        mDeferredRemoteViews = null;
+        mHasDeferredUpdate = false;
+        applyUpdate(new RemoteViews(getAppWidgetInfo().provider.getPackageName(), 0));
+        mHasRemoteContent = false;
+    }
+
+    @Override
+    public void onViewAdded(View child) {
+        super.onViewAdded(child);
+        // The content view is replaced when the widget is inflated asynchronously.
+        mCheckScrollable = true;
+        mIsSnapshotDirty = true;
+        if (mIsWaitingForContent) {
+            mIsWaitingForContent = false;
+            mInflateDuration = SystemClock.uptimeMillis() - mInflateStartTime;
+        }
     }
 
     @Override
@@ -377,7 +559,11 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView
             });
         }
 
-        mIsScrollable = checkScrollableRecursively(this);
+        // Walking the hierarchy is only required when the content was changed.
+        if (mCheckScrollable) {
+            mCheckScrollable = false;
+            mIsScrollable = checkScrollableRecursively(this);
+        }
     }
 
     @Override
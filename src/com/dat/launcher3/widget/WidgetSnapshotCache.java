@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.launcher3.widget;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Picture;
+import android.os.Handler;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.dat.launcher3.LauncherFiles;
+import com.dat.launcher3.MainThreadExecutor;
+import com.dat.launcher3.Utilities;
+import com.dat.launcher3.util.SQLiteCacheHelper;
+import com.dat.launcher3.util.UiThreadHelper;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the last rendered bitmap of the workspace widgets, so that it can be drawn in place of the
+ * widget while its views are inflated, including after the launcher process is restarted.
+ *
+ * Snapshots are keyed by appWidgetId and size. They are kept in memory and persisted in a
+ * {@link SQLiteCacheHelper} on a background thread. Persisted snapshots are only decoded when
+ * their widget is bound, see {@link #load}. Those which are too old, or beyond the maximum total
+ * size, are evicted when the cache is created. Only the widgets of the primary user are saved, so
+ * that the content of work profile widgets is not persisted outside of the profile.
+ */
+public class WidgetSnapshotCache {
+
+    private static final String TAG = "WidgetSnapshotCache";
+
+    private static final int MAX_MEMORY_SIZE_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_DISK_SIZE_BYTES = 4 * 1024 * 1024;
+    private static final long MAX_AGE_MS = TimeUnit.DAYS.toMillis(7);
+    private static final int COMPRESS_QUALITY = 80;
+
+    private final LruCache<Long, Bitmap> mSnapshots = new LruCache<Long, Bitmap>(
+            MAX_MEMORY_SIZE_BYTES) {
+        @Override
+        protected int sizeOf(Long key, Bitmap snapshot) {
+            return snapshot.getByteCount();
+        }
+    };
+
+    private final CacheDb mDb;
+    private final Handler mWorkerHandler;
+    private final MainThreadExecutor mMainThreadExecutor = new MainThreadExecutor();
+
+    public WidgetSnapshotCache(Context context) {
+        mDb = new CacheDb(context);
+        mWorkerHandler = new Handler(UiThreadHelper.getBackgroundLooper());
+        mWorkerHandler.post(this::evictFromDb);
+    }
+
+    private static long getKey(int appWidgetId, int width, int height) {
+        return ((long) appWidgetId << 32) | ((width & 0xFFFF) << 16) | (height & 0xFFFF);
+    }
+
+    private static int getAppWidgetId(long key) {
+        return (int) (key >> 32);
+    }
+
+    /**
+     * Saves the drawing commands recorded in {@param picture} as the snapshot of the widget.
+     * The picture is rendered and persisted on a background thread.
+     */
+    public void put(int appWidgetId, Picture picture) {
+        mWorkerHandler.post(() -> {
+            Bitmap snapshot = Bitmap.createBitmap(
+                    picture.getWidth(), picture.getHeight(), Bitmap.Config.ARGB_8888);
+            try {
+                new Canvas(snapshot).drawPicture(picture);
+            } catch (RuntimeException e) {
+                // Hardware bitmaps can not be drawn on a software canvas.
+                Log.w(TAG, "Unable to render snapshot for widget " + appWidgetId, e);
+                return;
+            }
+            mSnapshots.put(getKey(appWidgetId, snapshot.getWidth(), snapshot.getHeight()),
+                    snapshot);
+            writeToDb(appWidgetId, snapshot);
+        });
+    }
+
+    /**
+     * Returns the snapshot of the widget if it was rendered with the given size, or null.
+     */
+    public Bitmap get(int appWidgetId, int width, int height) {
+        return mSnapshots.get(getKey(appWidgetId, width, height));
+    }
+
+    public void remove(int appWidgetId) {
+        for (Long key : mSnapshots.snapshot().keySet()) {
+            if (getAppWidgetId(key) == appWidgetId) {
+                mSnapshots.remove(key);
+            }
+        }
+        mWorkerHandler.post(() -> mDb.delete(CacheDb.COLUMN_WIDGET_ID + " = ?",
+                new String[] {Integer.toString(appWidgetId)}));
+    }
+
+    /**
+     * Decodes the persisted snapshots of the widget on a background thread, if they are not in
+     * memory yet, then runs {@param callback} on the UI thread.
+     */
+    public void load(int appWidgetId, Runnable callback) {
+        mWorkerHandler.post(() -> {
+            loadFromDb(appWidgetId);
+            mMainThreadExecutor.execute(callback);
+        });
+    }
+
+    private void writeToDb(int appWidgetId, Bitmap snapshot) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.compress(Utilities.ATLEAST_R ? Bitmap.CompressFormat.WEBP_LOSSY
+                : Bitmap.CompressFormat.WEBP, COMPRESS_QUALITY, out);
+        byte[] data = out.toByteArray();
+
+        ContentValues values = new ContentValues();
+        values.put(CacheDb.COLUMN_WIDGET_ID, appWidgetId);
+        values.put(CacheDb.COLUMN_WIDTH, snapshot.getWidth());
+        values.put(CacheDb.COLUMN_HEIGHT, snapshot.getHeight());
+        values.put(CacheDb.COLUMN_LAST_UPDATED, System.currentTimeMillis());
+        values.put(CacheDb.COLUMN_SIZE, data.length);
+        values.put(CacheDb.COLUMN_SNAPSHOT, data);
+        mDb.insertOrReplace(values);
+    }
+
+    private void evictFromDb() {
+        long minLastUpdated = System.currentTimeMillis() - MAX_AGE_MS;
+        mDb.delete(CacheDb.COLUMN_LAST_UPDATED + " < ?",
+                new String[] {Long.toString(minLastUpdated)});
+
+        long totalSize = 0;
+        long evictBefore = -1;
+        try (Cursor c = mDb.query(new String[] {CacheDb.COLUMN_LAST_UPDATED, CacheDb.COLUMN_SIZE},
+                null, null, CacheDb.COLUMN_LAST_UPDATED + " DESC")) {
+            while (c.moveToNext()) {
+                totalSize += c.getInt(1);
+                if (totalSize > MAX_DISK_SIZE_BYTES) {
+                    // Evict this snapshot and all the older ones.
+                    evictBefore = c.getLong(0) + 1;
+                    break;
+                }
+            }
+        } catch (SQLException e) {
+            Log.d(TAG, "Error loading widget snapshots", e);
+        }
+        if (evictBefore >= 0) {
+            mDb.delete(CacheDb.COLUMN_LAST_UPDATED + " < ?",
+                    new String[] {Long.toString(evictBefore)});
+        }
+    }
+
+    private void loadFromDb(int appWidgetId) {
+        try (Cursor c = mDb.query(new String[] {CacheDb.COLUMN_WIDTH, CacheDb.COLUMN_HEIGHT,
+                CacheDb.COLUMN_SNAPSHOT}, CacheDb.COLUMN_WIDGET_ID + " = ?",
+                new String[] {Integer.toString(appWidgetId)})) {
+            while (c.moveToNext()) {
+                long key = getKey(appWidgetId, c.getInt(0), c.getInt(1));
+                if (mSnapshots.get(key) != null) {
+                    continue;
+                }
+                byte[] data = c.getBlob(2);
+                Bitmap snapshot = BitmapFactory.decodeByteArray(data, 0, data.length);
+                if (snapshot != null) {
+                    mSnapshots.put(key, snapshot);
+                }
+            }
+        } catch (SQLException e) {
+            Log.d(TAG, "Error loading widget snapshots", e);
+        }
+    }
+
+    private static class CacheDb extends SQLiteCacheHelper {
+        private static final int DB_VERSION = 1;
+
+        private static final String TABLE_NAME = "snapshots";
+        private static final String COLUMN_WIDGET_ID = "appWidgetId";
+        private static final String COLUMN_WIDTH = "width";
+        private static final String COLUMN_HEIGHT = "height";
+        private static final String COLUMN_LAST_UPDATED = "lastUpdated";
+        private static final String COLUMN_SIZE = "size";
+        private static final String COLUMN_SNAPSHOT = "snapshot";
+
+        public CacheDb(Context context) {
+            super(context, LauncherFiles.WIDGET_SNAPSHOTS_DB, DB_VERSION, TABLE_NAME);
+        }
+
+        @Override
+        public void onCreateTable(SQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+                    COLUMN_WIDGET_ID + " INTEGER NOT NULL, " +
+                    COLUMN_WIDTH + " INTEGER NOT NULL, " +
+                    COLUMN_HEIGHT + " INTEGER NOT NULL, " +
+                    COLUMN_LAST_UPDATED + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_SIZE + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_SNAPSHOT + " BLOB, " +
+                    "PRIMARY KEY (" + COLUMN_WIDGET_ID + ", " + COLUMN_WIDTH + ", "
+                    + COLUMN_HEIGHT + ") " +
+                    ");");
+        }
+    }
+}
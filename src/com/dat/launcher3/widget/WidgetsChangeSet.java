@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.dat.launcher3.widget;
+
+import android.support.v7.widget.RecyclerView;
+
+import com.dat.launcher3.model.WidgetsModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The structural changes between two versions of the sorted widget rows of {@link WidgetsModel},
+ * computed on the worker thread. The operations are in the order they must be applied, each
+ * index being relative to the list with all the previous operations applied.
+ */
+public class WidgetsChangeSet {
+
+    public static final int OP_REMOVE = 0;
+    public static final int OP_INSERT = 1;
+    public static final int OP_CHANGE = 2;
+
+    public static final WidgetsChangeSet EMPTY =
+            new WidgetsChangeSet(0, 0, new ArrayList<>(), new int[0], 0);
+
+    public final int fromVersion;
+    public final int toVersion;
+
+    /**
+     * All the rows at {@link #toVersion}, sorted.
+     */
+    public final ArrayList<WidgetListRowEntry> rows;
+
+    // Pairs of operation and index
+    private final int[] mOps;
+
+    public WidgetsChangeSet(int fromVersion, int toVersion, ArrayList<WidgetListRowEntry> rows,
+            int[] ops, int opCount) {
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.rows = rows;
+        mOps = Arrays.copyOf(ops, opCount * 2);
+    }
+
+    public int getOpCount() {
+        return mOps.length / 2;
+    }
+
+    /**
+     * Notifies {@param adapter} of all the operations, in order.
+     */
+    public void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int i = 0; i < mOps.length; i += 2) {
+            int index = mOps[i + 1];
+            switch (mOps[i]) {
+                case OP_REMOVE:
+                    adapter.notifyItemRemoved(index);
+                    break;
+                case OP_INSERT:
+                    adapter.notifyItemInserted(index);
+                    break;
+                case OP_CHANGE:
+                    adapter.notifyItemChanged(index);
+                    break;
+            }
+        }
+    }
+}
@@ -55,8 +55,7 @@ public class WidgetsFullSheet extends BaseWidgetSheet
         super(context, attrs, defStyleAttr);
         LauncherAppState apps = LauncherAppState.getInstance(context);
         mAdapter = new WidgetsListAdapter(context,
-                LayoutInflater.from(context), apps.getWidgetCache(), apps.getIconCache(),
-                this, this);
+                LayoutInflater.from(context), apps.getWidgetCache(), this, this);
 
     }
 
@@ -154,7 +153,7 @@ public class WidgetsFullSheet extends BaseWidgetSheet
 
     @Override
     protected void onWidgetsBound() {
-        mAdapter.setWidgets(mLauncher.getPopupDataProvider().getAllWidgets());
+        mAdapter.applyChangeSet(mLauncher.getPopupDataProvider().getWidgetsChangeSet());
     }
 
     private void open(boolean animate) {
@@ -25,14 +25,12 @@ import android.view.View.OnClickListener;
 import android.view.View.OnLongClickListener;
 import android.view.ViewGroup;
 
-import com.dat.launcher3.IconCache;
 import com.dat.launcher3.R;
 import com.dat.launcher3.WidgetPreviewLoader;
 import com.dat.launcher3.model.WidgetItem;
 import com.dat.launcher3.util.LabelComparator;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
@@ -56,19 +54,18 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
     private final OnLongClickListener mIconLongClickListener;
     private final int mIndent;
     private ArrayList<WidgetListRowEntry> mEntries = new ArrayList<>();
-    private final WidgetsDiffReporter mDiffReporter;
+    private int mVersion = -1;
 
     private boolean mApplyBitmapDeferred;
 
     public WidgetsListAdapter(Context context, LayoutInflater layoutInflater,
-            WidgetPreviewLoader widgetPreviewLoader, IconCache iconCache,
-            OnClickListener iconClickListener, OnLongClickListener iconLongClickListener) {
+            WidgetPreviewLoader widgetPreviewLoader, OnClickListener iconClickListener,
+            OnLongClickListener iconLongClickListener) {
         mLayoutInflater = layoutInflater;
         mWidgetPreviewLoader = widgetPreviewLoader;
         mIconClickListener = iconClickListener;
         mIconLongClickListener = iconLongClickListener;
         mIndent = context.getResources().getDimensionPixelSize(R.dimen.widget_section_indent);
-        mDiffReporter = new WidgetsDiffReporter(iconCache, this);
     }
 
     /**
@@ -92,12 +89,20 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
     }
 
     /**
-     * Update the widget list.
+     * Update the widget list with the changes computed by the model. Falls back to a full
+     * refresh if the changes do not start from the version currently shown.
      */
-    public void setWidgets(ArrayList<WidgetListRowEntry> tempEntries) {
-        WidgetListRowEntryComparator rowComparator = new WidgetListRowEntryComparator();
-        Collections.sort(tempEntries, rowComparator);
-        mDiffReporter.process(mEntries, tempEntries, rowComparator);
+    public void applyChangeSet(WidgetsChangeSet changeSet) {
+        if (changeSet.toVersion == mVersion) {
+            return;
+        }
+        mEntries = new ArrayList<>(changeSet.rows);
+        if (changeSet.fromVersion == mVersion) {
+            changeSet.dispatchTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
+        mVersion = changeSet.toVersion;
     }
 
     @Override
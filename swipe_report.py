@@ -0,0 +1,109 @@
+#!/usr/bin/env python3
+#
+# Copyright (C) 2018 The Android Open Source Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+"""Generates a report of swipe-up gesture frame timings.
+
+Reads the output of
+  adb shell dumpsys activity service com.dat.quickstep.TouchInteractionService
+from the given files (or from a connected device when no file is given) and prints
+percentiles for each metric recorded by SwipeFrameTracker. Multiple recordings can be
+passed at once; gestures present in more than one file are only counted once.
+"""
+
+import re
+import subprocess
+import sys
+from collections import Counter
+
+SERVICE = "com.dat.quickstep.TouchInteractionService"
+LINE_PATTERN = re.compile(r"^\s*swipe\s+(.*)$")
+
+METRICS = [
+    ("firstFrame", "Touch to first frame (ms)"),
+    ("settle", "Touch to settle (ms)"),
+    ("frames", "Frames per gesture"),
+    ("meanTransformUs", "Mean applyTransform (us)"),
+    ("maxTransformUs", "Max applyTransform (us)"),
+    ("janky", "Janky frames"),
+    ("dropped", "Dropped frames"),
+]
+
+
+def parse(lines):
+    gestures = []
+    for line in lines:
+        match = LINE_PATTERN.match(line)
+        if not match:
+            continue
+        gesture = {}
+        for field in match.group(1).split():
+            key, _, value = field.partition("=")
+            gesture[key] = value if key == "end" else int(value)
+        gestures.append(gesture)
+    return gestures
+
+
+def percentile(values, p):
+    values = sorted(values)
+    if not values:
+        return 0
+    index = min(len(values) - 1, int(round(p / 100.0 * (len(values) - 1))))
+    return values[index]
+
+
+def read_inputs(paths):
+    if not paths:
+        return [subprocess.check_output(
+            ["adb", "shell", "dumpsys", "activity", "service", SERVICE]).decode().splitlines()]
+    recordings = []
+    for path in paths:
+        with open(path) as f:
+            recordings.append(f.read().splitlines())
+    return recordings
+
+
+def main(argv):
+    seen = set()
+    gestures = []
+    for recording in read_inputs(argv[1:]):
+        for gesture in parse(recording):
+            if gesture["touch"] not in seen:
+                seen.add(gesture["touch"])
+                gestures.append(gesture)
+
+    if not gestures:
+        print("No swipe gestures recorded")
+        return 1
+
+    print("Gestures: %d" % len(gestures))
+    for end, count in sorted(Counter(g["end"] for g in gestures).items()):
+        print("  %-10s %d" % (end, count))
+    print()
+    print("%-28s %8s %8s %8s %8s" % ("", "p50", "p90", "p99", "max"))
+    for key, title in METRICS:
+        values = [g[key] for g in gestures if g[key] >= 0]
+        print("%-28s %8d %8d %8d %8d" % (title, percentile(values, 50),
+                percentile(values, 90), percentile(values, 99), max(values or [0])))
+
+    total_frames = sum(g["frames"] for g in gestures)
+    total_janky = sum(g["janky"] for g in gestures)
+    print()
+    print("Janky frame rate: %.2f%%" % (100.0 * total_janky / max(total_frames, 1)))
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main(sys.argv))
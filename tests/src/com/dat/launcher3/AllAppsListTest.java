@@ -0,0 +1,126 @@
+package com.dat.launcher3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import android.content.ComponentName;
+import android.os.Process;
+import android.os.UserHandle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Tests for {@link AllAppsList}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class AllAppsListTest {
+
+    private static final String TAG = "AllAppsListTest";
+
+    private static final int APP_COUNT = 1000;
+    private static final int APPS_PER_PACKAGE = 2;
+
+    private AllAppsList mAllAppsList;
+    private UserHandle mUser;
+
+    @Before
+    public void setUp() {
+        mUser = Process.myUserHandle();
+        mAllAppsList = new AllAppsList(InstrumentationRegistry.getTargetContext(),
+                mock(IconCache.class), new AppFilter());
+        for (int i = 0; i < APP_COUNT; i++) {
+            mAllAppsList.add(createApp(i / APPS_PER_PACKAGE, i), null);
+        }
+        mAllAppsList.added.clear();
+    }
+
+    private AppInfo createApp(int packageIndex, int activityIndex) {
+        AppInfo info = new AppInfo();
+        info.componentName = new ComponentName(
+                "com.example.package" + packageIndex, "Activity" + activityIndex);
+        info.user = mUser;
+        info.title = "App " + activityIndex;
+        return info;
+    }
+
+    @Test
+    public void testAdd_ignoresDuplicateComponents() {
+        mAllAppsList.add(createApp(0, 0), null);
+        assertEquals(APP_COUNT, mAllAppsList.size());
+        assertTrue(mAllAppsList.added.isEmpty());
+    }
+
+    @Test
+    public void testRemovePackage_keepsOrderAndIndex() {
+        AppInfo first = mAllAppsList.get(0);
+        mAllAppsList.removePackage("com.example.package1", mUser);
+
+        assertEquals(APP_COUNT - APPS_PER_PACKAGE, mAllAppsList.size());
+        assertEquals(APPS_PER_PACKAGE, mAllAppsList.removed.size());
+        assertEquals(first, mAllAppsList.get(0));
+        assertEquals("com.example.package2",
+                mAllAppsList.get(APPS_PER_PACKAGE).componentName.getPackageName());
+
+        // The removed component can be added again.
+        mAllAppsList.add(createApp(1, 2), null);
+        assertEquals(1, mAllAppsList.added.size());
+    }
+
+    @Test
+    public void testUpdateIconsAndLabels_onlyMatchingPackages() {
+        HashSet<String> packages = new HashSet<>();
+        packages.add("com.example.package3");
+        packages.add("com.example.missing");
+        ArrayList<AppInfo> updates = new ArrayList<>();
+        mAllAppsList.updateIconsAndLabels(packages, mUser, updates);
+
+        assertEquals(APPS_PER_PACKAGE, updates.size());
+        for (AppInfo info : updates) {
+            assertEquals("com.example.package3", info.componentName.getPackageName());
+        }
+    }
+
+    @Test
+    public void testBulkPackageUpdates() {
+        int packageCount = APP_COUNT / APPS_PER_PACKAGE;
+        HashSet<String> packages = new HashSet<>();
+        for (int i = 0; i < packageCount; i++) {
+            packages.add("com.example.package" + i);
+        }
+
+        long start = System.nanoTime();
+        ArrayList<AppInfo> updates = new ArrayList<>();
+        mAllAppsList.updateIconsAndLabels(packages, mUser, updates);
+        long updateNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < packageCount; i += 2) {
+            mAllAppsList.removePackage("com.example.package" + i, mUser);
+        }
+        long removeNanos = System.nanoTime() - start;
+
+        Log.d(TAG, "Bulk update of " + packageCount + " packages in " + APP_COUNT + " apps: "
+                + "icons and labels " + updateNanos / 1000 + "us, "
+                + "remove half " + removeNanos / 1000 + "us");
+
+        assertEquals(APP_COUNT, updates.size());
+        assertEquals(APP_COUNT / 2, mAllAppsList.size());
+        for (AppInfo info : mAllAppsList.data) {
+            String packageName = info.componentName.getPackageName();
+            int packageIndex = Integer.parseInt(
+                    packageName.substring("com.example.package".length()));
+            assertEquals(1, packageIndex % 2);
+        }
+    }
+}
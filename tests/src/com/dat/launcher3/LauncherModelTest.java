@@ -0,0 +1,194 @@
+package com.dat.launcher3;
+
+import static com.dat.launcher3.model.PackageUpdatedTask.OP_ADD;
+import static com.dat.launcher3.model.PackageUpdatedTask.OP_REMOVE;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.os.Process;
+import android.os.UserHandle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.dat.launcher3.model.BgDataModel;
+import com.dat.launcher3.model.ModelTaskScheduler;
+import com.dat.launcher3.model.PackageUpdatedTask;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the coalescing of package tasks in {@link LauncherModel#enqueueModelUpdateTask}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class LauncherModelTest {
+
+    private final UserHandle mUser = Process.myUserHandle();
+
+    private LauncherModel mModel;
+    private List<String> mExecuted;
+    private CountDownLatch mWorkerBlocker;
+
+    @Before
+    public void setUp() throws Exception {
+        LauncherAppState app = mock(LauncherAppState.class);
+        when(app.getContext()).thenReturn(InstrumentationRegistry.getTargetContext());
+        mModel = new LauncherModel(app, mock(IconCache.class), new AppFilter()) {
+            @Override
+            public boolean isModelLoaded() {
+                return true;
+            }
+        };
+        mExecuted = Collections.synchronizedList(new ArrayList<>());
+
+        // Keep the worker busy, so that the coalescing window can not expire during the test.
+        mWorkerBlocker = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        LauncherModel.getScheduler().post(ModelTaskScheduler.PRIORITY_INTERACTIVE, () -> {
+            blocked.countDown();
+            await(mWorkerBlocker);
+        }, null);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() {
+        mWorkerBlocker.countDown();
+    }
+
+    @Test
+    public void testSameOpAndUser_areMerged() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        mModel.enqueueModelUpdateTask(new RecordingTask(OP_ADD, mUser, done, "p1"));
+        mModel.enqueueModelUpdateTask(new RecordingTask(OP_ADD, mUser, done, "p2"));
+        mModel.enqueueModelUpdateTask(new RecordingTask(OP_ADD, mUser, done, "p3", "p1"));
+        mWorkerBlocker.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("p1,p2,p3"), mExecuted);
+    }
+
+    @Test
+    public void testDifferentOp_areNotMerged() throws Exception {
+        CountDownLatch done = new CountDownLatch(3);
+        mModel.enqueueModelUpdateTask(new RecordingTask(OP_ADD, mUser, done, "p1"));
+        mModel.enqueueModelUpdateTask(new RecordingTask(OP_REMOVE, mUser, done, "p2"));
+        mModel.enqueueModelUpdateTask(new RecordingTask(OP_ADD, mUser, done, "p3"));
+        mWorkerBlocker.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("p1", "p2", "p3"), mExecuted);
+    }
+
+    @Test
+    public void testDifferentUser_areNotMerged() throws Exception {
+        UserHandle otherUser = UserHandle.of(mUser.hashCode() + 1);
+        CountDownLatch done = new CountDownLatch(2);
+        mModel.enqueueModelUpdateTask(new RecordingTask(OP_ADD, mUser, done, "p1"));
+        mModel.enqueueModelUpdateTask(new RecordingTask(OP_ADD, otherUser, done, "p1"));
+        mWorkerBlocker.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("p1", "p1"), mExecuted);
+    }
+
+    @Test
+    public void testOtherTask_runsAfterThePendingTask() throws Exception {
+        CountDownLatch done = new CountDownLatch(2);
+        mModel.enqueueModelUpdateTask(new RecordingTask(OP_ADD, mUser, done, "p1"));
+        mModel.enqueueModelUpdateTask(new LauncherModel.ModelUpdateTask() {
+            @Override
+            public void init(LauncherAppState app, LauncherModel model, BgDataModel dataModel,
+                    AllAppsList allAppsList, Executor uiExecutor) { }
+
+            @Override
+            public void run() {
+                mExecuted.add("other");
+                done.countDown();
+            }
+        });
+        mWorkerBlocker.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("p1", "other"), mExecuted);
+    }
+
+    @Test
+    public void testStartedTask_isNotMergedInto() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        mModel.enqueueModelUpdateTask(new RecordingTask(OP_ADD, mUser, done, "p1") {
+            @Override
+            public void execute(LauncherAppState app, BgDataModel dataModel,
+                    AllAppsList apps) {
+                started.countDown();
+                await(release);
+                super.execute(app, dataModel, apps);
+            }
+        });
+        mWorkerBlocker.countDown();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        mModel.enqueueModelUpdateTask(new RecordingTask(OP_ADD, mUser, done, "p2"));
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("p1", "p2"), mExecuted);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) { }
+    }
+
+    /**
+     * Records the packages of the task which is executed, after all the merges.
+     */
+    private class RecordingTask extends PackageUpdatedTask {
+
+        private final CountDownLatch mDone;
+        private final ArrayList<String> mPackages;
+
+        RecordingTask(int op, UserHandle user, CountDownLatch done, String... packages) {
+            super(op, user, packages);
+            mDone = done;
+            mPackages = new ArrayList<>(Arrays.asList(packages));
+        }
+
+        @Override
+        public boolean merge(PackageUpdatedTask other) {
+            if (!super.merge(other)) {
+                return false;
+            }
+            for (String p : ((RecordingTask) other).mPackages) {
+                if (!mPackages.contains(p)) {
+                    mPackages.add(p);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void execute(LauncherAppState app, BgDataModel dataModel, AllAppsList apps) {
+            mExecuted.add(String.join(",", mPackages));
+            mDone.countDown();
+        }
+    }
+}
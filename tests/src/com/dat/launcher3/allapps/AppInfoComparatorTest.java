@@ -0,0 +1,89 @@
+package com.dat.launcher3.allapps;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Process;
+import android.os.UserHandle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.dat.launcher3.AppInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for {@link AppInfoComparator}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class AppInfoComparatorTest {
+
+    private Context mContext;
+    private AppInfoComparator mComparator;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mComparator = new AppInfoComparator(mContext);
+    }
+
+    @Test
+    public void testSortsByTitleInTheLocale() {
+        List<AppInfo> apps = Arrays.asList(
+                newApp("banana", "b"), newApp("Apple", "a"), newApp("cherry", "c"));
+        assertEquals(Arrays.asList("Apple", "banana", "cherry"), sortedTitles(apps));
+    }
+
+    @Test
+    public void testTitlesNotStartingWithALetter_areLast() {
+        List<AppInfo> apps = Arrays.asList(
+                newApp("#hash", "a"), newApp("zebra", "b"), newApp("2048", "c"));
+        assertEquals(Arrays.asList("2048", "zebra", "#hash"), sortedTitles(apps));
+    }
+
+    @Test
+    public void testSameTitle_sortsByComponent() {
+        AppInfo b = newApp("Mail", "b");
+        AppInfo a = newApp("Mail", "a");
+        List<AppInfo> sorted = new ArrayList<>(Arrays.asList(b, a));
+        Collections.sort(sorted, mComparator);
+        assertEquals(Arrays.asList(a, b), sorted);
+    }
+
+    @Test
+    public void testSameComponent_myUserFirst() {
+        AppInfo mine = newApp("Mail", "a");
+        AppInfo other = newApp("Mail", "a");
+        other.user = UserHandle.of(Process.myUserHandle().hashCode() + 1);
+        assertEquals(-1, mComparator.compare(mine, other));
+    }
+
+    private AppInfo newApp(String title, String className) {
+        AppInfo info = new AppInfo();
+        info.title = title;
+        info.componentName = new ComponentName("com.example", "com.example." + className);
+        info.user = Process.myUserHandle();
+        AppSortKeys.getInstance(mContext).update(info);
+        return info;
+    }
+
+    private List<String> sortedTitles(List<AppInfo> apps) {
+        List<AppInfo> sorted = new ArrayList<>(apps);
+        Collections.sort(sorted, mComparator);
+        List<String> titles = new ArrayList<>();
+        for (AppInfo info : sorted) {
+            titles.add(info.title.toString());
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,90 @@
+package com.dat.launcher3.allapps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Intent;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.dat.launcher3.AppInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.CollationKey;
+
+/**
+ * Tests for {@link AppSortKeys}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class AppSortKeysTest {
+
+    private AppSortKeys mSortKeys;
+
+    @Before
+    public void setUp() {
+        mSortKeys = AppSortKeys.getInstance(InstrumentationRegistry.getTargetContext());
+    }
+
+    @Test
+    public void testUpdate_computesTheKeys() {
+        AppInfo info = new AppInfo();
+        info.title = "Calendar";
+
+        assertTrue(mSortKeys.update(info));
+        assertNotNull(info.titleSortKey);
+        assertEquals("Calendar", info.titleSortKey.getSourceString());
+        assertNotNull(info.sectionName);
+    }
+
+    @Test
+    public void testUpdate_sameTitle_keepsTheKeys() {
+        AppInfo info = new AppInfo();
+        info.title = "Calendar";
+        mSortKeys.update(info);
+        CollationKey key = info.titleSortKey;
+
+        assertFalse(mSortKeys.update(info));
+        assertEquals(key, info.titleSortKey);
+    }
+
+    @Test
+    public void testUpdate_newTitle_recomputesTheKeys() {
+        AppInfo info = new AppInfo();
+        info.title = "Calendar";
+        mSortKeys.update(info);
+        CollationKey key = info.titleSortKey;
+
+        info.title = "Agenda";
+        assertTrue(mSortKeys.update(info));
+        assertNotSame(key, info.titleSortKey);
+        assertEquals("Agenda", info.titleSortKey.getSourceString());
+    }
+
+    @Test
+    public void testUpdate_nullTitle() {
+        AppInfo info = new AppInfo();
+
+        assertTrue(mSortKeys.update(info));
+        assertEquals("", info.titleSortKey.getSourceString());
+    }
+
+    @Test
+    public void testCopy_keepsTheKeys() {
+        AppInfo info = new AppInfo();
+        info.title = "Calendar";
+        info.intent = new Intent();
+        mSortKeys.update(info);
+
+        AppInfo copy = new AppInfo(info);
+        assertEquals(info.titleSortKey, copy.titleSortKey);
+        assertEquals(info.sectionName, copy.sectionName);
+    }
+}
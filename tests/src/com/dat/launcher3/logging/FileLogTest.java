@@ -13,7 +13,10 @@ import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Calendar;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -91,4 +94,74 @@ public class FileLogTest {
         // Old logs have been truncated
         assertFalse(writer.toString().contains("hoolalala"));
     }
+
+    @Test
+    public void testMultipleThreads_writesOrCountsEveryLine() throws Exception {
+        if (!FileLog.ENABLED) {
+            return;
+        }
+        final int threadCount = 4;
+        final int linesPerThread = 2500;
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int threadId = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < linesPerThread; i++) {
+                    FileLog.print("Testing", "bulk-" + threadId + "-" + i);
+                }
+            });
+        }
+
+        long droppedBefore = FileLog.getDroppedCount();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        StringWriter writer = new StringWriter();
+        FileLog.flushAll(new PrintWriter(writer));
+        long dropped = FileLog.getDroppedCount() - droppedBefore;
+
+        // Lines are only dropped when the queue is full, never lost otherwise.
+        String out = writer.toString();
+        int lines = threadCount * linesPerThread;
+        assertEquals(lines, out.split("Testing bulk-", -1).length - 1 + dropped);
+        if (dropped > 0) {
+            assertTrue(out.contains(" records dropped"));
+        }
+    }
+
+    @Test
+    public void testPrint_doesNotBlockWhileTheWriterIsStalled() throws Exception {
+        if (!FileLog.ENABLED) {
+            return;
+        }
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FileLog.getHandler().post(() -> {
+            stalled.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) { }
+        });
+        assertTrue(stalled.await(5, TimeUnit.SECONDS));
+
+        long droppedBefore = FileLog.getDroppedCount();
+        try {
+            // More lines than the queue holds, so that some are logged while it is full.
+            Thread logger = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    FileLog.print("Testing", "stalled-" + i);
+                }
+            });
+            logger.start();
+            logger.join(TimeUnit.SECONDS.toMillis(5));
+            assertFalse(logger.isAlive());
+            assertTrue(FileLog.getDroppedCount() > droppedBefore);
+        } finally {
+            release.countDown();
+        }
+        FileLog.flushAll(null);
+    }
 }
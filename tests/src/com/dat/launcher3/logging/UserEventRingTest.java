@@ -0,0 +1,110 @@
+package com.dat.launcher3.logging;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link UserEventRing}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class UserEventRingTest {
+
+    private static final int CAPACITY = 100;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "user-event-ring-test");
+        mFile.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mFile.delete();
+    }
+
+    @Test
+    public void testRecordsSurviveReopen() throws Exception {
+        UserEventRing ring = new UserEventRing(mFile, CAPACITY);
+        ring.append(record(1, 10), 10);
+        ring.append(record(2, 20), 20);
+
+        ArrayList<byte[]> records = new UserEventRing(mFile, CAPACITY).readAll();
+        assertEquals(2, records.size());
+        assertArrayEquals(record(1, 10), records.get(0));
+        assertArrayEquals(record(2, 20), records.get(1));
+    }
+
+    @Test
+    public void testReleasedRecordsNotRead() throws Exception {
+        UserEventRing ring = new UserEventRing(mFile, CAPACITY);
+        ring.append(record(1, 10), 10);
+        ring.releaseAll();
+        ring.append(record(2, 20), 20);
+
+        ArrayList<byte[]> records = new UserEventRing(mFile, CAPACITY).readAll();
+        assertEquals(1, records.size());
+        assertArrayEquals(record(2, 20), records.get(0));
+    }
+
+    @Test
+    public void testOldestRecordsOverwrittenWhenFull() throws Exception {
+        UserEventRing ring = new UserEventRing(mFile, CAPACITY);
+        for (int i = 0; i < 10; i++) {
+            ring.append(record(i, 30), 30);
+        }
+
+        // Each record takes 32 bytes, so only the last 3 fit.
+        ArrayList<byte[]> records = ring.readAll();
+        assertEquals(3, records.size());
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(record(7 + i, 30), records.get(i));
+        }
+    }
+
+    @Test
+    public void testRecordLargerThanRingRejected() throws Exception {
+        UserEventRing ring = new UserEventRing(mFile, CAPACITY);
+        assertFalse(ring.append(new byte[CAPACITY], CAPACITY));
+        assertTrue(ring.readAll().isEmpty());
+    }
+
+    @Test
+    public void testCorruptedFileReset() throws Exception {
+        UserEventRing ring = new UserEventRing(mFile, CAPACITY);
+        ring.append(record(1, 10), 10);
+
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            // Tail pointing past the end of the ring
+            raf.seek(8);
+            raf.writeInt(CAPACITY * 2);
+        }
+        assertTrue(new UserEventRing(mFile, CAPACITY).readAll().isEmpty());
+    }
+
+    private static byte[] record(int value, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (value + i);
+        }
+        return data;
+    }
+}
@@ -97,7 +97,7 @@ public class BaseModelUpdateTaskTestCase {
         idp = new InvariantDeviceProfile();
         iconCache = new MyIconCache(targetContext, idp);
 
-        allAppsList = new AllAppsList(iconCache, new AppFilter());
+        allAppsList = new AllAppsList(targetContext, iconCache, new AppFilter());
 
         when(appState.getIconCache()).thenReturn(iconCache);
         when(appState.getInvariantDeviceProfile()).thenReturn(idp);
@@ -9,6 +9,7 @@ import android.os.Process;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.filters.SmallTest;
 import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
 
 import com.dat.launcher3.IconCache;
 import com.dat.launcher3.InvariantDeviceProfile;
@@ -59,6 +60,8 @@ import static org.mockito.Mockito.when;
 @RunWith(AndroidJUnit4.class)
 public class LoaderCursorTest {
 
+    private static final String TAG = "LoaderCursorTest";
+
     private LauncherAppState mMockApp;
     private IconCache mMockIconCache;
 
@@ -147,6 +150,61 @@ public class LoaderCursorTest {
         assertEquals(ITEM_TYPE_SHORTCUT, info.itemType);
     }
 
+    @Test
+    public void parseIntent_returnsCopies() {
+        Intent intent = new Intent(Intent.ACTION_MAIN)
+                .setComponent(new ComponentName("com.example", "com.example.Activity"));
+        String uri = intent.toUri(0);
+        mCursor = new MatrixCursor(mCursor.getColumnNames());
+        mCursor.newRow().add(INTENT, uri).add(PROFILE_ID, 0);
+        mCursor.newRow().add(INTENT, uri).add(PROFILE_ID, 0);
+        mLoaderCursor = new LoaderCursor(mCursor, mMockApp);
+
+        assertTrue(mLoaderCursor.moveToNext());
+        Intent first = mLoaderCursor.parseIntent();
+        assertTrue(intent.filterEquals(first));
+        first.setPackage("com.example");
+
+        assertTrue(mLoaderCursor.moveToNext());
+        Intent second = mLoaderCursor.parseIntent();
+        assertTrue(intent.filterEquals(second));
+        assertNull(second.getPackage());
+    }
+
+    @Test
+    public void parseIntent_benchmark() {
+        int rowCount = 1000;
+        int intentCount = 200;
+        mCursor = new MatrixCursor(mCursor.getColumnNames());
+        for (int i = 0; i < rowCount; i++) {
+            Intent intent = new Intent(Intent.ACTION_MAIN)
+                    .addCategory(Intent.CATEGORY_LAUNCHER)
+                    .setComponent(new ComponentName("com.example.benchmark" + (i % intentCount),
+                            "com.example.Activity"))
+                    .setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            mCursor.newRow().add(INTENT, intent.toUri(0)).add(PROFILE_ID, 0);
+        }
+
+        // The first load parses each distinct intent, the second one only copies them.
+        LoaderCursor.clearIntentCache();
+        long[] loadNanos = new long[2];
+        for (int load = 0; load < loadNanos.length; load++) {
+            mLoaderCursor = new LoaderCursor(mCursor, mMockApp);
+            mCursor.moveToPosition(-1);
+            long start = System.nanoTime();
+            int parsed = 0;
+            while (mLoaderCursor.moveToNext()) {
+                if (mLoaderCursor.parseIntent() != null) {
+                    parsed++;
+                }
+            }
+            loadNanos[load] = System.nanoTime() - start;
+            assertEquals(rowCount, parsed);
+        }
+        Log.d(TAG, "Decoded " + rowCount + " rows: first load " + loadNanos[0] / 1000
+                + "us, next load " + loadNanos[1] / 1000 + "us");
+    }
+
     @Test
     public void checkItemPlacement_wrongWorkspaceScreen() {
         ArrayList<Long> workspaceScreens = new ArrayList<>(Arrays.asList(1L, 3L));
@@ -0,0 +1,112 @@
+package com.dat.launcher3.model;
+
+import static com.dat.launcher3.model.ModelTaskScheduler.PRIORITY_BACKGROUND;
+import static com.dat.launcher3.model.ModelTaskScheduler.PRIORITY_BIND;
+import static com.dat.launcher3.model.ModelTaskScheduler.PRIORITY_INTERACTIVE;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.os.HandlerThread;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link ModelTaskScheduler}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ModelTaskSchedulerTest {
+
+    private HandlerThread mThread;
+    private ModelTaskScheduler mScheduler;
+
+    private CountDownLatch mBlocker;
+    private List<String> mOrder;
+
+    @Before
+    public void setUp() {
+        mThread = new HandlerThread("ModelTaskSchedulerTest");
+        mThread.start();
+        mScheduler = new ModelTaskScheduler(mThread.getLooper());
+        mOrder = Collections.synchronizedList(new ArrayList<>());
+
+        // Keep the worker busy, so that the tasks are queued until the test releases it.
+        mBlocker = new CountDownLatch(1);
+        mScheduler.post(PRIORITY_INTERACTIVE, () -> {
+            try {
+                mBlocker.await();
+            } catch (InterruptedException e) { }
+        }, null);
+    }
+
+    @After
+    public void tearDown() {
+        mBlocker.countDown();
+        mThread.quitSafely();
+    }
+
+    private void post(int priority, String name) {
+        mScheduler.post(priority, () -> mOrder.add(name), null);
+    }
+
+    private void runAll() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        mScheduler.post(PRIORITY_BACKGROUND, done::countDown, null);
+        mBlocker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSameClass_runsInOrder() throws Exception {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            post(PRIORITY_BIND, "bind" + i);
+            expected.add("bind" + i);
+        }
+        runAll();
+        assertEquals(expected, mOrder);
+    }
+
+    @Test
+    public void testHigherClass_runsFirst() throws Exception {
+        post(PRIORITY_BACKGROUND, "background");
+        post(PRIORITY_BIND, "bind");
+        post(PRIORITY_INTERACTIVE, "interactive");
+        runAll();
+        assertEquals(Arrays.asList("interactive", "bind", "background"), mOrder);
+    }
+
+    @Test
+    public void testWaitingTask_isNotStarved() throws Exception {
+        post(PRIORITY_BACKGROUND, "background");
+        // Waits longer than MAX_WAIT_MS before the worker is released.
+        Thread.sleep(300);
+        post(PRIORITY_INTERACTIVE, "interactive1");
+        post(PRIORITY_INTERACTIVE, "interactive2");
+        runAll();
+        assertEquals(Arrays.asList("background", "interactive1", "interactive2"), mOrder);
+    }
+
+    @Test
+    public void testRemoveTasks_removesOnlyTheToken() throws Exception {
+        Object token = new Object();
+        mScheduler.post(PRIORITY_BIND, () -> mOrder.add("removed"), token);
+        post(PRIORITY_BIND, "kept");
+        mScheduler.removeTasks(token);
+        runAll();
+        assertEquals(Arrays.asList("kept"), mOrder);
+    }
+}
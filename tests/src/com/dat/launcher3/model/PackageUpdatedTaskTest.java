@@ -0,0 +1,56 @@
+package com.dat.launcher3.model;
+
+import static com.dat.launcher3.model.PackageUpdatedTask.OP_ADD;
+import static com.dat.launcher3.model.PackageUpdatedTask.OP_REMOVE;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Process;
+import android.os.UserHandle;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests for {@link PackageUpdatedTask#merge}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class PackageUpdatedTaskTest {
+
+    private final UserHandle mUser = Process.myUserHandle();
+    private final UserHandle mOtherUser = UserHandle.of(mUser.hashCode() + 1);
+
+    @Test
+    public void testMerge_sameOpAndUser() {
+        PackageUpdatedTask task = new PackageUpdatedTask(OP_ADD, mUser, "p1");
+        assertTrue(task.merge(new PackageUpdatedTask(OP_ADD, mUser, "p2", "p3")));
+        assertArrayEquals(new String[] {"p1", "p2", "p3"}, task.getPackages());
+    }
+
+    @Test
+    public void testMerge_keepsOrderAndDropsDuplicates() {
+        PackageUpdatedTask task = new PackageUpdatedTask(OP_ADD, mUser, "p3", "p1");
+        assertTrue(task.merge(new PackageUpdatedTask(OP_ADD, mUser, "p2", "p1")));
+        assertTrue(task.merge(new PackageUpdatedTask(OP_ADD, mUser, "p0")));
+        assertArrayEquals(new String[] {"p3", "p1", "p2", "p0"}, task.getPackages());
+    }
+
+    @Test
+    public void testMerge_differentOp() {
+        PackageUpdatedTask task = new PackageUpdatedTask(OP_ADD, mUser, "p1");
+        assertFalse(task.merge(new PackageUpdatedTask(OP_REMOVE, mUser, "p2")));
+        assertArrayEquals(new String[] {"p1"}, task.getPackages());
+    }
+
+    @Test
+    public void testMerge_differentUser() {
+        PackageUpdatedTask task = new PackageUpdatedTask(OP_ADD, mUser, "p1");
+        assertFalse(task.merge(new PackageUpdatedTask(OP_ADD, mOtherUser, "p2")));
+        assertArrayEquals(new String[] {"p1"}, task.getPackages());
+    }
+}
@@ -0,0 +1,172 @@
+package com.dat.launcher3.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewGroup;
+
+import com.dat.launcher3.widget.WidgetListRowEntry;
+import com.dat.launcher3.widget.WidgetsChangeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Tests for {@link WidgetsModel}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class WidgetsModelTest {
+
+    private WidgetsModel mModel;
+
+    @Before
+    public void setUp() {
+        mModel = new WidgetsModel();
+        mModel.updateLocale(InstrumentationRegistry.getTargetContext());
+        applyRowChanges(row("a", "Alpha"), row("c", "Charlie"), row("e", "Echo"));
+        mModel.getWidgetsChangeSet();
+    }
+
+    @Test
+    public void testAdd_insertsInOrder() {
+        applyRowChanges(row("d", "Delta"), row("b", "Bravo"));
+
+        WidgetsChangeSet changeSet = mModel.getWidgetsChangeSet();
+        assertEquals(Arrays.asList("insert 1", "insert 3"), dispatch(changeSet));
+        assertEquals(Arrays.asList("Alpha", "Bravo", "Charlie", "Delta", "Echo"),
+                titles(changeSet));
+    }
+
+    @Test
+    public void testRemove() {
+        HashSet<String> changed = new HashSet<>(Arrays.asList("a", "c"));
+        mModel.applyRowChanges(changed, new HashMap<>(), false);
+
+        WidgetsChangeSet changeSet = mModel.getWidgetsChangeSet();
+        assertEquals(Arrays.asList("remove 1", "remove 0"), dispatch(changeSet));
+        assertEquals(Arrays.asList("Echo"), titles(changeSet));
+    }
+
+    @Test
+    public void testChange_sameTitle_changesInPlace() {
+        WidgetListRowEntry newRow = row("c", "Charlie");
+        applyRowChanges(newRow);
+
+        WidgetsChangeSet changeSet = mModel.getWidgetsChangeSet();
+        assertEquals(Arrays.asList("change 1"), dispatch(changeSet));
+        assertSame(newRow, changeSet.rows.get(1));
+    }
+
+    @Test
+    public void testChange_newTitle_movesTheRow() {
+        applyRowChanges(row("c", "Foxtrot"));
+
+        WidgetsChangeSet changeSet = mModel.getWidgetsChangeSet();
+        assertEquals(Arrays.asList("remove 1", "insert 2"), dispatch(changeSet));
+        assertEquals(Arrays.asList("Alpha", "Echo", "Foxtrot"), titles(changeSet));
+    }
+
+    @Test
+    public void testReorder_removesAndInsertsAllRows() {
+        HashSet<String> changed = new HashSet<>(Arrays.asList("a", "c", "e"));
+        HashMap<String, WidgetListRowEntry> newRows = new HashMap<>();
+        newRows.put("a", row("a", "Alpha"));
+        newRows.put("c", row("c", "Charlie"));
+        newRows.put("e", row("e", "Echo"));
+        mModel.applyRowChanges(changed, newRows, true);
+
+        WidgetsChangeSet changeSet = mModel.getWidgetsChangeSet();
+        assertEquals(Arrays.asList("remove 2", "remove 1", "remove 0",
+                "insert 0", "insert 1", "insert 2"), dispatch(changeSet));
+    }
+
+    @Test
+    public void testMixedChanges_replayToTheNewRows() {
+        HashSet<String> changed = new HashSet<>(Arrays.asList("a", "b", "c", "e"));
+        HashMap<String, WidgetListRowEntry> newRows = new HashMap<>();
+        newRows.put("b", row("b", "Bravo"));
+        newRows.put("c", row("c", "Charlie"));
+        newRows.put("e", row("e", "Able"));
+        mModel.applyRowChanges(changed, newRows, false);
+
+        WidgetsChangeSet changeSet = mModel.getWidgetsChangeSet();
+        assertEquals(Arrays.asList("remove 2", "remove 0", "insert 0", "insert 1", "change 2"),
+                dispatch(changeSet));
+        assertEquals(Arrays.asList("Able", "Bravo", "Charlie"), titles(changeSet));
+    }
+
+    private void applyRowChanges(WidgetListRowEntry... rows) {
+        HashSet<String> changed = new HashSet<>();
+        HashMap<String, WidgetListRowEntry> newRows = new HashMap<>();
+        for (WidgetListRowEntry row : rows) {
+            changed.add(row.pkgItem.packageName);
+            newRows.put(row.pkgItem.packageName, row);
+        }
+        mModel.applyRowChanges(changed, newRows, false);
+    }
+
+    private static WidgetListRowEntry row(String packageName, String title) {
+        PackageItemInfo pInfo = new PackageItemInfo(packageName);
+        pInfo.title = title;
+        return new WidgetListRowEntry(pInfo, new ArrayList<>());
+    }
+
+    private static List<String> titles(WidgetsChangeSet changeSet) {
+        List<String> titles = new ArrayList<>();
+        for (WidgetListRowEntry row : changeSet.rows) {
+            titles.add(row.pkgItem.title.toString());
+        }
+        return titles;
+    }
+
+    private static List<String> dispatch(WidgetsChangeSet changeSet) {
+        List<String> ops = new ArrayList<>();
+        RecordingAdapter adapter = new RecordingAdapter();
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                ops.add("remove " + positionStart);
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                ops.add("insert " + positionStart);
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                ops.add("change " + positionStart);
+            }
+        });
+        changeSet.dispatchTo(adapter);
+        return ops;
+    }
+
+    private static class RecordingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) { }
+
+        @Override
+        public int getItemCount() {
+            return 0;
+        }
+    }
+}
@@ -6,14 +6,18 @@ import android.database.sqlite.SQLiteDatabase;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.filters.MediumTest;
 import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
 
+import com.dat.launcher3.LauncherAppWidgetInfo;
 import com.dat.launcher3.LauncherProvider.DatabaseHelper;
 import com.dat.launcher3.LauncherSettings.Favorites;
+import com.dat.launcher3.ShortcutInfo;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests for {@link RestoreDbTask}
@@ -22,6 +26,8 @@ import static org.junit.Assert.assertEquals;
 @RunWith(AndroidJUnit4.class)
 public class RestoreDbTaskTest {
 
+    private static final String TAG = "RestoreDbTaskTest";
+
     @Test
     public void testGetProfileId() throws Exception {
         SQLiteDatabase db = new MyDatabaseHelper(23).getWritableDatabase();
@@ -55,6 +61,38 @@ public class RestoreDbTaskTest {
         assertEquals(6, getCount(db, "select * from favorites where profileId = 33"));
     }
 
+    @Test
+    public void testPerformRestore() throws Exception {
+        MyDatabaseHelper helper = new MyDatabaseHelper(42);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        // A synthetic backup of 500 items, with some widgets and some managed profile items
+        for (int i = 0; i < 500; i++) {
+            ContentValues values = new ContentValues();
+            values.put(Favorites._ID, i);
+            values.put(Favorites.TITLE, "item " + i);
+            values.put(Favorites.ITEM_TYPE, i % 10 == 0
+                    ? Favorites.ITEM_TYPE_APPWIDGET : Favorites.ITEM_TYPE_APPLICATION);
+            if (i % 50 == 1) {
+                values.put(Favorites.PROFILE_ID, 10);
+            }
+            db.insert(Favorites.TABLE_NAME, null, values);
+        }
+
+        // The new device has a different serial for the primary user
+        helper.mProfileId = 33;
+        long start = System.nanoTime();
+        assertTrue(RestoreDbTask.performRestore(helper));
+        Log.d(TAG, "Restore of 500 items in " + (System.nanoTime() - start) / 1000 + "us");
+
+        assertEquals(490, getCount(db, "select * from favorites where profileId = 33"));
+        assertEquals(50, getCount(db, "select * from favorites where restored = "
+                + (LauncherAppWidgetInfo.FLAG_ID_NOT_VALID
+                        | LauncherAppWidgetInfo.FLAG_PROVIDER_NOT_READY
+                        | LauncherAppWidgetInfo.FLAG_UI_NOT_READY)));
+        assertEquals(440, getCount(db, "select * from favorites where restored = "
+                + ShortcutInfo.FLAG_RESTORED_ICON));
+    }
+
     private int getCount(SQLiteDatabase db, String sql) {
         try (Cursor c = db.rawQuery(sql, null)) {
             return c.getCount();
@@ -63,7 +101,7 @@ public class RestoreDbTaskTest {
 
     private class MyDatabaseHelper extends DatabaseHelper {
 
-        private final long mProfileId;
+        private long mProfileId;
 
         MyDatabaseHelper(long profileId) {
             super(InstrumentationRegistry.getContext(), null, null);
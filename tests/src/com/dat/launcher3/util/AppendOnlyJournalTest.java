@@ -0,0 +1,150 @@
+package com.dat.launcher3.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link AppendOnlyJournal}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class AppendOnlyJournalTest {
+
+    private static final String TAG = "AppendOnlyJournalTest";
+
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mFile = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "test.journal");
+        mFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    private static ArrayList<String> readAll(AppendOnlyJournal journal) {
+        ArrayList<String> records = new ArrayList<>();
+        journal.forEach(records::add);
+        return records;
+    }
+
+    @Test
+    public void testAppend_readsBackInOrder() {
+        AppendOnlyJournal journal = new AppendOnlyJournal(mFile);
+        assertTrue(journal.isEmpty());
+        journal.append("first");
+        journal.append("second é中");
+        journal.append("");
+
+        assertEquals(Arrays.asList("first", "second é中", ""), readAll(journal));
+        assertEquals(Arrays.asList("first", "second é中", ""),
+                readAll(new AppendOnlyJournal(mFile)));
+    }
+
+    @Test
+    public void testKilledDuringWrite_dropsIncompleteRecord() throws Exception {
+        AppendOnlyJournal journal = new AppendOnlyJournal(mFile);
+        journal.append("first");
+        journal.append("second");
+        long completeLength = mFile.length();
+        journal.append("third record");
+        long fullLength = mFile.length();
+
+        byte[] content = new byte[(int) fullLength];
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "r")) {
+            file.readFully(content);
+        }
+
+        // Simulate the process being killed after each byte of the last record was written.
+        for (long length = completeLength + 1; length < fullLength; length++) {
+            try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+                file.setLength(0);
+                file.write(content, 0, (int) length);
+            }
+
+            AppendOnlyJournal restarted = new AppendOnlyJournal(mFile);
+            assertEquals(Arrays.asList("first", "second"), readAll(restarted));
+            assertEquals(completeLength, mFile.length());
+
+            restarted.append("fourth");
+            assertEquals(Arrays.asList("first", "second", "fourth"),
+                    readAll(new AppendOnlyJournal(mFile)));
+        }
+    }
+
+    @Test
+    public void testAppendAfterKill_isNotLost() throws Exception {
+        AppendOnlyJournal journal = new AppendOnlyJournal(mFile);
+        journal.append("first");
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            // A header announcing a record longer than the file
+            file.seek(file.length());
+            file.writeInt(100);
+        }
+
+        AppendOnlyJournal restarted = new AppendOnlyJournal(mFile);
+        restarted.append("second");
+        assertEquals(Arrays.asList("first", "second"), readAll(new AppendOnlyJournal(mFile)));
+    }
+
+    @Test
+    public void testRemoveIf_andClear() {
+        AppendOnlyJournal journal = new AppendOnlyJournal(mFile);
+        for (int i = 0; i < 10; i++) {
+            journal.append("record" + i);
+        }
+        journal.removeIf(record -> record.endsWith("5") || record.endsWith("7"));
+        journal.append("last");
+
+        ArrayList<String> records = readAll(new AppendOnlyJournal(mFile));
+        assertEquals(9, records.size());
+        assertTrue(!records.contains("record5") && !records.contains("record7"));
+        assertEquals("last", records.get(8));
+
+        journal.clear();
+        assertTrue(journal.isEmpty());
+        journal.append("after clear");
+        assertEquals(Arrays.asList("after clear"), readAll(journal));
+    }
+
+    @Test
+    public void testAppendThroughput() {
+        int count = 5000;
+        String record = "{\"intent.launch\":\"#Intent;component=com.example/.Activity;end\","
+                + "\"name\":\"Shortcut\",\"userHandle\":0}";
+        AppendOnlyJournal journal = new AppendOnlyJournal(mFile);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            journal.append(record);
+        }
+        long appendNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int read = readAll(journal).size();
+        long readNanos = System.nanoTime() - start;
+
+        Log.d(TAG, count + " records: append " + appendNanos / count + "ns per record, "
+                + "read all " + readNanos / 1000 + "us");
+        assertEquals(count, read);
+    }
+}
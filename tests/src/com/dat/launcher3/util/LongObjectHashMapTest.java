@@ -0,0 +1,126 @@
+package com.dat.launcher3.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Tests for {@link LongObjectHashMap}, {@link LongHashSet} and {@link LongArrayList}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class LongObjectHashMapTest {
+
+    private static final String TAG = "LongObjectHashMapTest";
+
+    private static final int ITEM_COUNT = 2000;
+
+    @Test
+    public void testRandomOperations_matchHashMap() {
+        Random random = new Random(42);
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+        LongHashSet set = new LongHashSet();
+        HashMap<Long, Long> expected = new HashMap<>();
+        HashSet<Long> expectedSet = new HashSet<>();
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextInt(500) - 250;
+            switch (random.nextInt(3)) {
+                case 0:
+                    map.put(key, key * 2);
+                    assertEquals(expectedSet.add(key), set.add(key));
+                    expected.put(key, key * 2);
+                    break;
+                case 1:
+                    map.remove(key);
+                    expected.remove(key);
+                    break;
+                default:
+                    assertEquals(expected.get(key), map.get(key));
+                    assertEquals(expectedSet.contains(key), set.contains(key));
+            }
+            assertEquals(expected.size(), map.size());
+            assertEquals(expectedSet.size(), set.size());
+        }
+        for (int i = 0; i < map.size(); i++) {
+            assertEquals(expected.get(map.keyAt(i)), map.valueAt(i));
+        }
+    }
+
+    @Test
+    public void testPutNull_removesKey() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        map.put(1, "one");
+        map.put(1, null);
+        assertFalse(map.containsKey(1));
+        assertNull(map.get(1));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testLongArrayList() {
+        LongArrayList list = new LongArrayList(1);
+        for (int i = 0; i < 5; i++) {
+            list.add(i * 10);
+        }
+        list.removeIndex(2);
+        list.removeIndex(0);
+        assertEquals(3, list.size());
+        assertEquals(30, list.get(1));
+        assertTrue(list.contains(40));
+        assertEquals("10, 30, 40", list.toConcatString());
+    }
+
+    @Test
+    public void testLookupBenchmark() {
+        long[] ids = new long[ITEM_COUNT];
+        Random random = new Random(7);
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            ids[i] = random.nextInt(100000);
+        }
+
+        long start = System.nanoTime();
+        LongArrayMap<Object> sparseMap = new LongArrayMap<>();
+        for (long id : ids) {
+            sparseMap.put(id, this);
+        }
+        long sparsePutNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int round = 0; round < 10; round++) {
+            for (long id : ids) {
+                sparseMap.get(id);
+            }
+        }
+        long sparseGetNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        LongObjectHashMap<Object> hashMap = new LongObjectHashMap<>();
+        for (long id : ids) {
+            hashMap.put(id, this);
+        }
+        long hashPutNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int round = 0; round < 10; round++) {
+            for (long id : ids) {
+                hashMap.get(id);
+            }
+        }
+        long hashGetNanos = System.nanoTime() - start;
+
+        Log.d(TAG, ITEM_COUNT + " items, put/get: LongArrayMap " + sparsePutNanos / 1000 + "us/"
+                + sparseGetNanos / 1000 + "us, LongObjectHashMap " + hashPutNanos / 1000 + "us/"
+                + hashGetNanos / 1000 + "us");
+        assertEquals(sparseMap.size(), hashMap.size());
+    }
+}
@@ -25,7 +25,6 @@ import android.support.test.runner.AndroidJUnit4;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 
-import com.dat.launcher3.IconCache;
 import com.dat.launcher3.InvariantDeviceProfile;
 import com.dat.launcher3.LauncherAppWidgetProviderInfo;
 import com.dat.launcher3.WidgetPreviewLoader;
@@ -43,6 +42,7 @@ import org.mockito.MockitoAnnotations;
 import java.util.ArrayList;
 import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.times;
@@ -55,7 +55,6 @@ public class WidgetsListAdapterTest {
     @Mock private LayoutInflater mMockLayoutInflater;
     @Mock private WidgetPreviewLoader mMockWidgetCache;
     @Mock private RecyclerView.AdapterDataObserver mListener;
-    @Mock private IconCache mIconCache;
 
     private WidgetsListAdapter mAdapter;
     private InvariantDeviceProfile mTestProfile;
@@ -69,53 +68,33 @@ public class WidgetsListAdapterTest {
         mTestProfile.numRows = 5;
         mTestProfile.numColumns = 5;
         mAdapter = new WidgetsListAdapter(mContext, mMockLayoutInflater, mMockWidgetCache,
-                mIconCache, null, null);
+                null, null);
         mAdapter.registerAdapterDataObserver(mListener);
     }
 
     @Test
-    public void test_notifyDataSetChanged() throws Exception {
-        mAdapter.setWidgets(generateSampleMap(1));
-        verify(mListener, times(1)).onChanged();
-    }
+    public void testApplyChangeSet_incremental() throws Exception {
+        ArrayList<WidgetListRowEntry> rows = generateSampleMap(1);
+        mAdapter.applyChangeSet(new WidgetsChangeSet(0, 1, rows, new int[0], 0));
 
-    @Test
-    public void test_notifyItemInserted() throws Exception {
-        mAdapter.setWidgets(generateSampleMap(1));
-        mAdapter.setWidgets(generateSampleMap(2));
+        ArrayList<WidgetListRowEntry> newRows = generateSampleMap(2);
+        int[] ops = new int[] {WidgetsChangeSet.OP_INSERT, 1, WidgetsChangeSet.OP_CHANGE, 0};
+        mAdapter.applyChangeSet(new WidgetsChangeSet(1, 2, newRows, ops, 2));
         verify(mListener, times(1)).onChanged();
         verify(mListener, times(1)).onItemRangeInserted(eq(1), eq(1));
-    }
-
-    @Test
-    public void test_notifyItemRemoved() throws Exception {
-        mAdapter.setWidgets(generateSampleMap(2));
-        mAdapter.setWidgets(generateSampleMap(1));
-        verify(mListener, times(1)).onChanged();
-        verify(mListener, times(1)).onItemRangeRemoved(eq(1), eq(1));
-    }
-
-    @Test
-    public void testNotifyItemChanged_PackageIconDiff() throws Exception {
-        mAdapter.setWidgets(generateSampleMap(1));
-        mAdapter.setWidgets(generateSampleMap(1));
-        verify(mListener, times(1)).onChanged();
         verify(mListener, times(1)).onItemRangeChanged(eq(0), eq(1), isNull());
+        assertEquals(2, mAdapter.getItemCount());
     }
 
     @Test
-    public void testNotifyItemChanged_widgetItemInfoDiff() throws Exception {
-        // TODO: same package name but item number changed
-    }
-
-    @Test
-    public void testNotifyItemInsertedRemoved_hodgepodge() throws Exception {
-        // TODO: insert and remove combined.          curMap
-        // newMap [A, C, D]                           [A, B, E]
-        // B - C < 0, removed B from index 1          [A, E]
-        // E - C > 0, C inserted to index 1           [A, C, E]
-        // E - D > 0, D inserted to index 2           [A, C, D, E]
-        // E - null = -1, E deleted from index 3      [A, C, D]
+    public void testApplyChangeSet_versionGap() throws Exception {
+        mAdapter.applyChangeSet(new WidgetsChangeSet(0, 1, generateSampleMap(1), new int[0], 0));
+
+        // Changes from version 1 to 2 were never applied, so the list is refreshed.
+        int[] ops = new int[] {WidgetsChangeSet.OP_INSERT, 1};
+        mAdapter.applyChangeSet(new WidgetsChangeSet(2, 3, generateSampleMap(2), ops, 1));
+        verify(mListener, times(2)).onChanged();
+        assertEquals(2, mAdapter.getItemCount());
     }
 
     /**